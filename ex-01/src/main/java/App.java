@@ -8,20 +8,26 @@ public class App {
     private static final int NUMBER_OF_SIMULATION_ACTORS = 10;
     private static final long MAX_ITERATIONS = 3000L;
     private static final double DT = 0.01D;
+    private static final long REORDERING_PERIOD = 50L;
+    private static final long DIAGNOSTICS_PERIOD = 100L;
 
     public static void main(String[] args) {
         SimulationView view = new SimulationView(620, 620);
-        ActorSystem<SimulationDirectorMessage> guardianActor = ActorSystem.create(
-            SimulationDirector.create(
-                new SimulationBuilder().setView(view)
-                                       .setNumberOfSimulationActors(NUMBER_OF_SIMULATION_ACTORS)
-                                       .setMaxIterations(MAX_ITERATIONS)
-                                       .setDeltaTime(DT)
-                                       .testBodySet4_many_bodies()
-                                       .build()
-            ),
-            "SimulationDirector"
-        );
+        SimulationBuilder.Simulation simulation =
+            new SimulationBuilder().setView(view)
+                                   .setNumberOfSimulationActors(NUMBER_OF_SIMULATION_ACTORS)
+                                   .setMaxIterations(MAX_ITERATIONS)
+                                   .setDeltaTime(DT)
+                                   .setReorderingPeriod(REORDERING_PERIOD)
+                                   .setDiagnosticsPeriod(DIAGNOSTICS_PERIOD)
+                                   .testBodySet4_many_bodies()
+                                   .build();
+        simulation.onDiagnostics((event) -> System.out.println(
+            "Iteration " + event.iteration + ": " + event.diagnostics
+            + String.format(" energyDrift=%.3e momentumDrift=%.3e", event.energyDrift, event.momentumDrift)
+        ));
+        ActorSystem<SimulationDirectorMessage> guardianActor =
+            ActorSystem.create(SimulationDirector.create(simulation), "SimulationDirector");
         view.attachSimulationDirector(guardianActor);
     }
 }
\ No newline at end of file
@@ -19,6 +19,9 @@ import java.util.concurrent.Semaphore;
 public class SimulationBenchmark {
     private static final int MAX_ACTORS = Runtime.getRuntime().availableProcessors() + 1;
     private static final double DT = 0.01D;
+    private static final long REORDERING_PERIOD = 50L;
+    /** The minimum interval in milliseconds between two updates of the progress of a simulation. */
+    private static final long PROGRESS_PERIOD = 100L;
 
     /** The set of #bodies arguments to test. */
     private final static List<Integer> nBodiesArgs = List.of(100, 1000, 5000);
@@ -43,9 +46,11 @@ public class SimulationBenchmark {
                             .setNumberOfSimulationActors(nActors)
                             .setMaxIterations(nIterations)
                             .setDeltaTime(DT)
+                            .setReorderingPeriod(REORDERING_PERIOD)
                             .testCustomBodySet(nBodies)
                             .build();
-                    simulation.onIterationComplete((iteration) -> printProgress(iteration, nIterations));
+                    simulation.onIterationComplete((iteration) -> printProgress(iteration, nIterations), PROGRESS_PERIOD)
+                              .onFinish((event) -> printProgress(event.iterations, nIterations));
                     //Running simulation...
                     System.out.println("Simulating " + simArgs + "...");
                     StopWatch timer = new StopWatch().next();
@@ -56,6 +61,7 @@ public class SimulationBenchmark {
                                  .thenAccept(__ -> {
                                      long time = timer.getDuration();
                                      timeMap.put(simArgs, time);
+                                     try { simulation.events.awaitTermination(); } catch (InterruptedException e) { e.printStackTrace(); }
                                      System.out.println();
                                      printSimulationResult(simArgs, time);
                                      System.out.println();
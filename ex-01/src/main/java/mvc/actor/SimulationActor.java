@@ -8,6 +8,8 @@ import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
 import mvc.model.Body;
 import mvc.model.Boundary;
+import mvc.model.Diagnostics;
+import mvc.model.SweepAndPrune;
 import util.math.V2d;
 import mvc.actor.SimulationDirector.*;
 
@@ -41,21 +43,28 @@ public class SimulationActor {
         public static class UpdatePositionsMessage extends WithSender implements SimulationActorMessage {
             public final List<Body> bodiesToUpdate;
             public final double dt;
+            public final Boundary boundary;
+            /** True if the diagnostics of the updated bodies should be sent together with them. */
+            public final boolean computeDiagnostics;
 
-            public UpdatePositionsMessage(ActorRef<SimulationDirectorMessage> sender, List<Body> bodiesToUpdate, double dt) {
+            public UpdatePositionsMessage(ActorRef<SimulationDirectorMessage> sender, List<Body> bodiesToUpdate, double dt, Boundary boundary, boolean computeDiagnostics) {
                 super(sender);
                 this.bodiesToUpdate = bodiesToUpdate;
                 this.dt = dt;
+                this.boundary = boundary;
+                this.computeDiagnostics = computeDiagnostics;
             }
         }
-        public static class CheckCollisionsMessage extends WithSender implements SimulationActorMessage {
-            public final List<Body> bodiesToUpdate;
-            public final Boundary boundary;
+        public static class DetectCollisionsMessage extends WithSender implements SimulationActorMessage {
+            public final List<Body> sortedBodies;
+            public final int fromInclusive;
+            public final int toExclusive;
 
-            public CheckCollisionsMessage(ActorRef<SimulationDirectorMessage> sender, List<Body> bodiesToUpdate, Boundary boundary) {
+            public DetectCollisionsMessage(ActorRef<SimulationDirectorMessage> sender, List<Body> sortedBodies, int from, int to) {
                 super(sender);
-                this.bodiesToUpdate = bodiesToUpdate;
-                this.boundary = boundary;
+                this.sortedBodies = sortedBodies;
+                this.fromInclusive = from;
+                this.toExclusive = to;
             }
         }
 
@@ -84,24 +93,21 @@ public class SimulationActor {
                                    .collect(Collectors.toList())
                         )
                     ))
-                    .onMessage(UpdatePositionsMessage.class, (message) -> this.send(
+                    .onMessage(UpdatePositionsMessage.class, (message) -> {
+                        List<Body> updatedBodies = message.bodiesToUpdate
+                                                          .stream()
+                                                          .peek(b -> b.updatePosition(message.dt, message.boundary))
+                                                          .map(Body::copyOf)
+                                                          .collect(Collectors.toList());
+                        return this.send(
+                            message.sender,
+                            new ResultMessage(updatedBodies, message.computeDiagnostics ? Diagnostics.of(updatedBodies) : null)
+                        );
+                    })
+                    .onMessage(DetectCollisionsMessage.class, (message) -> this.send(
                         message.sender,
-                        new ResultMessage(
-                            message.bodiesToUpdate
-                                   .stream()
-                                   .peek(b -> b.updatePosition(message.dt))
-                                   .map(Body::copyOf)
-                                   .collect(Collectors.toList())
-                        )
-                    ))
-                    .onMessage(CheckCollisionsMessage.class, (message) -> this.send(
-                        message.sender,
-                        new ResultMessage(
-                            message.bodiesToUpdate
-                                   .stream()
-                                   .peek(b -> b.checkAndSolveBoundaryCollision(message.boundary))
-                                   .map(Body::copyOf)
-                                   .collect(Collectors.toList())
+                        new ContactsMessage(
+                            SweepAndPrune.findContacts(message.sortedBodies, message.fromInclusive, message.toExclusive)
                         )
                     ))
                     .build();
@@ -1,10 +1,16 @@
 package mvc.actor;
 
+import mvc.actor.SimulationEvents.*;
 import mvc.model.Body;
 import mvc.model.Boundary;
+import mvc.model.Diagnostics;
+import mvc.model.SweepAndPrune;
+import mvc.model.SweepAndPrune.Contact;
 import util.math.P2d;
 import util.math.V2d;
 import mvc.view.SimulationView;
+import util.event.EventBus;
+import util.math.MortonCode;
 
 import java.util.*;
 import java.util.function.Consumer;
@@ -20,6 +26,9 @@ public class SimulationBuilder {
     private Collection<Body> bodies;
     private Boundary bounds;
     private int numberOfSimulationActors;
+    private boolean bodyCollisions;
+    private long reorderingPeriod;
+    private long diagnosticsPeriod;
 
     /**
      * @param simulation the specified simulation
@@ -29,7 +38,10 @@ public class SimulationBuilder {
     public static Simulation buildCopyOf(Simulation simulation){ return new Simulation(simulation); }
 
     /** @return a simulation with the configuration of this builder. */
-    public Simulation build() { return new Simulation(this.viewer, this.maxIterations, this.dt, this.bodies, this.bounds, this.numberOfSimulationActors); }
+    public Simulation build() {
+        Simulation simulation = new Simulation(this.viewer, this.maxIterations, this.dt, this.bodies, this.bounds, this.numberOfSimulationActors, this.bodyCollisions ? new SweepAndPrune() : null, this.reorderingPeriod, this.diagnosticsPeriod, new EventBus());
+        return this.reorderingPeriod > 0 ? simulation.reorderBodies() : simulation;
+    }
 
     /**
      * Set the view that will be used to display the state of the simulation over time to the specified mvc.view.
@@ -39,6 +51,7 @@ public class SimulationBuilder {
     public SimulationBuilder setView(SimulationView view){ this.viewer = view; return this; }
     /**
      * Set the bodies of this simulation to the specified bodies.
+     * Note that building the simulation fails if two of the specified bodies have the same id.
      * @param bodies the specified bodies
      * @return this
      */
@@ -67,6 +80,28 @@ public class SimulationBuilder {
      * @return this
      */
     public SimulationBuilder setNumberOfSimulationActors(int numberOfSimulationActors){ this.numberOfSimulationActors = numberOfSimulationActors; return this; }
+    /**
+     * Set if the bodies of this simulation should collide elastically with each other.
+     * @param bodyCollisions true if the bodies should collide with each other, false otherwise
+     * @return this
+     */
+    public SimulationBuilder setBodyCollisions(boolean bodyCollisions){ this.bodyCollisions = bodyCollisions; return this; }
+    /**
+     * Set the amount of iterations between two reorderings of the bodies of this simulation along a
+     * Morton curve to the specified amount, so that the bodies assigned to each simulation actor are
+     * spatially close to each other. If the specified amount is not positive, the bodies are never reordered.
+     * @param reorderingPeriod the specified amount of iterations
+     * @return this
+     */
+    public SimulationBuilder setReorderingPeriod(long reorderingPeriod){ this.reorderingPeriod = reorderingPeriod; return this; }
+    /**
+     * Set the amount of iterations between two computations of the diagnostics of this simulation to the
+     * specified amount. If the specified amount is not positive, the diagnostics are never computed.
+     * @param diagnosticsPeriod the specified amount of iterations
+     * @return this
+     * @see Simulation#onDiagnostics
+     */
+    public SimulationBuilder setDiagnosticsPeriod(long diagnosticsPeriod){ this.diagnosticsPeriod = diagnosticsPeriod; return this; }
 
     /** Test with two bodies, one with double the mass of the other. */
     public SimulationBuilder testBodySet1_two_bodies() {
@@ -117,6 +152,23 @@ public class SimulationBuilder {
         return this;
     }
 
+    /** Test with a lot of moving bodies, all with the same mass, colliding with each other. */
+    public SimulationBuilder testBodySet5_colliding_bodies() {
+        this.bounds = new Boundary(-2.0, -2.0, 2.0, 2.0);
+        this.bodyCollisions = true;
+        int nBodies = 1000;
+        Random rand = new Random(System.currentTimeMillis());
+        this.bodies = new ArrayList<>();
+        for (int i = 0; i < nBodies; i++) {
+            double x = this.bounds.getX0() + rand.nextDouble() * (this.bounds.getX1() - this.bounds.getX0());
+            double y = this.bounds.getY0() + rand.nextDouble() * (this.bounds.getY1() - this.bounds.getY0());
+            V2d v = new V2d(rand.nextDouble() - 0.5, rand.nextDouble() - 0.5);
+            Body b = new Body(i, new P2d(x, y), v, new V2d(0,0), 10, 0.03);
+            this.bodies.add(b);
+        }
+        return this;
+    }
+
     /**
      * Test with the specified amount of bodies, all with the same mass.
      * @param nBodies the specified amount of bodies
@@ -145,28 +197,39 @@ public class SimulationBuilder {
         public final long maxIterations;
         /** The amount of time that passes at each completed iteration in this simulation. */
         public final double dt;
-        /** The bodies of this simulation. */
+        /** The bodies of this simulation, in the order used to partition them between the simulation actors. */
         public final Map<Integer, Body> bodies;
         /** The boundary of this simulation. */
         public final Boundary bounds;
         /** The number of simulation actors. */
         public final int numberOfSimulationActors;
+        /** The broadphase used to detect the collisions between bodies, if the bodies collide with each other. */
+        private final SweepAndPrune sweepAndPrune;
+        /** The amount of iterations between two reorderings of the bodies of this simulation. */
+        private final long reorderingPeriod;
+        /** The amount of iterations between two computations of the diagnostics of this simulation. */
+        private final long diagnosticsPeriod;
+        /** The diagnostics computed first in this simulation, used as a reference to measure their drift. */
+        private Diagnostics baselineDiagnostics;
+        /** The bus where the lifecycle events of this simulation are published. Shared with the copies of this simulation. */
+        public final EventBus events;
 
         private long currentIteration;
         private double virtualTime;
 
-        private final Collection<Consumer<Long>> onIterationCompleted;
-
-        private Simulation(SimulationView viewer, long maxIterations, double dt, Collection<Body> bodies, Boundary bounds, int numberOfSimulationActors) {
+        private Simulation(SimulationView viewer, long maxIterations, double dt, Collection<Body> bodies, Boundary bounds, int numberOfSimulationActors, SweepAndPrune sweepAndPrune, long reorderingPeriod, long diagnosticsPeriod, EventBus events) {
             this.viewer = viewer;
             this.maxIterations = maxIterations;
             this.dt = dt;
-            this.bodies = bodies.stream().collect(Collectors.toMap(Body::getId, x -> x));
+            this.bodies = bodies.stream().collect(Collectors.toMap(Body::getId, x -> x, (x, y) -> { throw new IllegalStateException("Duplicate body id: " + x.getId()); }, LinkedHashMap::new));
             this.bounds = bounds;
             this.currentIteration = 0;
             this.virtualTime = 0;
             this.numberOfSimulationActors = numberOfSimulationActors;
-            this.onIterationCompleted = new LinkedList<>();
+            this.sweepAndPrune = sweepAndPrune;
+            this.reorderingPeriod = reorderingPeriod;
+            this.diagnosticsPeriod = diagnosticsPeriod;
+            this.events = events;
         }
         private Simulation(Simulation simulation){
             this(
@@ -175,11 +238,15 @@ public class SimulationBuilder {
                 simulation.dt,
                 simulation.bodies.values().stream().map(Body::copyOf).collect(Collectors.toList()),
                 Boundary.copyOf(simulation.bounds),
-                simulation.numberOfSimulationActors
+                simulation.numberOfSimulationActors,
+                simulation.hasBodyCollisions() ? SweepAndPrune.copyOf(simulation.sweepAndPrune) : null,
+                simulation.reorderingPeriod,
+                simulation.diagnosticsPeriod,
+                simulation.events
             );
+            this.baselineDiagnostics = simulation.baselineDiagnostics;
             this.currentIteration = simulation.currentIteration;
             this.virtualTime = simulation.virtualTime;
-            this.onIterationCompleted.addAll(simulation.onIterationCompleted);
         }
         /** @return a copy of this simulation. */
         public Simulation getSnapshot() { return SimulationBuilder.buildCopyOf(this); }
@@ -190,15 +257,63 @@ public class SimulationBuilder {
         public long getCurrentIteration(){ return this.currentIteration; }
         /** @return true if this simulation has a viewer attached, false otherwise. */
         public boolean hasViewer() { return this.viewer != null; }
+        /** @return true if the bodies of this simulation collide with each other, false otherwise. */
+        public boolean hasBodyCollisions() { return this.sweepAndPrune != null; }
         /** @return true if this simulation is not ended, false otherwise. */
         public boolean isRunning() { return this.currentIteration < this.maxIterations; }
+        /** @return true if the diagnostics of this simulation should be computed in the current iteration, false otherwise. */
+        public boolean isComputingDiagnostics() { return this.diagnosticsPeriod > 0 && this.currentIteration % this.diagnosticsPeriod == 0; }
 
         /**
          * Adds the specified callback to the handlers to be executed when this simulation completes an iteration.
+         * The handlers are executed asynchronously, outside the actors of this simulation.
          * @param callback the specified callback, consuming the number of the current iteration
          * @return this
          */
-        public Simulation onIterationComplete(Consumer<Long> callback){ this.onIterationCompleted.add(callback); return this; }
+        public Simulation onIterationComplete(Consumer<Long> callback){ return this.onIterationComplete(callback, 0); }
+        /**
+         * As {@link #onIterationComplete(Consumer)}, but the specified callback is executed at most once
+         * in the specified interval, skipping the iterations completed in the meantime.
+         * @param callback the specified callback, consuming the number of the current iteration
+         * @param minIntervalMillis the specified interval in milliseconds
+         * @return this
+         */
+        public Simulation onIterationComplete(Consumer<Long> callback, long minIntervalMillis){
+            this.events.subscribe(IterationCompleted.class, event -> callback.accept(event.iteration), minIntervalMillis);
+            return this;
+        }
+        /**
+         * Adds the specified callback to the handlers to be executed when the simulation director
+         * completes a phase of an iteration of this simulation.
+         * @param callback the specified callback
+         * @return this
+         */
+        public Simulation onPhaseComplete(Consumer<PhaseCompleted> callback){ this.events.subscribe(PhaseCompleted.class, callback); return this; }
+        /**
+         * Adds the specified callback to the handlers to be executed when this simulation is stopped.
+         * @param callback the specified callback
+         * @return this
+         */
+        public Simulation onFinish(Consumer<SimulationFinished> callback){ this.events.subscribe(SimulationFinished.class, callback); return this; }
+        /**
+         * Adds the specified callback to the handlers to be executed when the diagnostics of this
+         * simulation are computed.
+         * @param callback the specified callback
+         * @return this
+         * @see SimulationBuilder#setDiagnosticsPeriod
+         */
+        public Simulation onDiagnostics(Consumer<DiagnosticsComputed> callback){ this.events.subscribe(DiagnosticsComputed.class, callback); return this; }
+        /**
+         * Publishes the specified diagnostics, computed in the current iteration of this simulation,
+         * together with their drift from the first diagnostics computed in this simulation.
+         * @param diagnostics the specified diagnostics
+         * @return this
+         */
+        public Simulation recordDiagnostics(Diagnostics diagnostics){
+            if (this.baselineDiagnostics == null) { this.baselineDiagnostics = diagnostics; }
+            this.events.publish(new DiagnosticsComputed(this.currentIteration, diagnostics, this.baselineDiagnostics));
+            return this;
+        }
         /**
          * Increase the amount of time that passed since the beginning of the simulation
          * by the duration of an iteration.
@@ -207,9 +322,31 @@ public class SimulationBuilder {
         public Simulation completeIteration(){
             this.currentIteration++;
             this.virtualTime += this.dt;
-            this.onIterationCompleted.forEach(callback -> callback.accept(this.currentIteration));
+            if (this.reorderingPeriod > 0 && this.currentIteration % this.reorderingPeriod == 0) { this.reorderBodies(); }
+            this.events.publish(new IterationCompleted(this.currentIteration, this.maxIterations, this.virtualTime));
             return this;
         }
+        /**
+         * Reorders the bodies of this simulation along a Morton curve, so that contiguous partitions
+         * of the bodies are spatially close.
+         * @return this
+         */
+        public Simulation reorderBodies(){
+            Map<Integer, Integer> mortonCodes = this.bodies.values().stream().collect(Collectors.toMap(Body::getId, this::mortonCodeOf));
+            List<Body> sortedBodies = this.bodies.values().stream()
+                .sorted((b1, b2) -> Integer.compareUnsigned(mortonCodes.get(b1.getId()), mortonCodes.get(b2.getId())))
+                .collect(Collectors.toList());
+            this.bodies.clear();
+            sortedBodies.forEach(body -> this.bodies.put(body.getId(), body));
+            return this;
+        }
+        /** @return the Morton code of the position of the specified body inside the boundary of this simulation. */
+        private int mortonCodeOf(Body body){
+            return MortonCode.encode(
+                body.getPos().getX(), body.getPos().getY(),
+                this.bounds.getX0(), this.bounds.getY0(), this.bounds.getX1(), this.bounds.getY1()
+            );
+        }
         /**
          * Replaces some bodies in the simulation with the specified bodies.
          * If an updated body has an id that is present in the simulation, the corresponding
@@ -222,6 +359,20 @@ public class SimulationBuilder {
             updatedBodies.forEach(body -> this.bodies.put(body.getId(), body));
             return this;
         }
+        /**
+         * @return the bodies of this simulation sorted for the broadphase of the collisions between bodies.
+         * @see SweepAndPrune#sort
+         */
+        public List<Body> getBodiesSortedForCollisions(){ return this.sweepAndPrune.sort(this.bodies); }
+        /**
+         * Solves the specified collisions between the bodies of this simulation.
+         * @param contacts the specified collisions
+         * @return this
+         */
+        public Simulation solveCollisions(Collection<Contact> contacts){
+            contacts.forEach(contact -> this.bodies.get(contact.firstId).solveCollisionWith(this.bodies.get(contact.secondId)));
+            return this;
+        }
         /**
          * Updates the view of this simulation if any viewer is attached to it.
          * @return this
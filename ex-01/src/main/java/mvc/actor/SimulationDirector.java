@@ -7,14 +7,18 @@ import akka.actor.typed.javadsl.*;
 import akka.actor.typed.receptionist.ServiceKey;
 import mvc.actor.SimulationBuilder.Simulation;
 import mvc.actor.SimulationActor.*;
+import mvc.actor.SimulationEvents.*;
 import mvc.model.Body;
 import mvc.model.Boundary;
+import mvc.model.Diagnostics;
+import mvc.model.SweepAndPrune.Contact;
 import scala.Option;
 import util.data.ListUtil;
 import util.math.IntRange;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -33,7 +37,17 @@ public class SimulationDirector {
         public static class StopMessage implements SimulationDirectorMessage {}
         public static class ResultMessage implements SimulationDirectorMessage {
             public final Collection<Body> updatedBodies;
-            public ResultMessage(Collection<Body> updatedBodies) { this.updatedBodies = updatedBodies; }
+            /** The diagnostics of the updated bodies, if requested, null otherwise. */
+            public final Diagnostics diagnostics;
+            public ResultMessage(Collection<Body> updatedBodies) { this(updatedBodies, null); }
+            public ResultMessage(Collection<Body> updatedBodies, Diagnostics diagnostics) {
+                this.updatedBodies = updatedBodies;
+                this.diagnostics = diagnostics;
+            }
+        }
+        public static class ContactsMessage implements SimulationDirectorMessage {
+            public final Collection<Contact> contacts;
+            public ContactsMessage(Collection<Contact> contacts) { this.contacts = contacts; }
         }
 
     public static Behavior<SimulationDirectorMessage> create(Simulation simulation) {
@@ -46,15 +60,19 @@ public class SimulationDirector {
         protected final Simulation simulation;
         protected final ActorRef<SimulationActorMessage> delegates;
         protected int expectedMessages;
+        /** The instant when this behavior started, in nanoseconds. */
+        protected final long startNanos;
         protected SimulationBehavior(ActorContext<SimulationDirectorMessage> context, Simulation simulation){
             super(context);
             this.simulation = simulation;
             this.delegates = spawnDelegates();
+            this.startNanos = System.nanoTime();
         }
         protected SimulationBehavior(ActorContext<SimulationDirectorMessage> context, ActorRef<SimulationActorMessage> delegates, Simulation simulation) {
             super(context);
             this.simulation = simulation;
             this.delegates = delegates;
+            this.startNanos = System.nanoTime();
         }
         /**
          * @return true if this director is expecting more messages from his delegates.
@@ -74,6 +92,33 @@ public class SimulationDirector {
                         this.expectedMessages++;
                     });
         }
+        /**
+         * Publishes the duration of this behavior, which is a phase of the current iteration of the simulation.
+         */
+        protected void completePhase(){
+            this.simulation.events.publish(
+                new PhaseCompleted(this.getClass().getSimpleName(), this.simulation.getCurrentIteration(), System.nanoTime() - this.startNanos)
+            );
+        }
+        /**
+         * Completes the current iteration of the simulation, continuing with the next one if the
+         * simulation is still running.
+         * @return the next behavior of this coordinator
+         */
+        protected Behavior<SimulationDirectorMessage> completeIteration(){
+            return this.simulation.completeIteration().updateView().isRunning()
+                   ? Behaviors.setup(context -> new UpdatingVelocities(context, this.delegates, this.simulation.getSnapshot()))
+                   : this.stop();
+        }
+        /**
+         * Stops the simulation, publishing its termination and closing its bus of events.
+         * @return the behavior of a stopped coordinator
+         */
+        protected Behavior<SimulationDirectorMessage> stop(){
+            this.simulation.events.publish(new SimulationFinished(this.simulation.getCurrentIteration(), this.simulation.getVirtualTime()));
+            this.simulation.events.close();
+            return Behaviors.stopped();
+        }
         /**
          * @return a router actor which routes messages to the simulation actors used by this simulation director.
          */
@@ -94,7 +139,7 @@ public class SimulationDirector {
         @Override
         public Receive<SimulationDirectorMessage> createReceive() {
             return newReceiveBuilder()
-                    .onMessage(StopMessage.class, (message) -> Behaviors.stopped())
+                    .onMessage(StopMessage.class, (message) -> this.stop())
                     .onMessage(StartMessage.class, (message) -> Behaviors.setup(context -> new UpdatingVelocities(context, this.delegates, simulation.getSnapshot())))
                     .build();
         }
@@ -115,67 +160,81 @@ public class SimulationDirector {
         @Override
         public Receive<SimulationDirectorMessage> createReceive() {
             return newReceiveBuilder()
-                    .onMessage(StopMessage.class, (message) -> Behaviors.stopped())
+                    .onMessage(StopMessage.class, (message) -> this.stop())
                     .onMessage(ResultMessage.class, (message) -> {
                         this.expectedMessages--;
                         this.simulation.updateBodies(message.updatedBodies);
-                        return this.isExpectingMoreMessages()
-                               ? Behaviors.same()
-                               : Behaviors.setup(context -> new UpdatingPositions(context, this.delegates, this.simulation.getSnapshot()));
+                        if (this.isExpectingMoreMessages()) { return Behaviors.same(); }
+                        this.completePhase();
+                        return Behaviors.setup(context -> new UpdatingPositions(context, this.delegates, this.simulation.getSnapshot()));
                     })
                     .build();
         }
     }
-    /** Model the behavior where the coordinator updates the position of the bodies in the simulation. */
+    /**
+     * Model the behavior where the coordinator updates the position of the bodies in the simulation,
+     * solving their collisions with the boundary of the simulation. If required, the children of the
+     * coordinator also compute the diagnostics of their partitions, which are then combined by the coordinator.
+     */
     private static class UpdatingPositions extends SimulationBehavior {
+        private Diagnostics diagnostics;
         private UpdatingPositions(ActorContext<SimulationDirectorMessage> context, ActorRef<SimulationActorMessage> delegates, Simulation simulation) {
             super(context, delegates, simulation);
+            this.diagnostics = Diagnostics.EMPTY;
             this.distributeToChildren(childPartition ->
                 new UpdatePositionsMessage(
                     this.getContext().getSelf(),
                     this.simulation.bodies.values().stream().skip(childPartition.from).limit(childPartition.to - childPartition.from).map(Body::copyOf).collect(Collectors.toList()),
-                    this.simulation.dt
+                    this.simulation.dt,
+                    Boundary.copyOf(this.simulation.bounds),
+                    this.simulation.isComputingDiagnostics()
                 )
             );
         }
         @Override
         public Receive<SimulationDirectorMessage> createReceive() {
             return newReceiveBuilder()
-                    .onMessage(StopMessage.class, (message) -> Behaviors.stopped())
+                    .onMessage(StopMessage.class, (message) -> this.stop())
                     .onMessage(ResultMessage.class, (message) -> {
                         this.expectedMessages--;
                         this.simulation.updateBodies(message.updatedBodies);
-                        return this.isExpectingMoreMessages()
-                               ? Behaviors.same()
-                               : Behaviors.setup(context -> new CheckingCollisions(context, this.delegates, this.simulation.getSnapshot()));
+                        if (message.diagnostics != null) { this.diagnostics = this.diagnostics.combine(message.diagnostics); }
+                        if (this.isExpectingMoreMessages()) { return Behaviors.same(); }
+                        if (this.simulation.isComputingDiagnostics()) { this.simulation.recordDiagnostics(this.diagnostics); }
+                        this.completePhase();
+                        return this.simulation.hasBodyCollisions()
+                               ? Behaviors.setup(context -> new CheckingCollisions(context, this.delegates, this.simulation.getSnapshot()))
+                               : this.completeIteration();
                     })
                     .build();
         }
     }
-    /** Model the behavior where the coordinator check for collisions inside the simulation. */
+    /**
+     * Model the behavior where the coordinator checks for collisions between the bodies in the simulation.
+     * The collisions are detected by the children of the coordinator, each one sweeping a partition
+     * of the bodies sorted by the broadphase, then they are solved by the coordinator.
+     */
     private static class CheckingCollisions extends SimulationBehavior {
+        private final List<Contact> contacts;
         private CheckingCollisions(ActorContext<SimulationDirectorMessage> context, ActorRef<SimulationActorMessage> delegates, Simulation simulation) {
             super(context, delegates, simulation);
+            this.contacts = new ArrayList<>();
+            List<Body> sortedBodies = this.simulation.getBodiesSortedForCollisions().stream().map(Body::copyOf).collect(Collectors.toList());
             this.distributeToChildren(childPartition ->
-                new CheckCollisionsMessage(
-                    this.getContext().getSelf(),
-                    this.simulation.bodies.values().stream().skip(childPartition.from).limit(childPartition.to - childPartition.from).map(Body::copyOf).collect(Collectors.toList()),
-                    Boundary.copyOf(this.simulation.bounds)
-                )
+                new DetectCollisionsMessage(this.getContext().getSelf(), sortedBodies, childPartition.from, childPartition.to)
             );
         }
         @Override
         public Receive<SimulationDirectorMessage> createReceive() {
             return newReceiveBuilder()
-                    .onMessage(StopMessage.class, (message) -> Behaviors.stopped())
-                    .onMessage(ResultMessage.class, (message) -> {
+                    .onMessage(StopMessage.class, (message) -> this.stop())
+                    .onMessage(ContactsMessage.class, (message) -> {
                         this.expectedMessages--;
-                        this.simulation.updateBodies(message.updatedBodies);
-                        return this.isExpectingMoreMessages()
-                               ? Behaviors.same()
-                               : this.simulation.completeIteration().updateView().isRunning()
-                               ? Behaviors.setup(context -> new UpdatingVelocities(context, this.delegates, this.simulation.getSnapshot()))
-                               : Behaviors.stopped();
+                        this.contacts.addAll(message.contacts);
+                        if (this.isExpectingMoreMessages()) { return Behaviors.same(); }
+                        this.simulation.solveCollisions(this.contacts);
+                        this.completePhase();
+                        return this.completeIteration();
                     })
                     .build();
         }
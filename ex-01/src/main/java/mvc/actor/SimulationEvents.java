@@ -0,0 +1,63 @@
+package mvc.actor;
+
+import mvc.model.Diagnostics;
+
+/**
+ * Model the events published during the lifecycle of a simulation.
+ */
+public class SimulationEvents {
+    /** Events */
+    public interface SimulationEvent {}
+        /** Published when the simulation completes an iteration. */
+        public static class IterationCompleted implements SimulationEvent {
+            public final long iteration;
+            public final long maxIterations;
+            public final double virtualTime;
+
+            public IterationCompleted(long iteration, long maxIterations, double virtualTime) {
+                this.iteration = iteration;
+                this.maxIterations = maxIterations;
+                this.virtualTime = virtualTime;
+            }
+        }
+        /** Published when the simulation director completes a phase of an iteration. */
+        public static class PhaseCompleted implements SimulationEvent {
+            public final String phase;
+            public final long iteration;
+            public final long durationNanos;
+
+            public PhaseCompleted(String phase, long iteration, long durationNanos) {
+                this.phase = phase;
+                this.iteration = iteration;
+                this.durationNanos = durationNanos;
+            }
+        }
+        /** Published when the diagnostics of the simulation are computed. */
+        public static class DiagnosticsComputed implements SimulationEvent {
+            public final long iteration;
+            public final Diagnostics diagnostics;
+            /** The drift of the kinetic energy from the first diagnostics computed, relative to the latter. */
+            public final double energyDrift;
+            /** The drift of the total momentum from the first diagnostics computed, relative to the latter. */
+            public final double momentumDrift;
+
+            public DiagnosticsComputed(long iteration, Diagnostics diagnostics, Diagnostics baseline) {
+                this.iteration = iteration;
+                this.diagnostics = diagnostics;
+                this.energyDrift = diagnostics.getEnergyDriftFrom(baseline);
+                this.momentumDrift = diagnostics.getMomentumDriftFrom(baseline);
+            }
+        }
+        /** Published when the simulation is stopped, either because it ended or because it was interrupted. */
+        public static class SimulationFinished implements SimulationEvent {
+            public final long iterations;
+            public final double virtualTime;
+
+            public SimulationFinished(long iterations, double virtualTime) {
+                this.iterations = iterations;
+                this.virtualTime = virtualTime;
+            }
+        }
+
+    private SimulationEvents() {}
+}
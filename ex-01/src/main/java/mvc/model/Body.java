@@ -12,26 +12,34 @@ import java.util.Objects;
 public class Body {
 	private static final double REPULSIVE_CONST = 0.01;
 	private static final double FRICTION_CONST = 1;
+	/** The radius of a body, if not specified otherwise. */
+	public static final double DEFAULT_RADIUS = 0.01;
 
     private P2d pos;
     private V2d vel;
     private V2d acc;
     private double mass;
+    private double radius;
     private int id;
 
     public static Body copyOf(Body body){ return new Body(body); }
-    public Body(int id, P2d pos, V2d vel, V2d acc, double mass){
+    public Body(int id, P2d pos, V2d vel, V2d acc, double mass){ this(id, pos, vel, acc, mass, DEFAULT_RADIUS); }
+    public Body(int id, P2d pos, V2d vel, V2d acc, double mass, double radius){
     	this.id = id;
         this.pos = pos;
         this.vel = vel;
         this.acc = acc;
         this.mass = mass;
+        this.radius = radius;
     }
-    private Body(Body b){ this(b.id, P2d.copyOf(b.pos), V2d.copyOf(b.vel), V2d.copyOf(b.acc), b.mass); }
+    private Body(Body b){ this(b.id, P2d.copyOf(b.pos), V2d.copyOf(b.vel), V2d.copyOf(b.acc), b.mass, b.radius); }
 
     public double getMass() {
     	return mass;
     }
+    public double getRadius() {
+        return radius;
+    }
     public P2d getPos(){
         return pos;
     }
@@ -60,6 +68,18 @@ public class Body {
     public void updatePosition(double dt){
     	pos.sum(V2d.copyOf(vel).scalarMul(dt));
     }
+    /**
+     * Update the position, according to current velocity, solving the collisions with the
+     * specified boundary. The collisions are checked only if this body is near enough to
+     * the specified boundary to reach it in the specified time.
+     * @param dt time elapsed
+     * @param bounds the specified boundary
+     */
+    public void updatePosition(double dt, Boundary bounds){
+        boolean isNearBoundary = this.isNearBoundary(bounds, dt);
+        this.updatePosition(dt);
+        if (isNearBoundary) { this.checkAndSolveBoundaryCollision(bounds); }
+    }
     /**
      * Update the velocity, given the instant acceleration.
      * @param dt time elapsed
@@ -134,6 +154,58 @@ public class Body {
     public V2d getCurrentFrictionForce() {
         return V2d.copyOf(vel).scalarMul(-FRICTION_CONST);
     }
+    /**
+     * @param bounds the specified boundary
+     * @param dt the specified time
+     * @return true if this body could reach an edge of the specified boundary within the specified
+     *         time, given its current velocity, false otherwise.
+     */
+    public boolean isNearBoundary(Boundary bounds, double dt){
+        double reachX = Math.abs(vel.getX()) * dt;
+        double reachY = Math.abs(vel.getY()) * dt;
+        return pos.getX() + reachX > bounds.getX1() || pos.getX() - reachX < bounds.getX0()
+            || pos.getY() + reachY > bounds.getY1() || pos.getY() - reachY < bounds.getY0();
+    }
+    /**
+     * @param b the specified body
+     * @return true if this body overlaps the specified body while they are approaching each
+     *         other, false otherwise.
+     */
+    public boolean collidesWith(Body b){
+        double dx = b.getPos().getX() - pos.getX();
+        double dy = b.getPos().getY() - pos.getY();
+        double minDistance = radius + b.getRadius();
+        if (dx*dx + dy*dy >= minDistance*minDistance) { return false; }
+        double dvx = b.getVel().getX() - vel.getX();
+        double dvy = b.getVel().getY() - vel.getY();
+        return dx*dvx + dy*dvy < 0;
+    }
+    /**
+     * Solve the elastic collision between this body and the specified body, updating the
+     * velocities of both bodies and separating them so that they do not overlap anymore.
+     * @param b the specified body
+     */
+    public void solveCollisionWith(Body b){
+        double dist = getDistanceFrom(b);
+        if (dist <= 0) { return; }
+        double nx = (b.getPos().getX() - pos.getX()) / dist;
+        double ny = (b.getPos().getY() - pos.getY()) / dist;
+        double approachSpeed = (vel.getX() - b.getVel().getX())*nx + (vel.getY() - b.getVel().getY())*ny;
+        double totalMass = mass + b.getMass();
+        if (approachSpeed > 0) {
+            double k1 = 2 * b.getMass() / totalMass * approachSpeed;
+            double k2 = 2 * mass / totalMass * approachSpeed;
+            vel.change(vel.getX() - k1*nx, vel.getY() - k1*ny);
+            b.getVel().change(b.getVel().getX() + k2*nx, b.getVel().getY() + k2*ny);
+        }
+        double overlap = radius + b.getRadius() - dist;
+        if (overlap > 0) {
+            double s1 = overlap * b.getMass() / totalMass;
+            double s2 = overlap * mass / totalMass;
+            pos.change(pos.getX() - s1*nx, pos.getY() - s1*ny);
+            b.getPos().change(b.getPos().getX() + s2*nx, b.getPos().getY() + s2*ny);
+        }
+    }
     /**
      * Check if there are collisions with the specified boundary and update the
      * position and velocity accordingly.
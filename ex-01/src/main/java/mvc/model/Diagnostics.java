@@ -0,0 +1,135 @@
+package mvc.model;
+
+/**
+ * Model the diagnostics of a set of bodies: their kinetic energy, their total momentum, their
+ * centre of mass and their bounding box.
+ * <p>
+ * The diagnostics of disjoint sets of bodies can be combined, so that the diagnostics of a
+ * simulation can be computed as a parallel reduction over the partitions of its bodies.
+ */
+public class Diagnostics {
+    /** The diagnostics of an empty set of bodies. */
+    public static final Diagnostics EMPTY = new Diagnostics(
+        0, 0, 0, 0, 0, 0, 0,
+        Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY
+    );
+
+    private final int numberOfBodies;
+    private final double totalMass;
+    private final double kineticEnergy;
+    private final double momentumX;
+    private final double momentumY;
+    /** The sum of the x coordinates of the bodies weighted by their mass. */
+    private final double weightedX;
+    /** The sum of the y coordinates of the bodies weighted by their mass. */
+    private final double weightedY;
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+
+    private Diagnostics(int numberOfBodies, double totalMass, double kineticEnergy, double momentumX, double momentumY,
+                        double weightedX, double weightedY, double minX, double minY, double maxX, double maxY){
+        this.numberOfBodies = numberOfBodies;
+        this.totalMass = totalMass;
+        this.kineticEnergy = kineticEnergy;
+        this.momentumX = momentumX;
+        this.momentumY = momentumY;
+        this.weightedX = weightedX;
+        this.weightedY = weightedY;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * @param bodies the specified bodies
+     * @return the diagnostics of the specified bodies
+     */
+    public static Diagnostics of(Iterable<Body> bodies){
+        int numberOfBodies = 0;
+        double totalMass = 0, kineticEnergy = 0, momentumX = 0, momentumY = 0, weightedX = 0, weightedY = 0;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Body b: bodies) {
+            double m = b.getMass(), x = b.getPos().getX(), y = b.getPos().getY(), vx = b.getVel().getX(), vy = b.getVel().getY();
+            numberOfBodies++;
+            totalMass += m;
+            kineticEnergy += 0.5 * m * (vx*vx + vy*vy);
+            momentumX += m * vx;
+            momentumY += m * vy;
+            weightedX += m * x;
+            weightedY += m * y;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        return new Diagnostics(numberOfBodies, totalMass, kineticEnergy, momentumX, momentumY, weightedX, weightedY, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * @param other the specified diagnostics
+     * @return the diagnostics of the union of the bodies of these diagnostics and of the specified
+     *         diagnostics, assuming that they are disjoint.
+     */
+    public Diagnostics combine(Diagnostics other){
+        return new Diagnostics(
+            this.numberOfBodies + other.numberOfBodies,
+            this.totalMass + other.totalMass,
+            this.kineticEnergy + other.kineticEnergy,
+            this.momentumX + other.momentumX,
+            this.momentumY + other.momentumY,
+            this.weightedX + other.weightedX,
+            this.weightedY + other.weightedY,
+            Math.min(this.minX, other.minX),
+            Math.min(this.minY, other.minY),
+            Math.max(this.maxX, other.maxX),
+            Math.max(this.maxY, other.maxY)
+        );
+    }
+
+    public int getNumberOfBodies(){ return this.numberOfBodies; }
+    public double getKineticEnergy(){ return this.kineticEnergy; }
+    public double getMomentumX(){ return this.momentumX; }
+    public double getMomentumY(){ return this.momentumY; }
+    /** @return the magnitude of the total momentum of the bodies. */
+    public double getMomentum(){ return Math.hypot(this.momentumX, this.momentumY); }
+    public double getCentreOfMassX(){ return this.weightedX / this.totalMass; }
+    public double getCentreOfMassY(){ return this.weightedY / this.totalMass; }
+    /** @return the smallest boundary containing the positions of the bodies, or null if there are no bodies. */
+    public Boundary getBoundingBox(){ return this.numberOfBodies > 0 ? new Boundary(this.minX, this.minY, this.maxX, this.maxY) : null; }
+
+    /**
+     * @param baseline the specified diagnostics
+     * @return the drift of the kinetic energy of these diagnostics from the kinetic energy of the
+     *         specified diagnostics, relative to the latter.
+     */
+    public double getEnergyDriftFrom(Diagnostics baseline){ return relativeDrift(this.kineticEnergy, baseline.kineticEnergy); }
+    /**
+     * @param baseline the specified diagnostics
+     * @return the magnitude of the difference between the total momentum of these diagnostics and
+     *         the total momentum of the specified diagnostics, relative to the magnitude of the latter.
+     */
+    public double getMomentumDriftFrom(Diagnostics baseline){
+        double drift = Math.hypot(this.momentumX - baseline.momentumX, this.momentumY - baseline.momentumY);
+        return baseline.getMomentum() != 0 ? drift / baseline.getMomentum() : drift;
+    }
+
+    /**
+     * @return the difference between the specified value and the specified reference, relative to
+     *         the specified reference if it is not null.
+     */
+    private static double relativeDrift(double value, double reference){
+        return reference != 0 ? (value - reference) / Math.abs(reference) : value - reference;
+    }
+
+    @Override
+    public String toString() {
+        return "Diagnostics(bodies=" + numberOfBodies + ", energy=" + kineticEnergy
+               + ", momentum=(" + momentumX + "," + momentumY + ")"
+               + ", centreOfMass=(" + getCentreOfMassX() + "," + getCentreOfMassY() + ")"
+               + ", boundingBox=[(" + minX + "," + minY + "),(" + maxX + "," + maxY + ")])";
+    }
+}
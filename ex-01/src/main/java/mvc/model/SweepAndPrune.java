@@ -0,0 +1,111 @@
+package mvc.model;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Model a sort-and-sweep broadphase along the x axis, used to detect the collisions between bodies.
+ * <p>
+ * The bodies are kept sorted by the left end of their extent on the x axis. Since the bodies
+ * move little between two iterations, the order of the previous iteration is almost sorted,
+ * so it is restored with an insertion sort in nearly linear time.
+ */
+public class SweepAndPrune {
+    /** The identifiers of the bodies, sorted by the left end of their extent on the x axis. */
+    private int[] order;
+    /** The left ends of the extents of the bodies, in the same order of the identifiers. */
+    private double[] minX;
+
+    public static SweepAndPrune copyOf(SweepAndPrune sweepAndPrune){ return new SweepAndPrune(sweepAndPrune); }
+    public SweepAndPrune(){
+        this.order = new int[0];
+        this.minX = new double[0];
+    }
+    private SweepAndPrune(SweepAndPrune sweepAndPrune){
+        this.order = sweepAndPrune.order.clone();
+        this.minX = sweepAndPrune.minX.clone();
+    }
+
+    /**
+     * Sorts the specified bodies by the left end of their extent on the x axis, starting from the
+     * order of the last sort.
+     * @param bodies a map from the identifiers to the bodies to be sorted
+     * @return the specified bodies sorted by the left end of their extent on the x axis
+     */
+    public List<Body> sort(Map<Integer, Body> bodies){
+        if (this.order.length != bodies.size() || !Arrays.stream(this.order).allMatch(bodies::containsKey)) {
+            this.order = bodies.values().stream()
+                               .sorted(Comparator.comparingDouble(SweepAndPrune::minX))
+                               .mapToInt(Body::getId)
+                               .toArray();
+            this.minX = new double[this.order.length];
+        }
+        for (int i = 0; i < this.order.length; i++) { this.minX[i] = minX(bodies.get(this.order[i])); }
+        for (int i = 1; i < this.order.length; i++) {
+            int id = this.order[i];
+            double key = this.minX[i];
+            int j = i - 1;
+            while (j >= 0 && this.minX[j] > key) {
+                this.order[j + 1] = this.order[j];
+                this.minX[j + 1] = this.minX[j];
+                j--;
+            }
+            this.order[j + 1] = id;
+            this.minX[j + 1] = key;
+        }
+        return Arrays.stream(this.order).mapToObj(bodies::get).collect(Collectors.toList());
+    }
+
+    /**
+     * Sweeps the specified range of the specified sorted bodies, finding the collisions between
+     * each body in the range and the bodies that follow it in the specified order.
+     * @param sortedBodies the specified bodies, sorted as by {@link #sort}
+     * @param fromInclusive the first end of the specified range inclusive
+     * @param toExclusive the second end of the specified range exclusive
+     * @return the collisions found, each one reported only once
+     */
+    public static List<Contact> findContacts(List<Body> sortedBodies, int fromInclusive, int toExclusive){
+        List<Contact> contacts = new ArrayList<>();
+        for (int i = fromInclusive; i < toExclusive; i++) {
+            Body body = sortedBodies.get(i);
+            double maxX = maxX(body);
+            for (int j = i + 1; j < sortedBodies.size() && minX(sortedBodies.get(j)) <= maxX; j++) {
+                Body other = sortedBodies.get(j);
+                if (body.collidesWith(other)) { contacts.add(new Contact(body.getId(), other.getId())); }
+            }
+        }
+        return contacts;
+    }
+
+    /** @return the left end of the extent of the specified body on the x axis. */
+    private static double minX(Body body){ return body.getPos().getX() - body.getRadius(); }
+    /** @return the right end of the extent of the specified body on the x axis. */
+    private static double maxX(Body body){ return body.getPos().getX() + body.getRadius(); }
+
+    /**
+     * Model a collision between two bodies.
+     */
+    public static class Contact {
+        /** The identifier of the first body of this collision. */
+        public final int firstId;
+        /** The identifier of the second body of this collision. */
+        public final int secondId;
+
+        public Contact(int firstId, int secondId){
+            this.firstId = firstId;
+            this.secondId = secondId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Contact contact = (Contact) o;
+            return firstId == contact.firstId && secondId == contact.secondId;
+        }
+        @Override
+        public int hashCode() { return Objects.hash(firstId, secondId); }
+        @Override
+        public String toString() { return "Contact(" + firstId + "," + secondId + ")"; }
+    }
+}
@@ -0,0 +1,163 @@
+package util.event;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Model a bus where events are published and delivered asynchronously to their subscribers.
+ * Subscribers are executed one at a time in a dedicated thread, so publishing an event never waits for
+ * its subscribers. Each subscriber receives its events in the order they have been published, but at most
+ * a certain number of them is kept waiting for each subscriber: if a subscriber falls behind, its oldest
+ * pending events are dropped in favour of the newest ones.
+ */
+public class EventBus {
+    /** The default max number of events waiting to be delivered to the same subscriber. */
+    public static final int DEFAULT_CAPACITY = 64;
+    private final ExecutorService executor;
+    private final List<Subscription<?>> subscriptions;
+    private final int capacity;
+
+    public EventBus(){ this(DEFAULT_CAPACITY); }
+    /**
+     * @param capacity the max number of events waiting to be delivered to the same subscriber
+     */
+    public EventBus(int capacity){
+        if (capacity < 1) { throw new IllegalArgumentException("The capacity of the subscriptions must be positive: " + capacity); }
+        this.capacity = capacity;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "EventBus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.subscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Adds the specified subscriber to the handlers of the events of the specified type. If the
+     * subscriber falls behind, only the newest events up to the capacity of this bus are kept.
+     * @param eventType the specified type of events
+     * @param subscriber the specified subscriber
+     * @param <E> the specified type of events
+     * @return this
+     */
+    public <E> EventBus subscribe(Class<E> eventType, Consumer<? super E> subscriber){ return this.subscribe(eventType, subscriber, 0); }
+    /**
+     * Adds the specified subscriber to the handlers of the events of the specified type, throttling
+     * the events delivered to it: the events published within the specified interval from the last
+     * event delivered to the subscriber are dropped.
+     * @param eventType the specified type of events
+     * @param subscriber the specified subscriber
+     * @param minIntervalMillis the specified interval in milliseconds
+     * @param <E> the specified type of events
+     * @return this
+     */
+    public <E> EventBus subscribe(Class<E> eventType, Consumer<? super E> subscriber, long minIntervalMillis){
+        this.subscriptions.add(new Subscription<>(eventType, subscriber, TimeUnit.MILLISECONDS.toNanos(minIntervalMillis)));
+        return this;
+    }
+    /**
+     * Publishes the specified event to the subscribers of its type.
+     * @param event the specified event
+     */
+    public void publish(Object event){
+        this.subscriptions.forEach(subscription -> subscription.offer(event));
+    }
+    /**
+     * Stops accepting new events. The events already published are still delivered.
+     */
+    public void close(){ this.executor.shutdown(); }
+    /**
+     * Waits until all the events published before this bus was closed have been delivered.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitTermination() throws InterruptedException {
+        this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Model the subscription of a subscriber to a certain type of events.
+     * @param <E> the type of events
+     */
+    private class Subscription<E> {
+        private final Class<E> eventType;
+        private final Consumer<? super E> subscriber;
+        private final long minIntervalNanos;
+        private final AtomicLong lastDeliveryNanos;
+        private final Deque<E> pending;
+        private boolean scheduled;
+
+        private Subscription(Class<E> eventType, Consumer<? super E> subscriber, long minIntervalNanos){
+            this.eventType = eventType;
+            this.subscriber = subscriber;
+            this.minIntervalNanos = minIntervalNanos;
+            this.lastDeliveryNanos = new AtomicLong(System.nanoTime() - minIntervalNanos);
+            this.pending = new ArrayDeque<>();
+            this.scheduled = false;
+        }
+
+        /**
+         * Enqueues the specified event for the subscriber, if it is of the subscribed type and the
+         * subscription is not throttled, dropping the oldest pending event if the queue is full.
+         * @param event the specified event
+         */
+        private void offer(Object event){
+            if (!this.eventType.isInstance(event) || EventBus.this.executor.isShutdown()) { return; }
+            if (this.minIntervalNanos > 0) {
+                long now = System.nanoTime();
+                long last = this.lastDeliveryNanos.get();
+                if (now - last < this.minIntervalNanos || !this.lastDeliveryNanos.compareAndSet(last, now)) { return; }
+            }
+            synchronized (this) {
+                if (this.pending.size() == EventBus.this.capacity) { this.pending.pollFirst(); }
+                this.pending.addLast(this.eventType.cast(event));
+                if (!this.scheduled) {
+                    try {
+                        EventBus.this.executor.execute(this::deliver);
+                        this.scheduled = true;
+                    } catch (RejectedExecutionException e) { this.pending.clear(); }
+                }
+            }
+        }
+        /**
+         * Delivers the events pending when this task starts, then yields the thread of the bus to the
+         * other subscriptions if new events have been enqueued meanwhile. Once the bus is closed, all
+         * the pending events are delivered by this task instead.
+         */
+        private void deliver(){
+            boolean closed = false;
+            do {
+                int batch;
+                synchronized (this) { batch = this.pending.size(); }
+                try {
+                    for (int i = 0; i < batch; i++) {
+                        E event;
+                        synchronized (this) { event = this.pending.pollFirst(); }
+                        if (event == null) { break; }
+                        this.subscriber.accept(event);
+                    }
+                } finally {
+                    closed = this.reschedule();
+                }
+            } while (closed);
+        }
+        /**
+         * Schedules the delivery of the pending events, if there are any.
+         * @return true if there are pending events but the bus has been closed, false otherwise
+         */
+        private synchronized boolean reschedule(){
+            if (this.pending.isEmpty()) { this.scheduled = false; return false; }
+            try {
+                EventBus.this.executor.execute(this::deliver);
+                return false;
+            } catch (RejectedExecutionException e) { return true; }
+        }
+    }
+}
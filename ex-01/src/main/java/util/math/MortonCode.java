@@ -0,0 +1,51 @@
+package util.math;
+
+/**
+ * Model a utility for the Morton codes (Z-order curve) of points in two dimensions.
+ * Points that are close in space tend to have close Morton codes, so sorting by Morton
+ * code keeps spatially close points close in memory.
+ */
+public class MortonCode {
+    /** The number of bits used to quantize each coordinate. */
+    public static final int BITS_PER_COORDINATE = 16;
+    private static final int MAX_CELL = (1 << BITS_PER_COORDINATE) - 1;
+
+    private MortonCode() {}
+
+    /**
+     * @param x the first coordinate, quantized
+     * @param y the second coordinate, quantized
+     * @return the Morton code of the specified coordinates, obtained by interleaving their bits
+     */
+    public static int encode(int x, int y){
+        return spread(x) | (spread(y) << 1);
+    }
+    /**
+     * @param x the first coordinate of the specified point
+     * @param y the second coordinate of the specified point
+     * @param x0 the lower bound of the first coordinate
+     * @param y0 the lower bound of the second coordinate
+     * @param x1 the upper bound of the first coordinate
+     * @param y1 the upper bound of the second coordinate
+     * @return the Morton code of the specified point, quantized inside the specified bounds.
+     *         Points outside the specified bounds are clamped to the bounds.
+     */
+    public static int encode(double x, double y, double x0, double y0, double x1, double y1){
+        return encode(quantize(x, x0, x1), quantize(y, y0, y1));
+    }
+
+    /** @return the specified value quantized in the specified range. */
+    private static int quantize(double value, double from, double to){
+        int cell = (int) ((value - from) / (to - from) * MAX_CELL);
+        return Math.max(0, Math.min(MAX_CELL, cell));
+    }
+    /** @return the lower bits of the specified value, spread so that there is a zero bit between each of them. */
+    private static int spread(int value){
+        int v = value & MAX_CELL;
+        v = (v | (v << 8)) & 0x00FF00FF;
+        v = (v | (v << 4)) & 0x0F0F0F0F;
+        v = (v | (v << 2)) & 0x33333333;
+        v = (v | (v << 1)) & 0x55555555;
+        return v;
+    }
+}
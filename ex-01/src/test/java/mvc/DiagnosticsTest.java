@@ -0,0 +1,52 @@
+package mvc;
+
+import mvc.model.Body;
+import mvc.model.Diagnostics;
+import org.junit.Test;
+import util.data.ListUtil;
+import util.math.P2d;
+import util.math.V2d;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class DiagnosticsTest {
+    private static final double EPSILON = 1e-9;
+
+    @Test public void testOf(){
+        Diagnostics diagnostics = Diagnostics.of(List.of(
+            new Body(0, new P2d(0, 0), new V2d(1, 0), new V2d(0, 0), 1),
+            new Body(1, new P2d(2, 1), new V2d(0, -1), new V2d(0, 0), 3)
+        ));
+        assertEquals(2, diagnostics.getNumberOfBodies());
+        assertEquals(2, diagnostics.getKineticEnergy(), EPSILON);
+        assertEquals(1, diagnostics.getMomentumX(), EPSILON);
+        assertEquals(-3, diagnostics.getMomentumY(), EPSILON);
+        assertEquals(1.5, diagnostics.getCentreOfMassX(), EPSILON);
+        assertEquals(0.75, diagnostics.getCentreOfMassY(), EPSILON);
+        assertEquals(2, diagnostics.getBoundingBox().getX1(), EPSILON);
+        assertEquals(0, diagnostics.getBoundingBox().getY0(), EPSILON);
+    }
+    @Test public void testCombine(){
+        Random rand = new Random(42);
+        List<Body> bodies = IntStream.range(0, 1000)
+                                     .mapToObj(i -> new Body(i, new P2d(rand.nextDouble(), rand.nextDouble()), new V2d(rand.nextDouble(), rand.nextDouble()), new V2d(0, 0), 1 + rand.nextDouble()))
+                                     .collect(Collectors.toList());
+        Diagnostics expected = Diagnostics.of(bodies);
+        Diagnostics combined = ListUtil.partition(bodies, 7)
+                                       .stream()
+                                       .map(range -> Diagnostics.of(bodies.subList(range.from, range.to)))
+                                       .reduce(Diagnostics.EMPTY, Diagnostics::combine);
+        assertEquals(expected.getNumberOfBodies(), combined.getNumberOfBodies());
+        assertEquals(expected.getKineticEnergy(), combined.getKineticEnergy(), EPSILON);
+        assertEquals(expected.getMomentum(), combined.getMomentum(), EPSILON);
+        assertEquals(expected.getCentreOfMassX(), combined.getCentreOfMassX(), EPSILON);
+        assertEquals(expected.getBoundingBox().getX0(), combined.getBoundingBox().getX0(), EPSILON);
+        assertEquals(0, combined.getEnergyDriftFrom(expected), EPSILON);
+        assertEquals(0, combined.getMomentumDriftFrom(expected), EPSILON);
+    }
+}
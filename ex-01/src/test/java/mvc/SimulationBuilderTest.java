@@ -0,0 +1,64 @@
+package mvc;
+
+import mvc.actor.SimulationBuilder;
+import mvc.actor.SimulationBuilder.Simulation;
+import mvc.model.Body;
+import mvc.model.Boundary;
+import org.junit.Test;
+import util.math.MortonCode;
+import util.math.P2d;
+import util.math.V2d;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class SimulationBuilderTest {
+    private static final Boundary BOUNDS = new Boundary(-1, -1, 1, 1);
+
+    @Test public void testReorderBodies(){
+        Random rand = new Random(42);
+        List<Body> bodies = IntStream.range(0, 500)
+                                     .mapToObj(i -> new Body(i, new P2d(rand.nextDouble() * 2 - 1, rand.nextDouble() * 2 - 1), new V2d(0, 0), new V2d(0, 0), 1))
+                                     .collect(Collectors.toList());
+        Simulation simulation = simulationOf(bodies, 0).reorderBodies();
+        List<Body> reordered = new ArrayList<>(simulation.bodies.values());
+        assertEquals(bodies.size(), reordered.size());
+        assertTrue(reordered.containsAll(bodies));
+        reordered.forEach(body -> assertSame(body, simulation.bodies.get(body.getId())));
+        for (int i = 1; i < reordered.size(); i++) {
+            assertTrue(Integer.compareUnsigned(mortonCodeOf(reordered.get(i - 1)), mortonCodeOf(reordered.get(i))) <= 0);
+        }
+    }
+    @Test public void testReorderBodiesPeriodically(){
+        List<Body> bodies = List.of(
+            new Body(0, new P2d(0.9, 0.9), new V2d(0, 0), new V2d(0, 0), 1),
+            new Body(1, new P2d(-0.9, -0.9), new V2d(0, 0), new V2d(0, 0), 1)
+        );
+        Simulation simulation = simulationOf(bodies, 2);
+        assertEquals(List.of(1, 0), new ArrayList<>(simulation.bodies.keySet()));
+        simulation.updateBodies(List.of(new Body(1, new P2d(0.95, 0.95), new V2d(0, 0), new V2d(0, 0), 1)));
+        simulation.completeIteration();
+        assertEquals(List.of(1, 0), new ArrayList<>(simulation.bodies.keySet()));
+        simulation.completeIteration();
+        assertEquals(List.of(0, 1), new ArrayList<>(simulation.bodies.keySet()));
+    }
+    @Test public void testDuplicateIds(){
+        List<Body> bodies = List.of(
+            new Body(0, new P2d(0, 0), new V2d(0, 0), new V2d(0, 0), 1),
+            new Body(0, new P2d(0.5, 0.5), new V2d(0, 0), new V2d(0, 0), 1)
+        );
+        assertThrows(IllegalStateException.class, () -> simulationOf(bodies, 1));
+    }
+
+    private static Simulation simulationOf(List<Body> bodies, long reorderingPeriod){
+        return new SimulationBuilder().setBodies(bodies).setBoundary(BOUNDS).setMaxIterations(10).setDeltaTime(0.01).setReorderingPeriod(reorderingPeriod).build();
+    }
+    private static int mortonCodeOf(Body body){
+        return MortonCode.encode(body.getPos().getX(), body.getPos().getY(), BOUNDS.getX0(), BOUNDS.getY0(), BOUNDS.getX1(), BOUNDS.getY1());
+    }
+}
@@ -0,0 +1,53 @@
+package mvc;
+
+import mvc.model.Body;
+import mvc.model.SweepAndPrune;
+import mvc.model.SweepAndPrune.Contact;
+import org.junit.Test;
+import util.math.P2d;
+import util.math.V2d;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class SweepAndPruneTest {
+    @Test public void testSort(){
+        Map<Integer, Body> bodies = randomBodies(500, new Random(42));
+        SweepAndPrune sweepAndPrune = new SweepAndPrune();
+        assertSortedByMinX(sweepAndPrune.sort(bodies));
+        bodies.values().forEach(b -> b.updatePosition(0.01));
+        assertSortedByMinX(sweepAndPrune.sort(bodies));
+    }
+    @Test public void testFindContacts(){
+        Map<Integer, Body> bodies = randomBodies(500, new Random(42));
+        List<Body> sortedBodies = new SweepAndPrune().sort(bodies);
+        Set<Contact> sweptContacts = new HashSet<>(SweepAndPrune.findContacts(sortedBodies, 0, 250));
+        sweptContacts.addAll(SweepAndPrune.findContacts(sortedBodies, 250, sortedBodies.size()));
+
+        Set<Contact> expectedContacts = new HashSet<>();
+        for (int i = 0; i < sortedBodies.size(); i++) {
+            for (int j = i + 1; j < sortedBodies.size(); j++) {
+                if (sortedBodies.get(i).collidesWith(sortedBodies.get(j))) {
+                    expectedContacts.add(new Contact(sortedBodies.get(i).getId(), sortedBodies.get(j).getId()));
+                }
+            }
+        }
+        assertFalse(expectedContacts.isEmpty());
+        assertEquals(expectedContacts, sweptContacts);
+    }
+
+    private static Map<Integer, Body> randomBodies(int nBodies, Random rand){
+        return IntStream.range(0, nBodies)
+                        .mapToObj(i -> new Body(i, new P2d(rand.nextDouble(), rand.nextDouble()), new V2d(rand.nextDouble() - 0.5, rand.nextDouble() - 0.5), new V2d(0, 0), 1, 0.02))
+                        .collect(Collectors.toMap(Body::getId, Function.identity()));
+    }
+    private static void assertSortedByMinX(List<Body> bodies){
+        for (int i = 1; i < bodies.size(); i++) {
+            assertTrue(bodies.get(i - 1).getPos().getX() - bodies.get(i - 1).getRadius() <= bodies.get(i).getPos().getX() - bodies.get(i).getRadius());
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package util;
+
+import org.junit.Test;
+import util.math.MortonCode;
+
+import static org.junit.Assert.*;
+
+public class MortonCodeTest {
+    @Test public void testEncode(){
+        assertEquals(0, MortonCode.encode(0, 0));
+        assertEquals(1, MortonCode.encode(1, 0));
+        assertEquals(2, MortonCode.encode(0, 1));
+        assertEquals(3, MortonCode.encode(1, 1));
+        assertEquals(0b110100, MortonCode.encode(0b110, 0b100));
+        assertEquals(0xFFFFFFFF, MortonCode.encode(0xFFFF, 0xFFFF));
+    }
+    @Test public void testEncodeInBounds(){
+        assertEquals(0, MortonCode.encode(-10D, -10D, -1D, -1D, 1D, 1D));
+        assertEquals(0xFFFFFFFF, MortonCode.encode(10D, 10D, -1D, -1D, 1D, 1D));
+        assertTrue(
+            Integer.compareUnsigned(MortonCode.encode(-0.9, -0.9, -1D, -1D, 1D, 1D), MortonCode.encode(0.9, 0.9, -1D, -1D, 1D, 1D)) < 0
+        );
+    }
+}
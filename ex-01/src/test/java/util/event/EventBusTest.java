@@ -0,0 +1,55 @@
+package util.event;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class EventBusTest {
+    @Test public void testDeliveryInOrder() throws InterruptedException {
+        EventBus bus = new EventBus(100);
+        List<Integer> delivered = new CopyOnWriteArrayList<>();
+        bus.subscribe(Integer.class, delivered::add);
+        IntStream.range(0, 100).forEach(bus::publish);
+        bus.publish("not an integer");
+        bus.close();
+        bus.awaitTermination();
+        assertEquals(IntStream.range(0, 100).boxed().collect(Collectors.toList()), delivered);
+    }
+
+    @Test public void testDropOldestWhenSubscriberFallsBehind() throws InterruptedException {
+        EventBus bus = new EventBus(4);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> delivered = new CopyOnWriteArrayList<>();
+        bus.subscribe(Integer.class, event -> {
+            if (event == 0) {
+                blocked.countDown();
+                try { release.await(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }
+            delivered.add(event);
+        });
+        bus.publish(0);
+        blocked.await();
+        IntStream.range(1, 1000).forEach(bus::publish);
+        release.countDown();
+        bus.close();
+        bus.awaitTermination();
+        assertEquals(List.of(0, 996, 997, 998, 999), delivered);
+    }
+
+    @Test public void testNoEventsAfterClose() throws InterruptedException {
+        EventBus bus = new EventBus();
+        List<Integer> delivered = new CopyOnWriteArrayList<>();
+        bus.subscribe(Integer.class, delivered::add);
+        bus.close();
+        bus.publish(1);
+        bus.awaitTermination();
+        assertTrue(delivered.isEmpty());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+package cluster.message
+
+import actor.CityActor.Snapshot
+import actor.PluviometerActor.Reading
+import actor.ViewActor.ReceiveSnapshot
+import actor.ZoneActor.SignalFrame
+import akka.actor.ExtendedActorSystem
+import akka.actor.typed.scaladsl.Behaviors
+import akka.actor.typed.scaladsl.adapter.*
+import akka.actor.typed.{ActorRef, ActorSystem}
+import akka.serialization.{Serialization, SerializationExtension, SerializerWithStringManifest}
+import com.typesafe.config.ConfigFactory
+import org.openjdk.jmh.annotations.*
+import util.Id
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Model a benchmark comparing the round-trip of the messages of a city through the [[CitySerializer]]
+ * and through the Jackson CBOR serializer it replaces.
+ * Run with `sbt "exercise02Benchmark/Jmh/run -i 5 -wi 3 -f 1"`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class SerializationBenchmark:
+    private var system: ActorSystem[Nothing] = _
+    private var city: CitySerializer = _
+    private var cbor: SerializerWithStringManifest = _
+    private var snapshot: Snapshot = _
+    private var frame: SignalFrame = _
+
+    @Setup
+    def setup(): Unit =
+        this.system = ActorSystem(Behaviors.empty, "SerializationBenchmark",
+            ConfigFactory.parseString(
+                // the messages bound to the city serializer are allowed to Jackson, in order to compare the two
+                """akka.actor.provider = local
+                  |akka.serialization.jackson.allowed-class-prefix = ["actor."]""".stripMargin
+            ).withFallback(ConfigFactory.load("cluster"))
+        )
+        this.city = CitySerializer(this.system.toClassic.asInstanceOf[ExtendedActorSystem])
+        this.cbor = SerializationExtension(this.system).serializerFor(classOf[CborSerializable]).asInstanceOf[SerializerWithStringManifest]
+        this.snapshot = Snapshot.random
+        this.frame = SignalFrame(
+            this.system.deadLetters, Id.newId, 0,
+            List.tabulate(32)(i => Reading(Math.random(), i % 2 == 0, System.currentTimeMillis()))
+        )
+
+    @TearDown
+    def tearDown(): Unit = this.system.terminate()
+
+    /** Jackson can't read back messages with a single field, so the snapshot is measured as their payload. */
+    @Benchmark
+    def cborSnapshot(): AnyRef = roundTrip(this.cbor, this.snapshot)
+    @Benchmark
+    def binarySnapshot(): AnyRef = roundTrip(this.city, ReceiveSnapshot(this.snapshot))
+    @Benchmark
+    def cborSignalFrame(): AnyRef = roundTrip(this.cbor, this.frame)
+    @Benchmark
+    def binarySignalFrame(): AnyRef = roundTrip(this.city, this.frame)
+
+    /** As performed by the transport, which provides the actor system to the serializers that write actor references. */
+    private def roundTrip(serializer: SerializerWithStringManifest, message: AnyRef): AnyRef =
+        Serialization.withTransportInformation(this.system.toClassic.asInstanceOf[ExtendedActorSystem]) { () =>
+            serializer.fromBinary(serializer.toBinary(message), serializer.manifest(message))
+        }
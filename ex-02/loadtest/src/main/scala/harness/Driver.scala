@@ -0,0 +1,248 @@
+package harness
+
+import actor.CityActor.{RequestSnapshot, Snapshot}
+import actor.PluviometerActor.Rain
+import actor.ViewActor.{ReceiveSnapshot, ReceiveSnapshotDelta}
+import actor.ZoneActor.{Zone, ZoneData}
+import actor.{CityActor, Entities, SnapshotTopics, ViewActor}
+import akka.actor.typed.pubsub.Topic
+import akka.actor.typed.receptionist.{Receptionist, ServiceKey}
+import akka.actor.typed.scaladsl.{ActorContext, Behaviors, Routers, TimerScheduler}
+import akka.actor.typed.{ActorRef, Behavior}
+import akka.cluster.typed.Cluster
+import configuration.C.Log.*
+import configuration.C.View.RECONNECTION_PERIOD
+import harness.LoadTest.Settings
+import harness.NodeProbe.{NodeStats, RequestStats}
+import util.Id.EntityId
+import util.PartitionIndex.Bounds
+import util.{Id, PartitionIndex}
+
+import java.lang.management.ManagementFactory
+import scala.concurrent.duration.{DurationInt, FiniteDuration}
+import scala.util.Random
+
+/**
+ * Model the actor driving a load test from his own node of the cluster.
+ *
+ * The driver observes the cities in the cluster as a view would, keeping their pluviometers dry except for
+ * synthetic storms over random calm zones. For each storm, he measures the latency between the start of the rain
+ * and the alarm of the zone, then between the start of the rain and the departure of a fire-station for the zone,
+ * as observed in the snapshots of the city. At the end of the test, the statistics of the worker nodes are
+ * collected and reported together with the ones of the driver.
+ */
+object Driver:
+  /**
+   * Model the messages of a driver.
+   */
+  trait Message
+  /** Tells this driver that the specified message has been sent to him as a view of the specified city. */
+  private case class Observe(cityId: EntityId, message: ViewActor.Message) extends Message
+  /** Tells this driver to request a full snapshot to the cities he has not received one from yet. */
+  private case object RequestSnapshots extends Message
+  /** Tells this driver that the cities did not reply to his requests in time. */
+  private case object StartupTimeout extends Message
+  /** Tells this driver to start a storm over a random calm zone of each city. */
+  private case object StartStorms extends Message
+  /** Tells this driver to stop the storm over the specified zone of the specified city. */
+  private case class EndStorm(cityId: EntityId, zoneId: EntityId) extends Message
+  /** Tells this driver to stop the test and collect the statistics of the worker nodes. */
+  private case object Finish extends Message
+  /** Tells this driver the node probes found in the cluster. */
+  private case class ProbesFound(listing: Receptionist.Listing) extends Message
+  /** Tells this driver the statistics of a worker node. */
+  private case class ReceiveStats(stats: NodeStats) extends Message
+  /** Tells this driver to report the statistics collected so far. */
+  private case object Report extends Message
+
+  /** The maximum time waited for the statistics of the worker nodes. */
+  private val StatsTimeout: FiniteDuration = 30.seconds
+
+  /**
+   * @param settings the settings of the load test
+   * @param cityIds  the identifiers of the cities in the cluster
+   */
+  def apply(settings: Settings, cityIds: Seq[EntityId]): Behavior[Message] =
+    Behaviors.setup { context =>
+      Entities.init(context.system)
+      val self: ActorRef[Message] = context.self
+      val cities: Map[EntityId, ActorRef[CityActor.Message]] =
+        Map.from(cityIds.map(cityId => (cityId, context.spawnAnonymous(Routers.group(ServiceKey[CityActor.Message](Id.show(cityId)))))))
+      val observers: Map[EntityId, ActorRef[ViewActor.Message]] = Map.from(cityIds.map(cityId => (cityId,
+        context.spawnAnonymous(Behaviors.receiveMessage[ViewActor.Message] { message => self ! Observe(cityId, message); Behaviors.same })
+      )))
+      cityIds.foreach(cityId => SnapshotTopics(context.system).topicOf(cityId) ! Topic.Subscribe(observers(cityId)))
+      Behaviors.withTimers { timers =>
+        timers.startTimerAtFixedRate(RequestSnapshots, RequestSnapshots, RECONNECTION_PERIOD)
+        timers.startSingleTimer(StartupTimeout, StartupTimeout, settings.startupTimeout)
+        Connecting(settings, cities, observers, timers)
+      }
+    }
+
+  /** Behavior where this driver waits for the first snapshot of each city, while the cluster starts. */
+  private[Driver] object Connecting:
+    def apply(settings: Settings, cities: Map[EntityId, ActorRef[CityActor.Message]], observers: Map[EntityId, ActorRef[ViewActor.Message]], timers: TimerScheduler[Message]): Behavior[Message] =
+      Behaviors.setup { context =>
+        var snapshots: Map[EntityId, Snapshot] = Map()
+        Behaviors.receiveMessage {
+          case RequestSnapshots =>
+            cities.removedAll(snapshots.keys).foreach((cityId, city) => city ! RequestSnapshot(observers(cityId)))
+            Behaviors.same
+          case Observe(cityId, ReceiveSnapshot(snapshot)) =>
+            snapshots = snapshots + (cityId -> snapshot)
+            if snapshots.size < cities.size then Behaviors.same else
+              timers.cancelAll()
+              context.log.info("Connected to {} cities, starting the load test", cities.size)
+              Running(settings, cities, observers, snapshots, timers)
+          case StartupTimeout =>
+            context.log.error("Connected to {} of {} cities before the timeout, aborting the load test", snapshots.size, cities.size)
+            context.system.terminate()
+            Behaviors.stopped
+          case _ => Behaviors.same
+        }
+      }
+
+  /**
+   * Behavior where this driver starts a storm over a random calm zone of each city periodically, tracking the
+   * state of the zones under each storm in the snapshots of the cities, until the end of the test.
+   */
+  private[Driver] object Running:
+    /**
+     * Model a storm over a zone.
+     * @param cityId      the identifier of the city of the zone
+     * @param startMillis the instant the storm started, in milliseconds since the epoch
+     * @param alarmed     true if the zone has been observed under alarm, false otherwise
+     * @param monitored   true if the zone has been observed monitored by a fire-station, false otherwise
+     */
+    private case class Storm(cityId: EntityId, startMillis: Long, alarmed: Boolean = false, monitored: Boolean = false)
+
+    def apply(settings: Settings, cities: Map[EntityId, ActorRef[CityActor.Message]], observers: Map[EntityId, ActorRef[ViewActor.Message]], initialSnapshots: Map[EntityId, Snapshot], timers: TimerScheduler[Message]): Behavior[Message] =
+      Behaviors.setup { context =>
+        /** A map from the cities to a map from their zones to the pluviometers inside them. */
+        val pluviometers: Map[EntityId, Map[EntityId, Seq[EntityId]]] = initialSnapshots.map((cityId, snapshot) => {
+          val zones: PartitionIndex[EntityId] =
+            PartitionIndex(snapshot.zoneDatas.values.map(z => (Bounds.of(z.position, z.width, z.height), z.id)).toSeq)
+          (cityId, snapshot.pluviometerDatas.values.groupMap(p => zones.lookup(p.position))(_.id).collect { case (Some(zoneId), ids) => (zoneId, ids.toSeq) })
+        })
+        def rain(cityId: EntityId, zoneId: EntityId, measurement: Double, duration: FiniteDuration): Unit =
+          pluviometers(cityId).getOrElse(zoneId, Seq()).foreach(id => Entities.pluviometer(context.system, id) ! Rain(measurement, duration))
+        pluviometers.foreach((cityId, zones) => zones.keys.foreach(zoneId => rain(cityId, zoneId, 0, settings.duration)))
+        timers.startTimerAtFixedRate(StartStorms, StartStorms, settings.stormPeriod)
+        timers.startSingleTimer(Finish, Finish, settings.duration)
+
+        var snapshots: Map[EntityId, Snapshot] = initialSnapshots
+        var storms: Map[EntityId, Storm] = Map()
+        val (rainToAlarm, rainToDeparture, propagation) = (Latencies(), Latencies(), Latencies())
+        var (numberOfStorms, deltas, entityUpdates, resyncs) = (0, 0L, 0L, 0)
+        val startMillis: Long = System.currentTimeMillis()
+        def observe(zones: Iterable[ZoneData]): Unit =
+          val now: Long = System.currentTimeMillis()
+          zones.foreach(zone => storms.get(zone.id).foreach(storm => Zone.State.fromOrdinal(zone.state) match
+            case Zone.State.Alarmed if !storm.alarmed =>
+              rainToAlarm.record(now - storm.startMillis)
+              storms = storms + (zone.id -> storm.copy(alarmed = true))
+            case Zone.State.Monitored if !storm.monitored =>
+              // the alarm may have been coalesced with the departure in the same delta
+              if !storm.alarmed then rainToAlarm.record(now - storm.startMillis)
+              rainToDeparture.record(now - storm.startMillis)
+              storms = storms + (zone.id -> storm.copy(alarmed = true, monitored = true))
+            case Zone.State.Calm if storm.monitored => storms = storms - zone.id
+            case _ =>
+          ))
+
+        Behaviors.receiveMessage {
+          case StartStorms =>
+            snapshots.foreach((cityId, snapshot) =>
+              Random.shuffle(snapshot.zoneDatas.values.filter(z => z.state == Zone.State.Calm.ordinal && !storms.contains(z.id)))
+                    .headOption.foreach(zone => {
+                      rain(cityId, zone.id, 1, settings.stormDuration)
+                      storms = storms + (zone.id -> Storm(cityId, System.currentTimeMillis()))
+                      numberOfStorms += 1
+                      timers.startSingleTimer(EndStorm(cityId, zone.id), settings.stormDuration)
+                    })
+            )
+            Behaviors.same
+          case EndStorm(cityId, zoneId) =>
+            rain(cityId, zoneId, 0, settings.duration)
+            Behaviors.same
+          case Observe(cityId, ReceiveSnapshotDelta(delta)) =>
+            propagation.record(System.currentTimeMillis() - delta.timestamp)
+            deltas += 1
+            entityUpdates += delta.pluviometerDatas.size + delta.fireStationDatas.size + delta.zoneDatas.size
+            if delta.fromVersion == snapshots(cityId).version then
+              snapshots = snapshots + (cityId -> snapshots(cityId).updated(delta))
+              observe(delta.zoneDatas.values)
+            else if delta.version > snapshots(cityId).version then
+              resyncs += 1
+              cities(cityId) ! RequestSnapshot(observers(cityId))
+            Behaviors.same
+          case Observe(cityId, ReceiveSnapshot(snapshot)) =>
+            if snapshot.version > snapshots(cityId).version then
+              snapshots = snapshots + (cityId -> snapshot)
+              observe(snapshot.zoneDatas.values)
+            Behaviors.same
+          case Finish =>
+            timers.cancelAll()
+            val elapsedMillis: Long = System.currentTimeMillis() - startMillis
+            val memory = ManagementFactory.getMemoryMXBean
+            memory.gc()
+            val driverStats: NodeStats = NodeStats(
+              Cluster(context.system).selfMember.address.toString,
+              memory.getHeapMemoryUsage.getUsed,
+              memory.getHeapMemoryUsage.getCommitted,
+              deltas,
+              entityUpdates,
+              elapsedMillis,
+              propagation.summary
+            )
+            val report: List[String] = List(
+              s"cities: ${snapshots.size}, zones: ${snapshots.values.map(_.zoneDatas.size).sum}, " +
+                s"pluviometers: ${snapshots.values.map(_.pluviometerDatas.size).sum}, fire-stations: ${snapshots.values.map(_.fireStationDatas.size).sum}, " +
+                s"districts per city: ${settings.districts}",
+              s"storms: $numberOfStorms, alarmed zones: ${rainToAlarm.summary.count}, departed fire-stations: ${rainToDeparture.summary.count}, " +
+                s"resynchronizations: $resyncs",
+              s"rain -> zone alarmed (view):       ${rainToAlarm.summary}",
+              s"rain -> fire-station busy (view):  ${rainToDeparture.summary}",
+              s"alarms/s: ${(rainToAlarm.summary.count * 1000D / elapsedMillis).pretty}"
+            )
+            Collecting(driverStats, report)
+          case _ => Behaviors.same
+        }
+      }
+
+  /** Behavior where this driver collects the statistics of the worker nodes, then reports them and terminates. */
+  private[Driver] object Collecting:
+    def apply(driverStats: NodeStats, report: List[String]): Behavior[Message] =
+      Behaviors.setup { context =>
+        context.system.receptionist ! Receptionist.Find(NodeProbe.Key, context.messageAdapter(ProbesFound.apply))
+        val statsAdapter: ActorRef[NodeStats] = context.messageAdapter(ReceiveStats.apply)
+        var (expected, stats) = (Int.MaxValue, List[NodeStats]())
+        Behaviors.withTimers { timers =>
+          timers.startSingleTimer(Report, Report, StatsTimeout)
+          Behaviors.receiveMessage {
+            case ProbesFound(listing) =>
+              val probes = listing.serviceInstances(NodeProbe.Key)
+              expected = probes.size
+              probes.foreach(_ ! RequestStats(statsAdapter))
+              if expected == 0 then context.self ! Report
+              Behaviors.same
+            case ReceiveStats(nodeStats) =>
+              stats = nodeStats :: stats
+              if stats.size == expected then context.self ! Report
+              Behaviors.same
+            case Report =>
+              println((List("### Load Test Report ###") ++ report ++ (("driver", driverStats) :: stats.sortBy(_.node).map(("worker", _))).map(describe))
+                .mkString("\n"))
+              context.system.terminate()
+              Behaviors.stopped
+            case _ => Behaviors.same
+          }
+        }
+      }
+
+  /** @return a description of the specified statistics of the specified kind of node. */
+  private def describe(kind: String, stats: NodeStats): String =
+    val seconds: Double = Math.max(stats.elapsedMillis, 1) / 1000D
+    s"$kind ${stats.node}: live heap ${(stats.liveHeap / 1e6).pretty}MB, committed heap ${(stats.committedHeap / 1e6).pretty}MB, " +
+      s"deltas/s ${(stats.deltas / seconds).pretty}, entity updates/s ${(stats.entityUpdates / seconds).pretty}, " +
+      s"snapshot propagation ${stats.propagation}"
\ No newline at end of file
@@ -0,0 +1,40 @@
+package harness
+
+import cluster.message.CborSerializable
+import harness.Latencies.Summary
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Model a recorder of the latencies of some events, in milliseconds.
+ */
+class Latencies:
+  private val samples: ArrayBuffer[Long] = ArrayBuffer()
+
+  /**
+   * Records the specified latency.
+   * @param millis the specified latency, in milliseconds
+   */
+  def record(millis: Long): Unit = this.samples += Math.max(millis, 0)
+
+  /** @return a summary of the latencies recorded so far. */
+  def summary: Summary =
+    val sorted: IndexedSeq[Long] = this.samples.sorted.toIndexedSeq
+    def percentile(p: Double): Long = if sorted.isEmpty then 0 else sorted(Math.max(Math.ceil(p * sorted.size).toInt - 1, 0))
+    Summary(sorted.size, percentile(0.5), percentile(0.95), percentile(0.99), sorted.lastOption.getOrElse(0))
+
+/**
+ * Companion object of [[Latencies]].
+ */
+object Latencies:
+  /**
+   * Model a summary of some latencies.
+   * @param count the number of latencies
+   * @param p50   the median of the latencies, in milliseconds
+   * @param p95   the 95th percentile of the latencies, in milliseconds
+   * @param p99   the 99th percentile of the latencies, in milliseconds
+   * @param max   the maximum of the latencies, in milliseconds
+   */
+  case class Summary(count: Int, p50: Long, p95: Long, p99: Long, max: Long) extends CborSerializable:
+    override def toString: String =
+      if count == 0 then "n/a" else s"n=$count p50=${p50}ms p95=${p95}ms p99=${p99}ms max=${max}ms"
\ No newline at end of file
@@ -0,0 +1,125 @@
+package harness
+
+import akka.actor.typed.ActorSystem
+import cluster.AkkaCluster
+import com.typesafe.config.ConfigFactory
+import configuration.C.City.{NUMBER_OF_DISTRICTS, NUMBER_OF_ZONES}
+import configuration.C.Zone.MAX_PLUVIOMETERS_PER_ZONE
+import util.Id
+import util.Id.EntityId
+
+import java.io.File
+import java.nio.file.{Files, Path, Paths}
+import scala.concurrent.Await
+import scala.concurrent.duration.{Duration, DurationInt, FiniteDuration}
+
+/**
+ * Runs a load test of the city cluster of this application on localhost.
+ *
+ * The seed nodes of the cluster are started in a new process, as [[StartCluster]] would, then the worker nodes
+ * are started in a new process each, hosting their share of the cities with their entities and a [[NodeProbe]].
+ * Finally, this process joins the cluster with a [[Driver]], which drives synthetic rain over the cities and reports
+ * the measured latencies, throughput and memory of each node. The output of each process is written in
+ * [[LoadTest.LogDirectory]].
+ *
+ * Run with `sbt "exercise02LoadTest/runMain harness.LoadTest --workers 4 --cities 8 --zones 32 --pluviometers 3"`.
+ * See [[LoadTest.Settings]] for the other options.
+ */
+object LoadTest:
+  /** The directory where the output of the processes of the cluster is written. */
+  val LogDirectory: Path = Paths.get("target", "loadtest")
+
+  def main(args: Array[String]): Unit =
+    val settings: Settings = Settings.parse(args.toList)
+    val cityIds: Seq[EntityId] = Seq.fill(settings.cities)(Id.newId)
+    Files.createDirectories(LogDirectory)
+    val processes: Seq[Process] =
+      launch("seeds", "StartCluster", Seq(), settings.heap) +:
+      (0 until settings.workers).map(worker => launch(
+        s"worker-$worker",
+        LoadWorker.getClass.getName.stripSuffix("$"),
+        Seq(
+          settings.zones.toString,
+          settings.pluviometers.toString,
+          settings.districts.toString,
+          cityIds.indices.filter(_ % settings.workers == worker).map(cityIds).mkString(","),
+          cityIds.mkString(",")
+        ),
+        settings.heap
+      ))
+    sys.addShutdownHook(processes.foreach(_.destroy()))
+    try
+      val driver: ActorSystem[Driver.Message] = AkkaCluster(ConfigFactory.load("cluster")).join(Driver(settings, cityIds))
+      Await.ready(driver.whenTerminated, Duration.Inf)
+    finally
+      processes.foreach(_.destroy())
+      processes.foreach(_.waitFor())
+
+  /**
+   * Starts a new process executing the specified main class with the specified arguments, with the classpath of this process.
+   * @param name      the name of the new process, used to name its output
+   * @param mainClass the specified main class
+   * @param args      the specified arguments
+   * @param heap      the maximum heap of the new process, as specified to the `-Xmx` option of the JVM
+   * @return the new process
+   */
+  private def launch(name: String, mainClass: String, args: Seq[String], heap: String): Process =
+    ProcessBuilder((Seq(
+      Paths.get(System.getProperty("java.home"), "bin", "java").toString,
+      s"-Xmx$heap",
+      "-cp", System.getProperty("java.class.path"),
+      mainClass
+    ) ++ args)*)
+      .redirectErrorStream(true)
+      .redirectOutput(LogDirectory.resolve(s"$name.log").toFile)
+      .start()
+
+  /**
+   * Model the settings of a load test.
+   * @param workers        the number of worker nodes
+   * @param cities         the number of cities, distributed evenly among the worker nodes
+   * @param zones          the number of zones of each city
+   * @param pluviometers   the number of pluviometers of each zone
+   * @param districts      the number of districts the zones of each city are grouped into
+   * @param duration       the duration of the test, after the driver received the first snapshot of each city
+   * @param stormPeriod    the period between the storms started over a random calm zone of each city
+   * @param stormDuration  the duration of each storm
+   * @param startupTimeout the maximum time waited for the first snapshot of each city
+   * @param heap           the maximum heap of the seed and worker nodes, as specified to the `-Xmx` option of the JVM
+   */
+  case class Settings(
+    workers: Int = 2,
+    cities: Int = 2,
+    zones: Int = NUMBER_OF_ZONES,
+    pluviometers: Int = MAX_PLUVIOMETERS_PER_ZONE,
+    districts: Int = NUMBER_OF_DISTRICTS,
+    duration: FiniteDuration = 60.seconds,
+    stormPeriod: FiniteDuration = 2.seconds,
+    stormDuration: FiniteDuration = 5.seconds,
+    startupTimeout: FiniteDuration = 120.seconds,
+    heap: String = "512m"
+  )
+  /**
+   * Companion object of [[Settings]].
+   */
+  object Settings:
+    /**
+     * @param args the specified arguments, as a list of options `--name value`, where the durations are
+     *             expressed in seconds
+     * @throws IllegalArgumentException if an option is unknown or without value
+     * @return the settings of a load test parsed from the specified arguments, defaulting the options not specified
+     */
+    @throws(classOf[IllegalArgumentException])
+    def parse(args: List[String]): Settings = args match
+      case "--workers" :: value :: rest => parse(rest).copy(workers = value.toInt)
+      case "--cities" :: value :: rest => parse(rest).copy(cities = value.toInt)
+      case "--zones" :: value :: rest => parse(rest).copy(zones = value.toInt)
+      case "--pluviometers" :: value :: rest => parse(rest).copy(pluviometers = value.toInt)
+      case "--districts" :: value :: rest => parse(rest).copy(districts = value.toInt)
+      case "--duration" :: value :: rest => parse(rest).copy(duration = value.toInt.seconds)
+      case "--storm-period" :: value :: rest => parse(rest).copy(stormPeriod = value.toInt.seconds)
+      case "--storm-duration" :: value :: rest => parse(rest).copy(stormDuration = value.toInt.seconds)
+      case "--startup-timeout" :: value :: rest => parse(rest).copy(startupTimeout = value.toInt.seconds)
+      case "--heap" :: value :: rest => parse(rest).copy(heap = value)
+      case Nil => Settings()
+      case option :: _ => throw IllegalArgumentException(s"Unknown option or missing value: $option")
\ No newline at end of file
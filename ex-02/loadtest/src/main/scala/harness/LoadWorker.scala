@@ -0,0 +1,25 @@
+package harness
+
+import actor.CityActor
+import actor.CityActor.City
+import cluster.AkkaCluster
+import com.typesafe.config.ConfigFactory
+import util.Id
+
+/**
+ * Starts a worker node of a load test, hosting the specified cities and a [[NodeProbe]] observing all the
+ * cities of the cluster. Note that the cluster should be started before executing this procedure.
+ *
+ * The arguments are the number of zones of each city, the number of pluviometers of each zone, the number of
+ * districts of each city, the comma-separated identifiers of the cities hosted by this worker and the ones of
+ * all the cities of the cluster.
+ */
+object LoadWorker:
+  def main(args: Array[String]): Unit =
+    val Array(zones, pluviometers, districts, hostedCityIds, cityIds) = args.padTo(5, "")
+    val cluster: AkkaCluster = AkkaCluster(ConfigFactory.load("cluster"))
+    hostedCityIds.split(",").filter(_.nonEmpty).foreach(cityId =>
+      CityActor(cluster, City(id = Id.parse(cityId)), zones.toInt, Option(pluviometers.toInt), districts.toInt)
+    )
+    cluster.host(NodeProbe(cityIds.split(",").filter(_.nonEmpty).toSeq.map(Id.parse)), "load-probe")
+    println("Worker is up!")
\ No newline at end of file
@@ -0,0 +1,87 @@
+package harness
+
+import actor.{SnapshotTopics, ViewActor}
+import actor.ViewActor.ReceiveSnapshotDelta
+import akka.actor.typed.pubsub.Topic
+import akka.actor.typed.receptionist.{Receptionist, ServiceKey}
+import akka.actor.typed.scaladsl.Behaviors
+import akka.actor.typed.{ActorRef, Behavior}
+import akka.cluster.typed.Cluster
+import cluster.message.CborSerializable
+import harness.Latencies.Summary
+import util.Id.EntityId
+
+import java.lang.management.ManagementFactory
+
+/**
+ * Model the actor deployed in each worker node of a load test, which observes the snapshots of the cities
+ * in the cluster as a view of the node would, measuring their propagation and the resources of the node.
+ */
+object NodeProbe:
+  /**
+   * Model the messages of a node probe.
+   */
+  trait Message extends CborSerializable
+  /** Tells this node probe to reply with the statistics of his node to the specified actor. */
+  case class RequestStats(replyTo: ActorRef[NodeStats]) extends Message
+  /** Tells this node probe that the specified message has been published on the topic of a city. */
+  private case class Observe(message: ViewActor.Message) extends Message
+
+  /** The key of the node probes in the receptionist of the cluster. */
+  val Key: ServiceKey[Message] = ServiceKey[Message]("load-probe")
+
+  /**
+   * The node probe subscribes to the topics of the specified cities through the topic actors of his node.
+   * @param cityIds the identifiers of the specified cities
+   */
+  def apply(cityIds: Seq[EntityId]): Behavior[Message] =
+    Behaviors.setup { context =>
+      context.system.receptionist ! Receptionist.Register(Key, context.self)
+      val observer: ActorRef[ViewActor.Message] = context.messageAdapter(Observe.apply)
+      cityIds.foreach(cityId => SnapshotTopics(context.system).topicOf(cityId) ! Topic.Subscribe(observer))
+      val propagation: Latencies = Latencies()
+      var (deltas, entityUpdates, firstDeltaMillis) = (0L, 0L, Option.empty[Long])
+      Behaviors.receiveMessage {
+        case Observe(ReceiveSnapshotDelta(delta)) =>
+          val now: Long = System.currentTimeMillis()
+          propagation.record(now - delta.timestamp)
+          deltas += 1
+          entityUpdates += delta.pluviometerDatas.size + delta.fireStationDatas.size + delta.zoneDatas.size
+          if firstDeltaMillis.isEmpty then firstDeltaMillis = Option(now)
+          Behaviors.same
+        case RequestStats(replyTo) =>
+          val memory = ManagementFactory.getMemoryMXBean
+          memory.gc()
+          replyTo ! NodeStats(
+            Cluster(context.system).selfMember.address.toString,
+            memory.getHeapMemoryUsage.getUsed,
+            memory.getHeapMemoryUsage.getCommitted,
+            deltas,
+            entityUpdates,
+            firstDeltaMillis.map(System.currentTimeMillis() - _).getOrElse(0),
+            propagation.summary
+          )
+          Behaviors.same
+        case _ => Behaviors.same
+      }
+    }
+
+  /**
+   * Model the statistics of a worker node of a load test.
+   * @param node          the address of the node
+   * @param liveHeap      the heap used by the node after a garbage collection, in bytes
+   * @param committedHeap the heap committed by the node, in bytes
+   * @param deltas        the number of snapshot deltas received by the node
+   * @param entityUpdates the number of entity updates contained in the snapshot deltas received by the node
+   * @param elapsedMillis the time elapsed since the node received the first snapshot delta, in milliseconds
+   * @param propagation   the latencies between the publication of the snapshot deltas and their delivery to the node
+   */
+  case class NodeStats(
+    node: String,
+    liveHeap: Long,
+    committedHeap: Long,
+    deltas: Long,
+    entityUpdates: Long,
+    elapsedMillis: Long,
+    propagation: Summary
+  ) extends CborSerializable
\ No newline at end of file
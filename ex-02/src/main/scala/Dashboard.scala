@@ -0,0 +1,65 @@
+import actor.QueryActor
+import actor.QueryActor.Query.{AlarmedZones, AvailableFireStations}
+import actor.QueryActor.{QueryUpdate, Subscribe}
+import akka.actor.typed.{ActorRef, Behavior}
+import akka.actor.typed.scaladsl.Behaviors
+import cluster.AkkaCluster
+import com.typesafe.config.ConfigFactory
+import configuration.C.Query.DASHBOARD_REFRESH_PERIOD
+import util.{Id, Point2D}
+
+import scala.collection.immutable.LongMap
+
+/**
+ * Starts a dashboard printing the zones under alarm and the number of available fire-stations of all the
+ * cities in the cluster of this application, whenever they change. If the arguments `x y distance` are
+ * specified, only the fire-stations within that distance from the point `(x, y)` are counted.
+ * Note that the cluster should be started before executing this procedure.
+ */
+object Dashboard:
+  def main(args: Array[String]): Unit =
+    val fireStations: AvailableFireStations = args.toSeq.map(_.toDouble) match
+      case Seq(x, y, distance) => AvailableFireStations(Point2D(x, y), distance)
+      case _ => AvailableFireStations(Point2D(0, 0), Double.PositiveInfinity)
+    AkkaCluster(ConfigFactory.load("cluster")).join(dashboard(fireStations))
+    println("Dashboard started!")
+
+  /** Model the events handled by the dashboard. */
+  private trait Event
+  /** Tells the dashboard that the results of a query in a city have changed. */
+  private case class Update(update: QueryUpdate) extends Event
+  /** Tells the dashboard to print the results, if they have changed since the last time. */
+  private case object Refresh extends Event
+
+  private def dashboard(fireStations: AvailableFireStations): Behavior[Event] =
+    Behaviors.setup { context =>
+      val queryService: ActorRef[QueryActor.Message] = context.spawn(QueryActor(), "query")
+      val updates: ActorRef[QueryUpdate] = context.messageAdapter(Update.apply)
+      queryService ! Subscribe(AlarmedZones, updates)
+      queryService ! Subscribe(fireStations, updates)
+      var alarmedZones: LongMap[List[Id]] = LongMap()
+      var availableFireStations: LongMap[List[Id]] = LongMap()
+      var changed: Boolean = false
+      Behaviors.withTimers { timers =>
+        timers.startTimerWithFixedDelay(Refresh, DASHBOARD_REFRESH_PERIOD)
+        Behaviors.receiveMessage {
+          case Update(QueryUpdate(AlarmedZones, cityId, _, results)) =>
+            alarmedZones = alarmedZones + (cityId -> results)
+            changed = true
+            Behaviors.same
+          case Update(QueryUpdate(_, cityId, _, results)) =>
+            availableFireStations = availableFireStations + (cityId -> results)
+            changed = true
+            Behaviors.same
+          case Refresh =>
+            if changed then
+              println(f"${"City"}%-20s ${"Available fire-stations"}%-24s Alarmed zones")
+              alarmedZones.keySet.union(availableFireStations.keySet).toSeq.sorted.foreach(cityId => println(
+                f"${Id.show(cityId)}%-20s ${availableFireStations.getOrElse(cityId, List()).size}%-24d " +
+                alarmedZones.getOrElse(cityId, List()).map(zone => Id.show(zone.id)).mkString(", ")
+              ))
+              changed = false
+            Behaviors.same
+        }
+      }
+    }
\ No newline at end of file
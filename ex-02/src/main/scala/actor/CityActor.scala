@@ -8,16 +8,24 @@ import actor.ViewActor.ReceiveSnapshot
 import actor.ZoneActor.{Zone, ZoneData}
 import akka.actor.typed.receptionist.Receptionist.*
 import akka.actor.typed.receptionist.ServiceKey
-import akka.actor.typed.scaladsl.{Behaviors, Routers}
+import akka.actor.typed.pubsub.Topic
+import akka.cluster.ddata.typed.scaladsl.{DistributedData, Replicator}
+import akka.cluster.ddata.{LWWMap, LWWMapKey, SelfUniqueAddress}
+import akka.actor.typed.scaladsl.Behaviors
 import akka.actor.typed.{ActorRef, Behavior}
+import akka.cluster.sharding.typed.scaladsl.EntityRef
 import cluster.AkkaCluster
-import cluster.message.CborSerializable
+import cluster.message.{BinarySerializable, CborSerializable}
 import configuration.C.City.*
+import configuration.C.FireStation.DISPATCH_FANOUT
 import configuration.C.Log.pretty
 import configuration.C.Pluviometer.*
 import configuration.C.Zone.{MAX_PLUVIOMETERS_PER_ZONE, RANDOM_POSITION_PADDING}
-import util.{Id, Point2D}
+import util.PartitionIndex.Bounds
+import util.Id.EntityId
+import util.{Id, KdTree, PartitionIndex, Point2D, Ticks}
 
+import scala.collection.immutable.LongMap
 import scala.util.Random
 
 /**
@@ -35,80 +43,252 @@ object CityActor:
    */
   trait Message extends CborSerializable
   /** Tells this city actor to update the state of the specified pluviometer. */
-  case class NotifyPluviometerState(state: PluviometerData) extends Message
+  case class NotifyPluviometerState(state: PluviometerData) extends Message with BinarySerializable
   /** Tells this city actor to update the state of the specified fire-station. */
-  case class NotifyFireStationState(state: FireStationData) extends Message
+  case class NotifyFireStationState(state: FireStationData) extends Message with BinarySerializable
   /** Tells this city actor to update the state of the specified zone. */
-  case class NotifyZoneState(state: ZoneData) extends Message
-  /** Tells this city actor to register the specified view actor, in order to notify him of snapshot updates. */
-  case class RegisterView(viewId: String) extends Message
+  case class NotifyZoneState(state: ZoneData) extends Message with BinarySerializable
+  /**
+   * Tells this city actor to send a full snapshot to the specified view actor, which is new or missed some
+   * snapshot updates. The following updates are published on the [[snapshotTopic topic]] of the city.
+   */
+  case class RequestSnapshot(view: ViewRef) extends Message with BinarySerializable
+  /** Tells this city actor that the specified entity has been restarted and needs to be initialized. */
+  case class RequestInitialization(entityId: EntityId) extends Message with BinarySerializable
+  /** Tells this city actor to alert the closest available fire-stations that the specified zone is under alarm. */
+  case class RequestDispatch(zoneId: EntityId, zone: ZoneRef) extends Message with BinarySerializable
+  /** Tells this city actor that the entities of one of his districts have changed as specified. */
+  case class NotifyDistrictChanges(changes: SnapshotDelta) extends Message
   /** Tells this city actor to take a snapshot of the system. */
   private[CityActor] case object TakeSnapshot extends Message
 
   /**
-   * @param cluster       the cluster used by this city actor to deploy itself and his children
-   * @param city          the initial state of this city actor
-   * @param numberOfZones the number of zones this city should be partitioned into
+   * @param cityId the identifier of the specified city
+   * @return the name of the topic where the updates of the snapshot of the specified city are published
+   */
+  def snapshotTopic(cityId: EntityId): String = s"city-$cityId-snapshots"
+  /** The key of the service of all the city actors in the cluster. */
+  val Key: ServiceKey[Message] = ServiceKey[Message]("cities")
+  /**
+   * @param cityId the identifier of the specified city
+   * @return the key of the replicated state of the specified city, mapping the identifiers of the city and of
+   *         its entities to their state
+   */
+  def replicaKey(cityId: EntityId): LWWMapKey[EntityId, Id] = LWWMapKey(s"city-$cityId-state")
+  /**
+   * @param city the specified city actor
+   * @return the identifier of the specified city actor, as referenced by the city actor itself
+   */
+  def idOf(city: CityRef): EntityId = Id.parse(city.path.name.stripPrefix("city-"))
+
+  /**
+   * The zones, pluviometers and fire-stations of the city are sharded entities of the cluster,
+   * which are initialized by the city actor with their state when they are first started.
+   * @param cluster             the cluster used by this city actor to deploy itself
+   * @param city                the initial state of this city actor
+   * @param numberOfZones       the number of zones this city should be partitioned into
+   * @param pluviometersPerZone the number of pluviometers of each zone, if specified, otherwise a random number
+   *                            between 1 and [[MAX_PLUVIOMETERS_PER_ZONE]] for each zone
+   * @param numberOfDistricts   the number of districts the zones of this city should be grouped into
    */
-  def apply(cluster: AkkaCluster, city: City = City(), numberOfZones: Int = NUMBER_OF_ZONES): Unit =
-    val snapshot: Snapshot = Snapshot(city.data)
-    city.asZone.splitInto(numberOfZones) foreach { zone =>
-      val pluviometers = List.fill(Random.nextInt(MAX_PLUVIOMETERS_PER_ZONE) + 1)(
+  def apply(
+    cluster: AkkaCluster,
+    city: City = City(),
+    numberOfZones: Int = NUMBER_OF_ZONES,
+    pluviometersPerZone: Option[Int] = Option.empty,
+    numberOfDistricts: Int = NUMBER_OF_DISTRICTS
+  ): Unit =
+    var (pluviometerDatas, fireStationDatas, zoneDatas) = (LongMap[PluviometerData](), LongMap[FireStationData](), LongMap[ZoneData]())
+    var topology: LongMap[ZoneTopology] = LongMap()
+    val districts: List[(Zone, List[Zone])] = districtsOf(city, numberOfZones, numberOfDistricts)
+    districts.flatMap(_._2) foreach { zone =>
+      val pluviometers = List.fill(pluviometersPerZone.getOrElse(Random.nextInt(MAX_PLUVIOMETERS_PER_ZONE) + 1))(
         Pluviometer.withRandomMeasurements(zone.randomPosition(RANDOM_POSITION_PADDING), PLUVIOMETER_SIGNAL_PROBABILITY)
       )
       val fireStations = List.fill(1)(FireStation.random(zone))
-      pluviometers foreach { p =>
-        snapshot.pluviometerDatas = snapshot.pluviometerDatas + (p.id -> p.data)
-        cluster.join(PluviometerActor(p))
-      }
-      fireStations foreach { f =>
-        snapshot.fireStationDatas = snapshot.fireStationDatas + (f.id -> f.data)
-        cluster.join(FireStationActor(f))
-      }
-      snapshot.zoneDatas = snapshot.zoneDatas + (zone.id -> zone.data)
-      cluster.join(ZoneActor(zone, pluviometers.map(_.id), fireStations.map(_.id)))
+      pluviometers foreach { p => pluviometerDatas = pluviometerDatas + (p.id -> p.data) }
+      fireStations foreach { f => fireStationDatas = fireStationDatas + (f.id -> f.data) }
+      zoneDatas = zoneDatas + (zone.id -> zone.data)
+      topology = topology + (zone.id -> ZoneTopology(pluviometers.map(_.id), fireStations.map(_.id)))
     }
-    cluster.join(
+    val snapshot: Snapshot = Snapshot(city.data, pluviometerDatas, fireStationDatas, zoneDatas)
+    val index: SpatialIndex = SpatialIndex(
+      PartitionIndex(snapshot.zoneDatas.values.map(z => (Bounds.of(z.position, z.width, z.height), z.id)).toSeq),
+      KdTree(snapshot.fireStationDatas.values.map(f => (f.position, f.id)).toSeq)
+    )
+    cluster.host(
       Behaviors.setup[Message] { context =>
-        context.system.receptionist ! Register(ServiceKey[Message](city.id), context.self)
+        context.system.receptionist ! Register(ServiceKey[Message](Id.show(city.id)), context.self)
+        context.system.receptionist ! Register(Key, context.self)
+        Entities.init(context.system)
         val cityActorCollection: CityActorCollection = CityActorCollection()
-        cityActorCollection.pluviometers = Map.from(snapshot.pluviometerDatas.keys.map(p => (p, context.spawnAnonymous(Routers.group(ServiceKey[PluviometerActor.Message](p))))))
-        cityActorCollection.fireStations = Map.from(snapshot.fireStationDatas.keys.map(f => (f, context.spawnAnonymous(Routers.group(ServiceKey[FireStationActor.Message](f))))))
-        cityActorCollection.zones = Map.from(snapshot.zoneDatas.keys.map(z => (z, context.spawnAnonymous(Routers.group(ServiceKey[ZoneActor.Message](z))))))
+        cityActorCollection.pluviometers = LongMap.from(snapshot.pluviometerDatas.keys.map(p => (p, Entities.pluviometer(context.system, p))))
+        cityActorCollection.fireStations = LongMap.from(snapshot.fireStationDatas.keys.map(f => (f, Entities.fireStation(context.system, f))))
+        cityActorCollection.zones = LongMap.from(snapshot.zoneDatas.keys.map(z => (z, Entities.zone(context.system, z))))
+        snapshot.toList.foreach(entity => initialize(entity.id, cityActorCollection, snapshot, topology, index))
+        val districtActors: List[CityRef] = if districts.size < 2 then List() else districts.map((district, zones) =>
+          val entities: CityActorCollection = cityActorCollection.within(zones.map(_.id), topology)
+          context.spawn(DistrictActor(context.self, entities, snapshot.within(CityData(district.position, district.width, district.height, district.id), entities)), s"district-${district.id}")
+        )
         println("### City Actor Initialized ###\n" + snapshot)
-        Active(city, cityActorCollection, snapshot)
-      }
+        Active(city, cityActorCollection, snapshot, topology, index, districtActors)
+      },
+      s"city-${city.id}"
+    )
+
+  /**
+   * Groups the zones of the specified city into the specified number of districts, splitting the city into the
+   * districts first, then each district into its share of the zones, so that each district is a contiguous area.
+   * @param city              the specified city
+   * @param numberOfZones     the number of zones the specified city should be partitioned into
+   * @param numberOfDistricts the number of districts the zones should be grouped into, at most one for each zone
+   * @return a list of the districts of the specified city, each paired with the zones inside it. If less than two
+   *         districts are requested, a single district covering the whole city is returned.
+   */
+  def districtsOf(city: City, numberOfZones: Int, numberOfDistricts: Int): List[(Zone, List[Zone])] =
+    val districts: List[Zone] =
+      if numberOfDistricts < 2 then List(city.asZone) else city.asZone.splitInto(Math.min(numberOfDistricts, numberOfZones))
+    districts.zipWithIndex.map((district, index) =>
+      (district, district.splitInto(numberOfZones / districts.size + (if index < numberOfZones % districts.size then 1 else 0)))
+    )
+
+  /**
+   * @param entities the collection of the actors of the specified entities
+   * @param replyTo  the actor the specified entities should send their state to
+   * @return the segments of the specified entities, each requested its state at a different tick of the snapshot period
+   */
+  private[actor] def segmentsOf(entities: CityActorCollection, replyTo: CityRef): IndexedSeq[Iterable[() => Unit]] =
+    IndexedSeq.tabulate(SNAPSHOT_SEGMENTS)(segment =>
+      entities.pluviometers.filter((id, _) => Ticks.segmentOf(id, SNAPSHOT_SEGMENTS) == segment).values
+        .map(pluviometer => () => pluviometer ! PluviometerActor.TakeSnapshot(replyTo)) ++
+      entities.fireStations.filter((id, _) => Ticks.segmentOf(id, SNAPSHOT_SEGMENTS) == segment).values
+        .map(fireStation => () => fireStation ! FireStationActor.TakeSnapshot(replyTo)) ++
+      entities.zones.filter((id, _) => Ticks.segmentOf(id, SNAPSHOT_SEGMENTS) == segment).values
+        .map(zone => () => zone ! ZoneActor.TakeSnapshot(replyTo))
+    )
+
+  /**
+   * Initializes the entity with the specified identifier, using its state in the specified snapshot.
+   * @param entityId            the specified identifier
+   * @param cityActorCollection the collection of the actors known by the city
+   * @param snapshot            the last snapshot taken by the city
+   * @param topology            a map from the zones of the city to the entities inside them
+   * @param index               the spatial index of the city
+   */
+  private def initialize(entityId: EntityId, cityActorCollection: CityActorCollection, snapshot: Snapshot, topology: LongMap[ZoneTopology], index: SpatialIndex): Unit =
+    snapshot.pluviometerDatas.get(entityId).foreach(state =>
+      index.zones.lookup(state.position)
+                 .foreach(zoneId => cityActorCollection.pluviometers(entityId) ! PluviometerActor.Initialize(state, zoneId))
+    )
+    snapshot.fireStationDatas.get(entityId).foreach(state => cityActorCollection.fireStations(entityId) ! FireStationActor.Initialize(state))
+    snapshot.zoneDatas.get(entityId).foreach(state =>
+      cityActorCollection.zones(entityId) ! ZoneActor.Initialize(state, topology(entityId).pluviometerIds, topology(entityId).fireStationIds)
     )
 
-  /** Behavior where the city takes a snapshot of itself periodically, notifying the view in the process. */
+  /**
+   * Behavior where the city takes a snapshot of itself periodically, notifying the view in the process.
+   * The entities are requested their state in rolling segments, so that each entity is requested once
+   * for each snapshot period, but the requests are spread evenly across the period.
+   * The changes of the entities received between two snapshots are coalesced into a single delta, which
+   * is published to the views at the next snapshot, on the topic of the city, so that it is delivered once
+   * to each node hosting some views. The full snapshot is sent only when a view requests it, because it
+   * is new or it missed a delta. A new version of the snapshot is built only when a delta
+   * is sent, then it is shared with the views as is.
+   *
+   * If the state of the city is [[REPLICATED_STATE replicated]], each delta is also written to the replica of
+   * the node of the city, which propagates it to the replicas of the other nodes, where the views read it.
+   *
+   * The alerts of the zones under alarm are dispatched to the closest fire-stations that are available
+   * according to the last snapshot, excluding the ones already alerted for the same alarm, until all
+   * the available fire-stations have been alerted and the dispatch starts over.
+   *
+   * If the city has some [[DistrictActor districts]], the city only tells them which segment to request at
+   * each tick, while the states of the entities are collected by the districts. When a snapshot is due, the
+   * city requests the changes of all its districts, then takes the snapshot as soon as all of them have sent
+   * their changes, or at the following snapshot if some of them have not.
+   */
   private[CityActor] object Active:
-    def apply(city: City, cityActorCollection: CityActorCollection, snapshot: Snapshot): Behavior[Message] =
+    def apply(
+      city: City,
+      cityActorCollection: CityActorCollection,
+      initialSnapshot: Snapshot,
+      topology: LongMap[ZoneTopology],
+      index: SpatialIndex,
+      districts: List[CityRef]
+    ): Behavior[Message] =
       Behaviors.setup { context =>
         Behaviors.withTimers { timers =>
-          timers.startTimerWithFixedDelay(TakeSnapshot, TakeSnapshot, SNAPSHOT_PERIOD)
+          timers.startTimerWithFixedDelay(TakeSnapshot, TakeSnapshot, SNAPSHOT_PERIOD / SNAPSHOT_SEGMENTS)
+          /** The segments of the entities requested their state by the city. */
+          val segments: IndexedSeq[Iterable[() => Unit]] =
+            segmentsOf(if districts.isEmpty then cityActorCollection else CityActorCollection(), context.self)
+          var segment: Int = 0
+          var snapshot: Snapshot = initialSnapshot
+          var changes: SnapshotDelta = SnapshotDelta(snapshot.version)
+          /** The number of districts whose changes are still awaited by the city to take the next snapshot. */
+          var awaitedDistricts: Int = 0
+          val topic: ActorRef[Topic.Command[ViewActor.Message]] = SnapshotTopics(context.system).topicOf(city.id)
+          given node: SelfUniqueAddress = DistributedData(context.system).selfUniqueAddress
+          def replicate(entities: Iterable[Id]): Unit =
+            if REPLICATED_STATE then DistributedData(context.system).replicator !
+              Replicator.Update(replicaKey(city.id), LWWMap.empty[EntityId, Id], REPLICA_WRITE_CONSISTENCY, context.system.ignoreRef)(
+                replica => entities.foldLeft(replica)((replica, entity) => replica :+ (entity.id -> entity))
+              )
+          replicate(snapshot.toList)
+          /** A map from the zones under alarm to the fire-stations already alerted for their alarm. */
+          var dispatches: LongMap[Set[EntityId]] = LongMap()
+          def isAvailable(fireStationId: EntityId): Boolean =
+            changes.fireStationDatas.get(fireStationId).orElse(snapshot.fireStationDatas.get(fireStationId))
+                   .exists(_.state == FireStation.State.Available.ordinal)
+          def publish(): Unit = if !changes.isEmpty then
+            snapshot = snapshot.updated(changes)
+            topic ! Topic.Publish(ViewActor.ReceiveSnapshotDelta(changes.copy(timestamp = System.currentTimeMillis())))
+            replicate(changes.pluviometerDatas.values ++ changes.fireStationDatas.values ++ changes.zoneDatas.values)
+            changes = SnapshotDelta(snapshot.version)
           Behaviors.receiveMessage {
             case TakeSnapshot =>
-              cityActorCollection.pluviometers.values.foreach(_ ! PluviometerActor.TakeSnapshot(context.self))
-              cityActorCollection.fireStations.values.foreach(_ ! FireStationActor.TakeSnapshot(context.self))
-              cityActorCollection.zones.values.foreach(_ ! ZoneActor.TakeSnapshot(context.self))
+              if segment == 0 then
+                if districts.isEmpty || awaitedDistricts > 0 then publish()
+                awaitedDistricts = districts.size
+              segments(segment).foreach(requestState => requestState())
+              districts.foreach(_ ! DistrictActor.RequestSegment(segment))
+              segment = (segment + 1) % SNAPSHOT_SEGMENTS
               Behaviors.same
             case NotifyPluviometerState(state) =>
-              cityActorCollection.views.values.foreach(_ ! ViewActor.ReceiveSnapshot(snapshot))
-              snapshot.pluviometerDatas = snapshot.pluviometerDatas + (state.id -> state)
-              Active(city, cityActorCollection, snapshot)
+              changes = changes.including(state, snapshot)
+              Behaviors.same
             case NotifyFireStationState(state) =>
-              cityActorCollection.views.values.foreach(_ ! ViewActor.ReceiveSnapshot(snapshot))
-              snapshot.fireStationDatas = snapshot.fireStationDatas + (state.id -> state)
-              Active(city, cityActorCollection, snapshot)
+              changes = changes.including(state, snapshot)
+              Behaviors.same
             case NotifyZoneState(state) =>
-              cityActorCollection.views.values.foreach(_ ! ViewActor.ReceiveSnapshot(snapshot))
-              snapshot.zoneDatas = snapshot.zoneDatas + (state.id -> state)
-              Active(city, cityActorCollection, snapshot)
-            case RegisterView(viewId) =>
-              val view: ViewRef = context.spawnAnonymous(Routers.group(ServiceKey[ViewActor.Message](viewId)))
-              cityActorCollection.views = cityActorCollection.views + (viewId -> view)
-              view ! ViewActor.Registered
-              Active(city, cityActorCollection, snapshot)
+              changes = changes.including(state, snapshot)
+              if state.state != Zone.State.Alarmed.ordinal then dispatches = dispatches - state.id
+              Behaviors.same
+            case NotifyDistrictChanges(districtChanges) =>
+              changes = changes ++ districtChanges
+              districtChanges.zoneDatas.valuesIterator.filter(_.state != Zone.State.Alarmed.ordinal).foreach(zone => dispatches = dispatches - zone.id)
+              if awaitedDistricts > 0 then
+                awaitedDistricts = awaitedDistricts - 1
+                if awaitedDistricts == 0 then publish()
+              Behaviors.same
+            case RequestSnapshot(view) =>
+              view ! ViewActor.ReceiveSnapshot(snapshot)
+              Behaviors.same
+            case RequestInitialization(entityId) =>
+              initialize(entityId, cityActorCollection, snapshot.updated(changes), topology, index)
+              Behaviors.same
+            case RequestDispatch(zoneId, zone) =>
+              snapshot.zoneDatas.get(zoneId).foreach(zoneData => {
+                val alerted: Set[EntityId] = dispatches.getOrElse(zoneId, Set())
+                val nearest: List[EntityId] =
+                  index.fireStations.nearest(zoneData.center, DISPATCH_FANOUT, id => isAvailable(id) && !alerted.contains(id))
+                val (dispatched, previouslyAlerted) =
+                  if nearest.nonEmpty then (nearest, alerted)
+                  else (index.fireStations.nearest(zoneData.center, DISPATCH_FANOUT, isAvailable), Set[EntityId]())
+                dispatched.foreach(id => cityActorCollection.fireStations(id) ! FireStationActor.Alert(zone))
+                dispatches = dispatches + (zoneId -> (previouslyAlerted ++ dispatched))
+              })
+              Behaviors.same
           }
         }
       }
@@ -124,7 +304,7 @@ object CityActor:
     position: Point2D = (0D, Size.HEIGHT),
     width: Double = Size.WIDTH,
     height: Double = Size.HEIGHT,
-    id: String = Id.newId
+    id: EntityId = Id.newId
   ) extends Id:
     /** @return a zone covering the whole city. */
     def asZone: Zone = Zone(position, width, height)
@@ -135,27 +315,37 @@ object CityActor:
   /**
    * Model the data representing a city.
    */
-  case class CityData(position: Point2D, width: Double, height: Double, id: String) extends CborSerializable with Id:
+  case class CityData(position: Point2D, width: Double, height: Double, id: EntityId) extends CborSerializable with Id:
     /** @return the city represented by this data. */
     def city: City = City(position, width, height, id)
     override def toString: String = s"CityData(id:$id, position:$position, width:$width, height:$height)"
 
   /**
-   * Model a snapshot of all the entities inside a city with their state.
+   * Model an immutable snapshot of all the entities inside a city with their state. The entities are indexed
+   * by their identifiers the first time they are searched, so that each version of a snapshot is indexed at
+   * most once, however many actors and views it is shared with.
    *
    * @param pluviometerDatas a map from the pluviometers to their state
    * @param fireStationDatas a map from the fire-stations to their state
    * @param zoneDatas        a map from the zones to their state
+   * @param version          the number of deltas applied to this snapshot
    */
   case class Snapshot(
-     var cityData: CityData,
-     var pluviometerDatas: Map[String, PluviometerData] = Map(),
-     var fireStationDatas: Map[String, FireStationData] = Map(),
-     var zoneDatas: Map[String, ZoneData] = Map()
+     cityData: CityData,
+     pluviometerDatas: LongMap[PluviometerData] = LongMap(),
+     fireStationDatas: LongMap[FireStationData] = LongMap(),
+     zoneDatas: LongMap[ZoneData] = LongMap(),
+     version: Long = 0
   ) extends CborSerializable:
+    /** A map from the identifiers to the entities of this snapshot. */
+    private lazy val entities: LongMap[Id] = LongMap.from(this.iterator.map(entity => (entity.id, entity)))
+    /** @return an iterator over the entities of this snapshot. */
+    def iterator: Iterator[Id] =
+      Iterator(cityData) ++ zoneDatas.valuesIterator ++ pluviometerDatas.valuesIterator ++ fireStationDatas.valuesIterator
     /** @return a list of the entities of this snapshot. */
-    def toList: List[Id] =
-      List[Id](cityData) ::: zoneDatas.values.toList ::: pluviometerDatas.values.toList ::: fireStationDatas.values.toList
+    def toList: List[Id] = this.iterator.toList
+    /** @return the number of the entities of this snapshot. */
+    def size: Int = 1 + zoneDatas.size + pluviometerDatas.size + fireStationDatas.size
     /**
      * @param entity the specified entity
      * @return an optional of the entity of this snapshot with the id of the specified entity
@@ -166,28 +356,62 @@ object CityActor:
      * @param id the specified id
      * @return an optional of the entity of this snapshot with the specified id
      */
-    def searchById(id: String): Option[Id] = this.toList.find(_.id == id)
-    override def toString: String = "Snapshot:\n\t" + this.toList.map(_.toString).reduce(_ + "\n\t" + _)
+    def searchById(id: EntityId): Option[Id] = this.entities.get(id)
+    /**
+     * @param delta the specified delta
+     * @return a copy of this snapshot with the changes of the specified delta applied
+     */
+    def updated(delta: SnapshotDelta): Snapshot = this.copy(
+      pluviometerDatas = pluviometerDatas ++ delta.pluviometerDatas,
+      fireStationDatas = fireStationDatas ++ delta.fireStationDatas,
+      zoneDatas = zoneDatas ++ delta.zoneDatas,
+      version = delta.version
+    )
+    /**
+     * @param area     the data representing the specified area
+     * @param entities the collection of the actors of the entities inside the specified area
+     * @return a snapshot of the specified area, including only the entities of this snapshot inside it
+     */
+    def within(area: CityData, entities: CityActorCollection): Snapshot = Snapshot(
+      area,
+      pluviometerDatas.filter((id, _) => entities.pluviometers.contains(id)),
+      fireStationDatas.filter((id, _) => entities.fireStations.contains(id)),
+      zoneDatas.filter((id, _) => entities.zones.contains(id))
+    )
+    override def toString: String = this.iterator.mkString("Snapshot:\n\t", "\n\t", "")
 
   /**
    * Companion object of [[Snapshot]].
    */
   object Snapshot:
+    /**
+     * @param entities the entities of the snapshot, including the data of the city
+     * @param version  the version of the snapshot
+     * @return an optional of the snapshot of the specified entities, empty if the data of the city is missing
+     */
+    def of(entities: Iterable[Id], version: Long): Option[Snapshot] =
+      entities.collectFirst { case city: CityData => city }.map(cityData => Snapshot(
+        cityData,
+        LongMap.from(entities.collect { case p: PluviometerData => (p.id, p) }),
+        LongMap.from(entities.collect { case f: FireStationData => (f.id, f) }),
+        LongMap.from(entities.collect { case z: ZoneData => (z.id, z) }),
+        version
+      ))
     /** @return a random snapshot. Useful for debugging. */
     def random: Snapshot =
-      val snapshot: Snapshot = Snapshot(City().data)
-      snapshot.zoneDatas = Map.from(snapshot.cityData.city.asZone.splitInto(NUMBER_OF_ZONES).map(z => {
+      val cityData: CityData = City().data
+      val zoneDatas: LongMap[ZoneData] = LongMap.from(cityData.city.asZone.splitInto(NUMBER_OF_ZONES).map(z => {
         z.become(Zone.State.random)
         (z.id, z.data)
       }))
-      snapshot.fireStationDatas = Map.from(snapshot.zoneDatas.values.map(z =>
+      val fireStationDatas: LongMap[FireStationData] = LongMap.from(zoneDatas.values.map(z =>
         FireStation(z.asZone.randomPosition(RANDOM_POSITION_PADDING))).map(f => {
         f.become(FireStation.State.random)
         (f.id, f.data)
       })
       )
-      snapshot.pluviometerDatas = Map.from(
-        snapshot.zoneDatas.values.flatMap(z =>
+      val pluviometerDatas: LongMap[PluviometerData] = LongMap.from(
+        zoneDatas.values.flatMap(z =>
           (0 until Random.nextInt(MAX_PLUVIOMETERS_PER_ZONE) + 1).map(_ =>
             Pluviometer.withRandomMeasurements(z.asZone.randomPosition(RANDOM_POSITION_PADDING), 0.1)
           )
@@ -196,7 +420,65 @@ object CityActor:
           (p.id, p.data)
         })
       )
-      snapshot
+      Snapshot(cityData, pluviometerDatas, fireStationDatas, zoneDatas)
+
+  /**
+   * Model the changes of the entities inside a city between two consecutive versions of its snapshot.
+   *
+   * @param fromVersion      the version of the snapshot these changes should be applied to
+   * @param pluviometerDatas a map from the changed pluviometers to their new state
+   * @param fireStationDatas a map from the changed fire-stations to their new state
+   * @param zoneDatas        a map from the changed zones to their new state
+   * @param timestamp        the instant these changes were published by the city, in milliseconds since the epoch
+   */
+  case class SnapshotDelta(
+    fromVersion: Long,
+    pluviometerDatas: LongMap[PluviometerData] = LongMap(),
+    fireStationDatas: LongMap[FireStationData] = LongMap(),
+    zoneDatas: LongMap[ZoneData] = LongMap(),
+    timestamp: Long = 0
+  ) extends CborSerializable:
+    /** @return the version of the snapshot obtained by applying these changes. */
+    def version: Long = fromVersion + 1
+    /** @return true if there are no changes in this delta, false otherwise. */
+    def isEmpty: Boolean = pluviometerDatas.isEmpty && fireStationDatas.isEmpty && zoneDatas.isEmpty
+    /**
+     * @param entity   the new state of the specified entity
+     * @param snapshot the snapshot these changes should be applied to
+     * @return these changes including the new state of the specified entity, unless it is equal to its last known
+     *         state, as found in these changes or in the specified snapshot
+     */
+    def including(entity: Id, snapshot: Snapshot): SnapshotDelta = entity match
+      case p: PluviometerData if !pluviometerDatas.get(p.id).orElse(snapshot.pluviometerDatas.get(p.id)).contains(p) =>
+        this.copy(pluviometerDatas = pluviometerDatas + (p.id -> p))
+      case f: FireStationData if !fireStationDatas.get(f.id).orElse(snapshot.fireStationDatas.get(f.id)).contains(f) =>
+        this.copy(fireStationDatas = fireStationDatas + (f.id -> f))
+      case z: ZoneData if !zoneDatas.get(z.id).orElse(snapshot.zoneDatas.get(z.id)).contains(z) =>
+        this.copy(zoneDatas = zoneDatas + (z.id -> z))
+      case _ => this
+    /**
+     * @param other the specified changes
+     * @return these changes followed by the specified changes, which take precedence over these
+     */
+    def ++(other: SnapshotDelta): SnapshotDelta = this.copy(
+      pluviometerDatas = pluviometerDatas ++ other.pluviometerDatas,
+      fireStationDatas = fireStationDatas ++ other.fireStationDatas,
+      zoneDatas = zoneDatas ++ other.zoneDatas
+    )
+
+  /**
+   * Model the entities inside a zone of a city.
+   * @param pluviometerIds the identifiers of the pluviometers inside the zone
+   * @param fireStationIds the identifiers of the fire-stations inside the zone
+   */
+  case class ZoneTopology(pluviometerIds: List[EntityId], fireStationIds: List[EntityId])
+
+  /**
+   * Model the spatial index of the entities inside a city.
+   * @param zones        an index from the areas of the zones to their identifiers
+   * @param fireStations an index from the positions of the fire-stations to their identifiers
+   */
+  case class SpatialIndex(zones: PartitionIndex[EntityId], fireStations: KdTree[EntityId])
 
   /**
    * Model a collection of the actors known within a city.
@@ -205,11 +487,24 @@ object CityActor:
    * @param pluviometers a map from the identifiers to the pluviometer actors known within the city
    * @param fireStations a map from the identifiers to the fire-station actors known within the city
    * @param zones        a map from the identifiers to the zone actors known within the city
+   * @param coordinator  the actor requesting the state of the entities, which their requests are sent to: the
+   *                     city actor or, if the city has districts, the district actor of the entities, if known
    */
   case class CityActorCollection(
-    var cities: Map[String, CityRef] = Map(),
-    var views: Map[String, ViewRef] = Map(),
-    var pluviometers: Map[String, PluviometerRef] = Map(),
-    var fireStations: Map[String, FireStationRef] = Map(),
-    var zones: Map[String, ZoneRef] = Map()
-  )
\ No newline at end of file
+    var cities: LongMap[CityRef] = LongMap(),
+    var views: LongMap[ViewRef] = LongMap(),
+    var pluviometers: LongMap[EntityRef[PluviometerActor.Message]] = LongMap(),
+    var fireStations: LongMap[EntityRef[FireStationActor.Message]] = LongMap(),
+    var zones: LongMap[EntityRef[ZoneActor.Message]] = LongMap(),
+    var coordinator: Option[CityRef] = None
+  ):
+    /**
+     * @param zoneIds  the identifiers of the specified zones
+     * @param topology a map from the zones to the entities inside them
+     * @return a collection of the actors of the specified zones and of the entities inside them known within the city
+     */
+    def within(zoneIds: List[EntityId], topology: LongMap[ZoneTopology]): CityActorCollection = CityActorCollection(
+      pluviometers = LongMap.from(zoneIds.flatMap(topology(_).pluviometerIds).map(id => (id, pluviometers(id)))),
+      fireStations = LongMap.from(zoneIds.flatMap(topology(_).fireStationIds).map(id => (id, fireStations(id)))),
+      zones = LongMap.from(zoneIds.map(id => (id, zones(id))))
+    )
\ No newline at end of file
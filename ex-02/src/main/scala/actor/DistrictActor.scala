@@ -0,0 +1,55 @@
+package actor
+
+import actor.CityActor.*
+import akka.actor.typed.Behavior
+import akka.actor.typed.scaladsl.Behaviors
+
+/**
+ * Model the actor for a district, which groups some adjacent zones of a city with their pluviometers and
+ * fire-stations, standing between them and the city actor.
+ */
+object DistrictActor:
+  /**
+   * Tells this district actor to request the state of his entities in the specified segment. Before the first
+   * segment, when the city is taking a snapshot, the changes collected since the last snapshot of the city are
+   * sent to the city, even if there are none, so that the city knows when all of its districts have answered.
+   */
+  case class RequestSegment(segment: Int) extends Message
+
+  /**
+   * The entities of the district are told to send their state to the district actor, which keeps the last
+   * state of each entity and coalesces their changes between two snapshots of the city, so that the city
+   * receives a single delta from each district for each snapshot, only including the entities that changed.
+   * The requests of the entities for their initialization or for a dispatch are forwarded to the city.
+   * @param city         the city actor of this district actor
+   * @param entities     the collection of the actors of the entities inside this district
+   * @param initialState the snapshot of the entities inside this district, whose city data represents the district
+   */
+  def apply(city: CityRef, entities: CityActorCollection, initialState: Snapshot): Behavior[Message] =
+    Behaviors.setup { context =>
+      val segments: IndexedSeq[Iterable[() => Unit]] = segmentsOf(entities, context.self)
+      var state: Snapshot = initialState
+      var changes: SnapshotDelta = SnapshotDelta(state.version)
+      Behaviors.receiveMessage {
+        case RequestSegment(segment) =>
+          if segment == 0 then
+            city ! NotifyDistrictChanges(changes)
+            state = state.updated(changes)
+            changes = SnapshotDelta(state.version)
+          segments(segment).foreach(requestState => requestState())
+          Behaviors.same
+        case NotifyPluviometerState(entityState) =>
+          changes = changes.including(entityState, state)
+          Behaviors.same
+        case NotifyFireStationState(entityState) =>
+          changes = changes.including(entityState, state)
+          Behaviors.same
+        case NotifyZoneState(entityState) =>
+          changes = changes.including(entityState, state)
+          Behaviors.same
+        case request @ (_: RequestInitialization | _: RequestDispatch) =>
+          city ! request
+          Behaviors.same
+        case _ => Behaviors.unhandled
+      }
+    }
\ No newline at end of file
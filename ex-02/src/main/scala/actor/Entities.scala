@@ -0,0 +1,59 @@
+package actor
+
+import akka.actor.typed.{ActorRef, ActorSystem}
+import akka.cluster.sharding.typed.scaladsl.{ClusterSharding, Entity, EntityRef}
+import configuration.C.Cluster.ENTITY_HOST_ROLE
+import util.Id
+import util.Id.EntityId
+
+import java.net.URLDecoder
+import java.nio.charset.StandardCharsets.UTF_8
+
+/**
+ * Model the sharded entities of the cities in the cluster: zones, pluviometers and fire-stations,
+ * addressed by their identifiers.
+ */
+object Entities:
+  /**
+   * Initializes the sharding of the entities in the specified actor system. Only the nodes with the
+   * role [[ENTITY_HOST_ROLE]] host the entities, while the other nodes only forward messages to them.
+   * Initializing the sharding more than once in the same actor system has no effect.
+   * The zones and the fire-stations are stopped with a hand-off, so that they delete their records from the
+   * journal of the node they are leaving.
+   * @param system the specified actor system
+   */
+  def init(system: ActorSystem[?]): Unit =
+    val sharding: ClusterSharding = ClusterSharding(system)
+    sharding.init(Entity(PluviometerActor.TypeKey)(entityContext => PluviometerActor(Id.parse(entityContext.entityId))).withRole(ENTITY_HOST_ROLE))
+    sharding.init(Entity(FireStationActor.TypeKey)(entityContext => FireStationActor(Id.parse(entityContext.entityId)))
+      .withRole(ENTITY_HOST_ROLE).withStopMessage(FireStationActor.HandOff))
+    sharding.init(Entity(ZoneActor.TypeKey)(entityContext => ZoneActor(Id.parse(entityContext.entityId)))
+      .withRole(ENTITY_HOST_ROLE).withStopMessage(ZoneActor.HandOff))
+
+  /**
+   * @param system the actor system where the sharding of the entities has been initialized
+   * @param id     the specified identifier
+   * @return a reference to the pluviometer with the specified identifier
+   */
+  def pluviometer(system: ActorSystem[?], id: EntityId): EntityRef[PluviometerActor.Message] =
+    ClusterSharding(system).entityRefFor(PluviometerActor.TypeKey, Id.show(id))
+  /**
+   * @param system the actor system where the sharding of the entities has been initialized
+   * @param id     the specified identifier
+   * @return a reference to the fire-station with the specified identifier
+   */
+  def fireStation(system: ActorSystem[?], id: EntityId): EntityRef[FireStationActor.Message] =
+    ClusterSharding(system).entityRefFor(FireStationActor.TypeKey, Id.show(id))
+  /**
+   * @param system the actor system where the sharding of the entities has been initialized
+   * @param id     the specified identifier
+   * @return a reference to the zone with the specified identifier
+   */
+  def zone(system: ActorSystem[?], id: EntityId): EntityRef[ZoneActor.Message] =
+    ClusterSharding(system).entityRefFor(ZoneActor.TypeKey, Id.show(id))
+
+  /**
+   * @param entity the actor of the specified entity, as referenced by the entity itself
+   * @return the identifier of the specified entity
+   */
+  def idOf(entity: ActorRef[?]): EntityId = Id.parse(URLDecoder.decode(entity.path.name, UTF_8))
@@ -7,15 +7,19 @@ import actor.FireStationActor.FireStation.State.*
 import actor.FireStationActor.FireStation.State
 import actor.PluviometerActor.Pluviometer
 import actor.ZoneActor.*
-import akka.actor.typed.receptionist.Receptionist.*
-import akka.actor.typed.receptionist.ServiceKey
-import akka.actor.typed.scaladsl.{Behaviors, Routers}
+import akka.actor.typed.scaladsl.Behaviors
 import akka.actor.typed.Behavior
-import cluster.message.CborSerializable
+import akka.cluster.sharding.typed.scaladsl.EntityTypeKey
+import cluster.message.{BinarySerializable, CborSerializable}
+import configuration.C.Cluster.ENTITY_STASH_CAPACITY
 import configuration.C.FireStation.*
 import configuration.C.Zone.RANDOM_POSITION_PADDING
+import persistence.SnapshotCodec.*
+import persistence.{EventLog, SnapshotCodec, StateChanged}
+import util.Id.EntityId
 import util.{Id, Point2D, StateIn}
-import scala.util.Random
+import scala.concurrent.Future
+import scala.util.{Random, Try}
 
 /**
  * Model the actor for a fire-station.
@@ -25,8 +29,14 @@ object FireStationActor:
    * Model the messages of a fire-station actor.
    */
   trait Message extends CborSerializable
+  /**
+   * Tells this fire-station actor to initialize his state with the specified data. The fire-station
+   * always starts available, since the zone he might have been taking care of is not known.
+   * A fire-station recovered from the journal of his node is not initialized by his city.
+   */
+  case class Initialize(state: FireStationData) extends Message
   /** Tells this actor to take a snapshot of its state and forward it to the specified city. */
-  case class TakeSnapshot(city: CityRef) extends Message
+  case class TakeSnapshot(city: CityRef) extends Message with BinarySerializable
   /** Tells this fire-station actor that the specified zone is under alarm. */
   case class Alert(zone: ZoneRef) extends Message
   /** Tells this fire-station actor to depart towards the specified zone. */
@@ -35,61 +45,137 @@ object FireStationActor:
   case object Return extends Message
   /** Tells this fire-station actor to notify the zone which he is taking care of that its alarm has been solved. */
   private[FireStationActor] case object SolveAlarm extends Message
+  /**
+   * Tells this fire-station actor that he is moving to another node, or stopping, so that he deletes his records from
+   * the journal of his node. If he is started on the same node again, he is initialized by his city.
+   */
+  case object HandOff extends Message
+  /** Tells this fire-station actor that the last change of his state has been flushed to the journal of his node, or that it could not be. */
+  private[FireStationActor] case class Recorded(result: Try[Unit]) extends Message with EventLog.Recorded
+
+  /** The type of the sharded entities of fire-station actors. */
+  val TypeKey: EntityTypeKey[Message] = EntityTypeKey[Message]("FireStation")
 
   /**
-   * @param fireStation the initial state of this fire-station actor
+   * @param fireStationId the identifier of this fire-station actor
    */
-  def apply(fireStation: FireStation): Behavior[Message] =
-    Behaviors.setup { context =>
-      context.system.receptionist ! Register(ServiceKey[Message](fireStation.id), context.self)
-      AvailableBehavior(fireStation)
-    }
+  def apply(fireStationId: EntityId): Behavior[Message] = Uninitialized(fireStationId)
+
+  /**
+   * Behavior where this fire-station actor recovers his state from the journal of his node or, if it is not
+   * there, waits to be initialized by his city, postponing the other requests.
+   * The city is asked for the initialization whenever it requests a snapshot.
+   */
+  private[FireStationActor] object Uninitialized:
+    def apply(fireStationId: EntityId): Behavior[Message] =
+      Behaviors.setup { context =>
+        val log: Option[EventLog[FireStationRecord]] = EventLog.of(context.system, Id.show(fireStationId))
+        val recoveryStart: Long = System.nanoTime()
+        log.flatMap(_.recover()) match
+          case Some(FireStationRecord(state, monitoredZone)) =>
+            context.log.info(f"Fire-station $fireStationId recovered in ${(System.nanoTime() - recoveryStart) / 1e6}%.3f ms")
+            (State.fromOrdinal(state.state), monitoredZone) match
+              case (Busy, Some(zoneId)) => BusyBehavior(state.asFireStation, zoneId, log)
+              case _ => AvailableBehavior(state.asFireStation, log)
+          case None =>
+            Behaviors.withStash(ENTITY_STASH_CAPACITY) { stash =>
+              Behaviors.receiveMessage {
+                case Initialize(state) =>
+                  val fireStation: FireStation = state.asFireStation
+                  fireStation.become(Available)
+                  val record: Option[Future[Unit]] = log.map(_.snapshot(FireStationRecord(fireStation.data, monitoredZone = None)))
+                  stash.unstashAll(afterRecorded(record)(AvailableBehavior(fireStation, log)))
+                case TakeSnapshot(city) =>
+                  city ! RequestInitialization(fireStationId)
+                  Behaviors.same
+                case HandOff => Behaviors.stopped
+                case message =>
+                  if !stash.isFull then stash.stash(message)
+                  Behaviors.same
+              }
+            }
+      }
 
   /** Behavior where the fire-fighters of this fire-station are at the station. */
   private[FireStationActor] object AvailableBehavior:
-    def apply(fireStation: FireStation): Behavior[Message] =
+    def apply(fireStation: FireStation, log: Option[EventLog[FireStationRecord]]): Behavior[Message] =
       Behaviors.setup { context =>
-        fireStation.become(Available)
         Behaviors.receiveMessage {
           case Alert(zone) =>
             zone ! DepartureRequest(context.self)
             Behaviors.same
-          case Depart(zone) => BusyBehavior(fireStation, zone)
+          case Depart(zone) =>
+            val monitoredZone: EntityId = Entities.idOf(zone)
+            become(fireStation, Busy, log, Some(monitoredZone))(BusyBehavior(fireStation, monitoredZone, log))
           case TakeSnapshot(city) =>
             city ! NotifyFireStationState(fireStation.data)
             Behaviors.same
+          case HandOff => handOff(log)
           case _ => Behaviors.unhandled
         }
       }
 
-  /** Behavior where the fire-fighters of this fire-station have departed to solve an emergency. */
+  /**
+   * Behavior where the fire-fighters of this fire-station have departed to solve an emergency.
+   * The zone is referenced by his identifier, so that it can be recovered from the journal.
+   */
   private[FireStationActor] object BusyBehavior:
-    def apply(fireStation: FireStation, monitoredZone: ZoneRef): Behavior[Message] =
+    def apply(fireStation: FireStation, monitoredZone: EntityId, log: Option[EventLog[FireStationRecord]]): Behavior[Message] =
       Behaviors.setup { context =>
-        fireStation.become(Busy)
         Behaviors.withTimers { timers =>
           timers.startTimerWithFixedDelay(SolveAlarm, SolveAlarm, INTERVENTION_DURATION)
           Behaviors.receiveMessage {
             case SolveAlarm =>
-              monitoredZone ! Solved
+              Entities.zone(context.system, monitoredZone) ! Solved
               Behaviors.same
             case Return =>
               timers.cancel(SolveAlarm)
-              AvailableBehavior(fireStation)
+              become(fireStation, Available, log)(AvailableBehavior(fireStation, log))
             case TakeSnapshot(city) =>
               city ! NotifyFireStationState(fireStation.data)
               Behaviors.same
+            case HandOff => handOff(log)
             case _ => Behaviors.unhandled
           }
         }
       }
 
+  /**
+   * Changes the state of the specified fire-station to the specified state, recording the change in the specified log.
+   * @param fireStation   the specified fire-station
+   * @param state         the specified state
+   * @param log           the specified log
+   * @param monitoredZone the identifier of the zone the specified fire-station is taking care of, if any
+   * @param next          the behavior of the specified fire-station in the specified state
+   * @return the specified behavior, once the change has been recorded
+   */
+  private def become(
+    fireStation: FireStation,
+    state: State,
+    log: Option[EventLog[FireStationRecord]],
+    monitoredZone: Option[EntityId] = None
+  )(next: => Behavior[Message]): Behavior[Message] =
+    if fireStation.is(state) then next else
+      fireStation.become(state)
+      afterRecorded(log.map(_.persist(StateChanged(state.ordinal, monitoredZone), FireStationRecord(fireStation.data, monitoredZone))))(next)
+
+  /**
+   * @param log the log of this fire-station actor
+   * @return the behavior of this fire-station actor deleting his records from the journal of his node, then stopping
+   */
+  private def handOff(log: Option[EventLog[FireStationRecord]]): Behavior[Message] =
+    afterRecorded(log.map(_.delete()))(Behaviors.stopped)
+
+  /** As [[EventLog.afterRecorded]], for the specified record of a fire-station, if any. */
+  private def afterRecorded(record: Option[Future[Unit]])(next: => Behavior[Message]): Behavior[Message] =
+    EventLog.afterRecorded(record.getOrElse(Future.unit), Recorded.apply)(next)
+
   /**
    * Model the state of a fire-station actor.
    * @param position the position of the fire-station
    * @param id       the identifier of this fire-station
    */
-  case class FireStation(position: Point2D, id: String = Id.newId) extends StateIn[State](Available) with Id:
+  case class FireStation(position: Point2D, id: EntityId = Id.newId) extends StateIn[State](Available) with Id:
     /** @return the data representing this fire-station. */
     def data: FireStationData = FireStationData(position, id, state.ordinal)
     override def toString: String = s"FireStation(#$id,$state,$position)"
@@ -121,11 +207,35 @@ object FireStationActor:
   /**
    * Model the data representing a fire-station.
    */
-  case class FireStationData(position: Point2D, id: String = Id.newId, state: Int) extends CborSerializable with Id:
+  case class FireStationData(position: Point2D, id: EntityId = Id.newId, state: Int) extends CborSerializable with Id:
     /** @return the fire-station represented by this data. */
     def asFireStation: FireStation =
       val fireStation = FireStation(position, id)
       fireStation.become(State.fromOrdinal(state))
       fireStation
     override def toString: String =
-      s"FireStationData(id:$id, position:$position, state:${State.fromOrdinal(state)})"
\ No newline at end of file
+      s"FireStationData(id:$id, position:$position, state:${State.fromOrdinal(state)})"
+
+  /**
+   * Model the state of a fire-station actor recorded in the journal of his node.
+   * @param state         the data representing the fire-station
+   * @param monitoredZone the identifier of the zone the fire-station is taking care of, if it is busy
+   */
+  case class FireStationRecord(state: FireStationData, monitoredZone: Option[EntityId])
+  /**
+   * Companion object of [[FireStationRecord]].
+   */
+  object FireStationRecord:
+    given SnapshotCodec[FireStationRecord] with
+      override def encode(record: FireStationRecord): Array[Byte] = SnapshotCodec.write { output =>
+        output.writeDouble(record.state.position.x)
+        output.writeDouble(record.state.position.y)
+        output.writeLong(record.state.id)
+        output.writeInt(record.state.state)
+        output.writeOption(record.monitoredZone)
+      }
+      override def decode(bytes: Array[Byte]): FireStationRecord = SnapshotCodec.read(bytes) { input =>
+        FireStationRecord(FireStationData(Point2D(input.readDouble(), input.readDouble()), input.readLong(), input.readInt()), input.readOption())
+      }
+      override def applied(record: FireStationRecord, event: StateChanged): FireStationRecord =
+        FireStationRecord(record.state.copy(state = event.state), event.counterpart)
\ No newline at end of file
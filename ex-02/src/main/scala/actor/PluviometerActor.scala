@@ -4,14 +4,20 @@ import actor.*
 import actor.CityActor.*
 import actor.PluviometerActor.*
 import actor.ZoneActor.*
-import akka.actor.typed.receptionist.Receptionist.*
-import akka.actor.typed.receptionist.ServiceKey
-import akka.actor.typed.scaladsl.{Behaviors, Routers}
+import akka.actor.typed.scaladsl.Behaviors
 import akka.actor.typed.Behavior
-import cluster.message.CborSerializable
+import akka.cluster.sharding.typed.scaladsl.{EntityRef, EntityTypeKey}
+import cluster.message.{BinarySerializable, CborSerializable}
 import configuration.C.City.*
+import configuration.C.Cluster.ENTITY_STASH_CAPACITY
 import configuration.C.Log.*
-import util.{Id, Point2D}
+import configuration.C.Pluviometer.*
+import configuration.C.Zone.MEASUREMENT_PERIOD
+import util.Ticks.*
+import util.Id.EntityId
+import util.{Id, Point2D, Ticks}
+
+import scala.concurrent.duration.FiniteDuration
 
 /**
  * Model the actor for a pluviometer.
@@ -21,32 +27,153 @@ object PluviometerActor:
    * Model the messages of a pluviometer actor.
    */
   trait Message extends CborSerializable
+  /** Tells this pluviometer actor to initialize his state with the specified data, as a pluviometer of the specified zone. */
+  case class Initialize(state: PluviometerData, zoneId: EntityId) extends Message
   /** Tells this actor to take a snapshot of its state and forward it to the specified city. */
-  case class TakeSnapshot(city: CityRef) extends Message
+  case class TakeSnapshot(city: CityRef) extends Message with BinarySerializable
   /** Tells this pluviometer actor to take a measurement and forward the signal to the specified zone. */
   case class RequestSignal(zone: ZoneRef) extends Message
+  /** Tells this pluviometer actor that his zone has received the frame with the specified sequence number, granting him a new credit. */
+  case class FrameAck(seqNr: Long) extends Message with BinarySerializable
+  /**
+   * Tells this pluviometer actor to perceive the specified amount of rain for the specified duration, instead of
+   * measuring it. If he is pushing his readings, the new reading is pushed immediately. Useful to drive synthetic
+   * rain patterns over a city.
+   */
+  case class Rain(measurement: Double, duration: FiniteDuration) extends Message
+  /** Tells this pluviometer actor to take a measurement, pushing it to his zone if needed. */
+  private[PluviometerActor] case object Measure extends Message
+
+  /** The type of the sharded entities of pluviometer actors. */
+  val TypeKey: EntityTypeKey[Message] = EntityTypeKey[Message]("Pluviometer")
+
+  /**
+   * @param pluviometerId the identifier of this pluviometer actor
+   */
+  def apply(pluviometerId: EntityId): Behavior[Message] = Uninitialized(pluviometerId)
 
   /**
-   * @param pluviometer the initial state of this pluviometer actor
+   * Behavior where this pluviometer actor waits to be initialized by his city, postponing the other requests.
+   * The city is asked for the initialization whenever it requests a snapshot.
    */
-  def apply(pluviometer: Pluviometer): Behavior[Message] =
-    Behaviors.setup { context =>
-      context.system.receptionist ! Register(ServiceKey[Message](pluviometer.id), context.self)
-      Active(pluviometer)
-    }
+  private[PluviometerActor] object Uninitialized:
+    def apply(pluviometerId: EntityId): Behavior[Message] =
+      Behaviors.withStash(ENTITY_STASH_CAPACITY) { stash =>
+        Behaviors.receiveMessage {
+          case Initialize(state, zoneId) =>
+            stash.unstashAll(if PUSH_READINGS then Streaming(state.asPluviometer, zoneId) else Active(state.asPluviometer))
+          case TakeSnapshot(city) =>
+            city ! RequestInitialization(pluviometerId)
+            Behaviors.same
+          case message =>
+            if !stash.isFull then stash.stash(message)
+            Behaviors.same
+        }
+      }
 
   /** Behavior where this pluviometer actor takes measurements under the requests of other actors. */
   private[PluviometerActor] object Active:
     def apply(pluviometer: Pluviometer): Behavior[Message] =
       Behaviors.receiveMessage {
         case RequestSignal(zone) =>
-          zone ! Signal(pluviometer.id, pluviometer.measureAndSignal)
+          zone ! Signal(pluviometer.id, pluviometer.read())
           Behaviors.same
         case TakeSnapshot(city) =>
           city ! NotifyPluviometerState(pluviometer.data)
           Behaviors.same
+        case Rain(measurement, duration) =>
+          pluviometer.rain(measurement, duration)
+          Behaviors.same
+        case _ => Behaviors.unhandled
       }
 
+  /**
+   * Behavior where this pluviometer actor takes measurements periodically, pushing his readings to his zone
+   * in frames. A reading is pushed when the signal changes or when no reading has been pushed for [[PUSH_PERIOD]].
+   */
+  private[PluviometerActor] object Streaming:
+    def apply(pluviometer: Pluviometer, zoneId: EntityId): Behavior[Message] =
+      Behaviors.setup { context =>
+        val zone: EntityRef[ZoneActor.Message] = Entities.zone(context.system, zoneId)
+        val stream: ReadingStream = ReadingStream()
+        Behaviors.withTimers { timers =>
+          timers.startSingleTimer(Measure, Measure, Ticks.phaseOf(pluviometer.id, MEASUREMENT_PERIOD))
+          Behaviors.receiveMessage {
+            case Measure =>
+              timers.startJitteredTimer(Measure, Measure, MEASUREMENT_PERIOD)
+              stream.offer(pluviometer.read())
+              stream.poll().foreach(readings => zone ! SignalFrame(context.self, pluviometer.id, stream.seqNr, readings))
+              Behaviors.same
+            case FrameAck(_) =>
+              stream.acknowledge()
+              stream.poll().foreach(readings => zone ! SignalFrame(context.self, pluviometer.id, stream.seqNr, readings))
+              Behaviors.same
+            case Rain(measurement, duration) =>
+              pluviometer.rain(measurement, duration)
+              stream.offer(pluviometer.read())
+              stream.poll().foreach(readings => zone ! SignalFrame(context.self, pluviometer.id, stream.seqNr, readings))
+              Behaviors.same
+            case TakeSnapshot(city) =>
+              city ! NotifyPluviometerState(pluviometer.data)
+              Behaviors.same
+            case _ => Behaviors.unhandled
+          }
+        }
+      }
+
+  /**
+   * Model a stream of readings pushed by a pluviometer to his zone, with credit-based backpressure:
+   * a frame can be pushed only if the zone granted a credit for it, each acknowledgement from the
+   * zone granting a new credit. Without credit, the readings are kept until the next acknowledgement.
+   */
+  private[PluviometerActor] class ReadingStream:
+    private var readings: Vector[Reading] = Vector()
+    private var lastSignal: Option[Boolean] = Option.empty
+    private var lastPushMillis: Long = 0
+    private var lastAckMillis: Long = System.currentTimeMillis()
+    private var credit: Int = PUSH_CREDIT
+    private var _seqNr: Long = 0
+    /** @return the sequence number of the last frame pushed by this stream. */
+    def seqNr: Long = this._seqNr
+    /**
+     * Adds the specified reading to the readings to be pushed, if its signal is different from the signal of
+     * the last reading added or if no reading has been pushed for [[PUSH_PERIOD]].
+     * @param reading the specified reading
+     */
+    def offer(reading: Reading): Unit =
+      if !this.lastSignal.contains(reading.on) || reading.timestamp - this.lastPushMillis >= PUSH_PERIOD.toMillis then
+        this.readings = (this.readings :+ reading).takeRight(MAX_FRAME_SIZE)
+        this.lastSignal = Option(reading.on)
+    /** Grants a new credit to this stream, after the acknowledgement of a frame. */
+    def acknowledge(): Unit =
+      this.credit = Math.min(this.credit + 1, PUSH_CREDIT)
+      this.lastAckMillis = System.currentTimeMillis()
+    /**
+     * @return an optional of the readings to be pushed in the next frame, if there are readings and credit
+     *         to push them, empty otherwise. If no acknowledgement arrived for [[ACK_TIMEOUT]], the frames
+     *         not acknowledged are considered lost and their credit is restored.
+     */
+    def poll(): Option[List[Reading]] =
+      val now: Long = System.currentTimeMillis()
+      if this.credit == 0 && now - this.lastAckMillis >= ACK_TIMEOUT.toMillis then
+        this.credit = PUSH_CREDIT
+        this.lastAckMillis = now
+      if this.readings.isEmpty || this.credit == 0 then Option.empty else
+        val frame: List[Reading] = this.readings.toList
+        this.readings = Vector()
+        this.credit -= 1
+        this._seqNr += 1
+        this.lastPushMillis = now
+        Option(frame)
+
+  /**
+   * Model a reading of a pluviometer.
+   * @param measurement the amount of perceived rain
+   * @param on          true if the measurement is greater than the threshold of the pluviometer, false otherwise
+   * @param timestamp   the instant of the measurement, in milliseconds since the epoch
+   */
+  case class Reading(measurement: Double, on: Boolean, timestamp: Long) extends CborSerializable
+
   /**
    * Model a pluviometer that will emit a signal if the perceived rain
    * is greater than a certain threshold.
@@ -54,8 +181,10 @@ object PluviometerActor:
    * @param threshold the threshold of this pluviometer
    * @param id        the identifier of this pluviometer
    */
-  abstract class Pluviometer(val position: Point2D, val threshold: Double, val id: String = Id.newId) extends Id:
+  abstract class Pluviometer(val position: Point2D, val threshold: Double, val id: EntityId = Id.newId) extends Id:
     protected var _lastMeasurement: Double = 0
+    /** The amount of rain perceived by this pluviometer instead of measuring it, until the specified instant. */
+    private var syntheticRain: Option[(Double, Long)] = Option.empty
     /** @return the last measurement of this pluviometer. */
     def lastMeasurement: Double = this._lastMeasurement
     /** @return true if the last measurement of this pluviometer is greater than its threshold, false otherwise. */
@@ -65,10 +194,31 @@ object PluviometerActor:
      * @return true if the last measurement of this pluviometer is greater than its threshold, false otherwise.
      */
     def measureAndSignal: Boolean =
-      measure()
+      perceive()
       signal
     /** Measures the amount of perceived rain. */
     def measure(): Unit
+    /**
+     * Makes this pluviometer perceive the specified amount of rain for the specified duration, instead of
+     * measuring it. Any previous synthetic rain is replaced.
+     * @param measurement the specified amount of rain
+     * @param duration    the specified duration
+     */
+    def rain(measurement: Double, duration: FiniteDuration): Unit =
+      this.syntheticRain = Option((measurement, System.currentTimeMillis() + duration.toMillis))
+    /** Perceives the synthetic rain of this pluviometer, if any, otherwise measures the amount of perceived rain. */
+    private def perceive(): Unit = this.syntheticRain match
+      case Some((measurement, until)) if System.currentTimeMillis() < until => this._lastMeasurement = measurement
+      case _ =>
+        this.syntheticRain = Option.empty
+        measure()
+    /**
+     * Measures the amount of perceived rain.
+     * @return the reading of the new measurement of this pluviometer
+     */
+    def read(): Reading =
+      perceive()
+      Reading(lastMeasurement, signal, System.currentTimeMillis())
     /** @return the data representing this pluviometer. */
     def data: PluviometerData = PluviometerData(position, lastMeasurement, threshold, signal, id)
 
@@ -77,7 +227,7 @@ object PluviometerActor:
    */
   object Pluviometer:
     /** As [[RandomPluviometer new RandomPluviometer(position, signalProbability, id)]]. */
-    def withRandomMeasurements(position: Point2D, signalProbability: Double, id: String = Id.newId): Pluviometer =
+    def withRandomMeasurements(position: Point2D, signalProbability: Double, id: EntityId = Id.newId): Pluviometer =
       RandomPluviometer(position, signalProbability, id)
 
     /**
@@ -86,7 +236,7 @@ object PluviometerActor:
      * @param signalProbability the probability of a measurement being greater than the threshold of the pluviometer
      * @param id                the identifier of this pluviometer
      */
-    private class RandomPluviometer(position: Point2D, signalProbability: Double, id: String = Id.newId)
+    private class RandomPluviometer(position: Point2D, signalProbability: Double, id: EntityId = Id.newId)
       extends Pluviometer(position, 1 - signalProbability, id) :
       override def measure(): Unit = this._lastMeasurement = Math.random()
       override def toString: String = s"Pluviometer(#$id,${lastMeasurement.pretty},$signal,${signalProbability.pretty})"
@@ -99,7 +249,9 @@ object PluviometerActor:
     lastMeasurement: Double,
     threshold: Double,
     signal: Boolean,
-    id: String = Id.newId
+    id: EntityId = Id.newId
   ) extends CborSerializable with Id:
+    /** @return a pluviometer with random measurements represented by this data. */
+    def asPluviometer: Pluviometer = Pluviometer.withRandomMeasurements(position, 1 - threshold, id)
     override def toString: String =
       s"PluviometerData(id:$id, position:$position, signal:$signal, measurement:${lastMeasurement.pretty}, threshold:${threshold.pretty})"
\ No newline at end of file
@@ -0,0 +1,223 @@
+package actor
+
+import actor.CityActor.{CityRef, Snapshot}
+import actor.FireStationActor.FireStation
+import actor.ViewActor.{ReceiveSnapshot, ReceiveSnapshotDelta}
+import actor.ZoneActor.Zone
+import akka.actor.typed.pubsub.Topic
+import akka.actor.typed.receptionist.Receptionist
+import akka.actor.typed.scaladsl.Behaviors
+import akka.actor.typed.{ActorRef, Behavior}
+import configuration.C.Query.{QUERY_CACHE_CAPACITY, QUERY_TIMEOUT}
+import configuration.C.View.RECONNECTION_PERIOD
+import util.Id.EntityId
+import util.{Id, Point2D}
+
+import scala.collection.immutable.LongMap
+import scala.collection.mutable
+
+/**
+ * Model the actor for a query service, which answers queries about the entities of all the cities in the cluster.
+ * The query service is local to the node where it is spawned: its messages, queries and results are not
+ * serializable, so it can only be asked by the actors of the same node, while it receives the snapshots of
+ * the cities from the whole cluster through the observers it spawns.
+ */
+object QueryActor:
+  /**
+   * Model the messages of a query actor.
+   */
+  trait Message
+  /** Asks this query actor for the results of the specified query in each city of the cluster. */
+  case class Ask(query: Query, replyTo: ActorRef[QueryResult]) extends Message
+  /**
+   * Tells this query actor to send the results of the specified query in each city of the cluster to the
+   * specified subscriber, then the new results in a city whenever they change.
+   */
+  case class Subscribe(query: Query, subscriber: ActorRef[QueryUpdate]) extends Message
+  /** Tells this query actor to stop sending the results of the specified query to the specified subscriber. */
+  case class Unsubscribe(query: Query, subscriber: ActorRef[QueryUpdate]) extends Message
+  /** Tells this query actor that the city actors in the cluster have changed. */
+  private case class CitiesChanged(listing: Receptionist.Listing) extends Message
+  /** Tells this query actor that the specified city has sent the specified message to his views. */
+  private case class Observe(cityId: EntityId, message: ViewActor.Message) extends Message
+  /** Tells this query actor to request a full snapshot to the cities he is not synchronized with. */
+  private case object RequestSnapshots extends Message
+  /** Tells this query actor to answer the specified ask with the results he has, if it is still pending. */
+  private case class AskTimeout(askId: Long) extends Message
+
+  /**
+   * Model a query about the entities of a city.
+   */
+  trait Query:
+    /**
+     * @param snapshot the specified snapshot of a city
+     * @return the entities of the specified snapshot satisfying this query
+     */
+    def evaluate(snapshot: Snapshot): List[Id]
+  /**
+   * Companion object of [[Query]].
+   */
+  object Query:
+    /** Model a query for the zones under alarm, which are not taken care of by a fire-station yet. */
+    case object AlarmedZones extends Query:
+      override def evaluate(snapshot: Snapshot): List[Id] =
+        snapshot.zoneDatas.values.filter(_.state == Zone.State.Alarmed.ordinal).toList
+    /**
+     * Model a query for the available fire-stations within the specified distance from the specified point.
+     * @param center   the specified point
+     * @param distance the specified distance
+     */
+    case class AvailableFireStations(center: Point2D, distance: Double) extends Query:
+      override def evaluate(snapshot: Snapshot): List[Id] =
+        snapshot.fireStationDatas.values
+          .filter(f => f.state == FireStation.State.Available.ordinal && f.position.distance(center) <= distance).toList
+
+  /**
+   * Model the results of a query in each city of the cluster.
+   * @param query         the query
+   * @param results       a map from the cities to the entities satisfying the query inside them
+   * @param missingCities the identifiers of the cities whose snapshot was not received in time
+   */
+  case class QueryResult(query: Query, results: LongMap[List[Id]], missingCities: Set[EntityId])
+  /**
+   * Model the results of a query in a city.
+   * @param query   the query
+   * @param cityId  the identifier of the city
+   * @param version the version of the snapshot of the city the results were computed from
+   * @param results the entities satisfying the query inside the city
+   */
+  case class QueryUpdate(query: Query, cityId: EntityId, version: Long, results: List[Id])
+
+  /**
+   * The query actor discovers the city actors in the cluster through the receptionist and subscribes to the
+   * topic of each city, keeping the last snapshot of each city updated with its deltas as a view would, so
+   * that the queries are answered from the snapshots already received. The cities the query actor is not
+   * synchronized with are requested a full snapshot all at once, and the queries asked meanwhile wait for
+   * them for at most [[QUERY_TIMEOUT]].
+   *
+   * The results of a query in a city are cached for the version of the snapshot of the city they were computed
+   * from, so that they are computed again only when the city changes, however many times they are asked.
+   */
+  def apply(): Behavior[Message] =
+    Behaviors.setup { context =>
+      val self: ActorRef[Message] = context.self
+      context.system.receptionist ! Receptionist.Subscribe(CityActor.Key, context.messageAdapter(CitiesChanged.apply))
+      Behaviors.withTimers { timers =>
+        timers.startTimerWithFixedDelay(RequestSnapshots, RequestSnapshots, RECONNECTION_PERIOD)
+        /** A map from the cities in the cluster to their actor and to the observer subscribed to their topic. */
+        var cities: LongMap[(CityRef, ActorRef[ViewActor.Message])] = LongMap()
+        var listed: Boolean = false
+        var snapshots: LongMap[Snapshot] = LongMap()
+        val cache: ResultCache = ResultCache(QUERY_CACHE_CAPACITY)
+        val subscriptions: mutable.HashMap[Query, Set[ActorRef[QueryUpdate]]] = mutable.HashMap()
+        /** The last results of the subscribed queries in each city, as sent to their subscribers. */
+        val published: mutable.HashMap[(Query, EntityId), List[Id]] = mutable.HashMap()
+        var pendingAsks: LongMap[Ask] = LongMap()
+        var nextAskId: Long = 0
+
+        def isSynchronized: Boolean = listed && cities.keys.forall(snapshots.contains)
+        def requestSnapshots(): Unit =
+          cities.removedAll(snapshots.keys).values.foreach((city, observer) => city ! CityActor.RequestSnapshot(observer))
+        def answer(ask: Ask): Unit = ask.replyTo ! QueryResult(
+          ask.query,
+          snapshots.transform((cityId, snapshot) => cache.resultsOf(ask.query, cityId, snapshot)),
+          cities.keySet.diff(snapshots.keySet).toSet
+        )
+        def answerPendingAsks(): Unit = if isSynchronized then
+          pendingAsks.foreachEntry((askId, ask) => { timers.cancel(AskTimeout(askId)); answer(ask) })
+          pendingAsks = LongMap()
+        def update(cityId: EntityId, snapshot: Snapshot): Unit =
+          snapshots = snapshots + (cityId -> snapshot)
+          subscriptions.foreach((query, subscribers) => {
+            val results: List[Id] = cache.resultsOf(query, cityId, snapshot)
+            if !published.get((query, cityId)).contains(results) then
+              published((query, cityId)) = results
+              subscribers.foreach(_ ! QueryUpdate(query, cityId, snapshot.version, results))
+          })
+          answerPendingAsks()
+
+        Behaviors.receiveMessage {
+          case CitiesChanged(CityActor.Key.Listing(cityRefs)) =>
+            val current: LongMap[CityRef] = LongMap.from(cityRefs.map(city => (CityActor.idOf(city), city)))
+            cities.removedAll(current.keys).foreachEntry((cityId, entry) => {
+              context.stop(entry._2)
+              snapshots = snapshots - cityId
+              published.filterInPlace((key, _) => key._2 != cityId)
+            })
+            cities = cities.filter((cityId, _) => current.contains(cityId)) ++ current.removedAll(cities.keys).transform((cityId, city) => {
+              val observer: ActorRef[ViewActor.Message] =
+                context.spawnAnonymous(Behaviors.receiveMessage[ViewActor.Message] { message => self ! Observe(cityId, message); Behaviors.same })
+              SnapshotTopics(context.system).topicOf(cityId) ! Topic.Subscribe(observer)
+              city ! CityActor.RequestSnapshot(observer)
+              (city, observer)
+            })
+            listed = true
+            answerPendingAsks()
+            Behaviors.same
+          case RequestSnapshots =>
+            requestSnapshots()
+            Behaviors.same
+          case Observe(cityId, ReceiveSnapshot(snapshot)) =>
+            if cities.contains(cityId) && snapshots.get(cityId).forall(_.version < snapshot.version) then update(cityId, snapshot)
+            Behaviors.same
+          case Observe(cityId, ReceiveSnapshotDelta(delta)) =>
+            snapshots.get(cityId) match
+              case Some(s) if s.version == delta.fromVersion => update(cityId, s.updated(delta))
+              case Some(s) if s.version > delta.fromVersion => // the delta is already included in the snapshot
+              case _ => cities.get(cityId).foreach((city, observer) => city ! CityActor.RequestSnapshot(observer))
+            Behaviors.same
+          case ask: Ask =>
+            if isSynchronized then answer(ask) else
+              requestSnapshots()
+              pendingAsks = pendingAsks + (nextAskId -> ask)
+              timers.startSingleTimer(AskTimeout(nextAskId), AskTimeout(nextAskId), QUERY_TIMEOUT)
+              nextAskId = nextAskId + 1
+            Behaviors.same
+          case AskTimeout(askId) =>
+            pendingAsks.get(askId).foreach(answer)
+            pendingAsks = pendingAsks - askId
+            Behaviors.same
+          case Subscribe(query, subscriber) =>
+            subscriptions(query) = subscriptions.getOrElse(query, Set()) + subscriber
+            snapshots.foreachEntry((cityId, snapshot) => {
+              val results: List[Id] = cache.resultsOf(query, cityId, snapshot)
+              published((query, cityId)) = results
+              subscriber ! QueryUpdate(query, cityId, snapshot.version, results)
+            })
+            Behaviors.same
+          case Unsubscribe(query, subscriber) =>
+            val subscribers: Set[ActorRef[QueryUpdate]] = subscriptions.getOrElse(query, Set()) - subscriber
+            if subscribers.nonEmpty then subscriptions(query) = subscribers else
+              subscriptions -= query
+              published.filterInPlace((key, _) => key._1 != query)
+            Behaviors.same
+          case _ => Behaviors.unhandled
+        }
+      }
+    }
+
+  /**
+   * Model a cache of the results of the queries in each city, which evicts the least recently used results
+   * beyond the specified capacity.
+   * @param maxSize the specified capacity
+   */
+  private class ResultCache(maxSize: Int):
+    private val results: java.util.LinkedHashMap[(Query, EntityId), (Long, List[Id])] =
+      new java.util.LinkedHashMap[(Query, EntityId), (Long, List[Id])](16, 0.75f, true) {
+        override def removeEldestEntry(eldest: java.util.Map.Entry[(Query, EntityId), (Long, List[Id])]): Boolean =
+          this.size > maxSize
+      }
+
+    /**
+     * @param query    the specified query
+     * @param cityId   the identifier of the specified city
+     * @param snapshot the last snapshot of the specified city
+     * @return the results of the specified query in the specified city, computed from the specified snapshot
+     *         unless they have already been computed from the same version of the snapshot
+     */
+    def resultsOf(query: Query, cityId: EntityId, snapshot: Snapshot): List[Id] =
+      val cached: (Long, List[Id]) = this.results.get((query, cityId))
+      if cached != null && cached._1 == snapshot.version then cached._2 else
+        val computed: List[Id] = query.evaluate(snapshot)
+        this.results.put((query, cityId), (snapshot.version, computed))
+        computed
\ No newline at end of file
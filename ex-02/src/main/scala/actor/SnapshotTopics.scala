@@ -0,0 +1,35 @@
+package actor
+
+import actor.CityActor.snapshotTopic
+import akka.actor.typed.pubsub.Topic
+import akka.actor.typed.{ActorRef, ActorSystem, Extension, ExtensionId}
+import util.Id
+import util.Id.EntityId
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Model the extension providing the topics of the snapshots of the cities in a node of the cluster. The topic
+ * actor of a city is created when first requested and then shared by all the actors of the node publishing or
+ * subscribing to the snapshots of the city, so that the node joins each topic only once, however many views
+ * display the same city.
+ * @param system the actor system of the node
+ */
+class SnapshotTopics(system: ActorSystem[?]) extends Extension:
+  /** A map from the cities to the topic actors of their snapshots in the node. */
+  private val topics: ConcurrentHashMap[EntityId, ActorRef[Topic.Command[ViewActor.Message]]] = ConcurrentHashMap()
+
+  /**
+   * @param cityId the identifier of the specified city
+   * @return the topic actor of the snapshots of the specified city in the node, created if it does not exist yet
+   */
+  def topicOf(cityId: EntityId): ActorRef[Topic.Command[ViewActor.Message]] =
+    this.topics.computeIfAbsent(cityId, cityId =>
+      this.system.systemActorOf(Topic[ViewActor.Message](snapshotTopic(cityId)), s"snapshot-topic-${Id.show(cityId)}")
+    )
+
+/**
+ * Companion object of [[SnapshotTopics]].
+ */
+object SnapshotTopics extends ExtensionId[SnapshotTopics]:
+  override def createExtension(system: ActorSystem[?]): SnapshotTopics = new SnapshotTopics(system)
\ No newline at end of file
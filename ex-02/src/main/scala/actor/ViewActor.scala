@@ -2,14 +2,19 @@ package actor
 
 import actor.CityActor.Snapshot
 import akka.actor.typed.Behavior
+import akka.actor.typed.pubsub.Topic
 import akka.actor.typed.receptionist.Receptionist
 import akka.actor.typed.receptionist.ServiceKey
 import akka.actor.typed.scaladsl.{Behaviors, Routers}
-import cluster.message.CborSerializable
+import akka.cluster.ddata.LWWMap
+import akka.cluster.ddata.typed.scaladsl.{DistributedData, Replicator}
+import cluster.message.{BinarySerializable, CborSerializable}
 import util.Id
+import util.Id.EntityId
 import view.MainFXController
 import actor.CityActor.*
 import actor.ZoneActor.Solved
+import configuration.C.City.{REPLICATED_STATE, REPLICA_READ_CONSISTENCY, SNAPSHOT_PERIOD}
 import configuration.C.View.*
 
 object ViewActor:
@@ -18,63 +23,120 @@ object ViewActor:
    */
   trait Message extends CborSerializable
   /** Tells this view actor to handle the specified snapshot. */
-  case class ReceiveSnapshot(snapshot: Snapshot) extends Message
+  case class ReceiveSnapshot(snapshot: Snapshot) extends Message with BinarySerializable
+  /** Tells this view actor to apply the specified changes to the last snapshot he received. */
+  case class ReceiveSnapshotDelta(delta: SnapshotDelta) extends Message with BinarySerializable
   /** Tells this view actor to disable the alarm of the specified zone. */
-  case class DisableAlarm(zoneId: String) extends Message
-  /** Tells this view actor that he has successfully registered to the city he is displaying. */
-  case object Registered extends Message
-  /** Tells this view actor to register himself in the city he is displaying. */
-  private case object RegisterSelf extends Message
-  /** Tells this view actor to stop trying to register himself in the city he is displaying. */
+  case class DisableAlarm(zoneId: EntityId) extends Message with BinarySerializable
+  /** Tells this view actor to request a full snapshot to the city he is displaying, until he receives the first one. */
+  private case object RequestFirstSnapshot extends Message
+  /** Tells this view actor to stop trying to connect to the city he is displaying. */
   private case object FailedConnection extends Message
+  /** Tells this view actor to read the state of the city he is displaying from the replica of his node. */
+  private case object ReadReplica extends Message
+  /** Tells this view actor the result of his last read from the replica of his node. */
+  private case class ReplicaRead(response: Replicator.GetResponse[LWWMap[EntityId, Id]]) extends Message
 
   /**
+   * The view actor subscribes to the topic of his city through the topic actor of his node, provided by
+   * [[SnapshotTopics]], which is shared by all the view actors of the node displaying the same city and
+   * unsubscribes them automatically when they stop. If the state of the
+   * city is [[REPLICATED_STATE replicated]], the view actor reads it from the replica of his node instead.
    * @param cityId the identifier of the city displayed by this view actor
    */
-  def apply(viewController: MainFXController, cityId: String, viewId: String = Id.newId): Behavior[Message] =
+  def apply(viewController: MainFXController, cityId: EntityId, viewId: EntityId = Id.newId): Behavior[Message] =
     Behaviors.setup { context =>
-      context.system.receptionist ! Receptionist.Register(ServiceKey[Message](viewId), context.self)
-      viewController.setViewActor(context.spawnAnonymous(Routers.group(ServiceKey[ViewActor.Message](viewId))))
+      context.system.receptionist ! Receptionist.Register(ServiceKey[Message](Id.show(viewId)), context.self)
+      Entities.init(context.system)
+      viewController.setViewActor(context.spawnAnonymous(Routers.group(ServiceKey[ViewActor.Message](Id.show(viewId)))))
       Behaviors.withTimers { timers =>
-        timers.startTimerAtFixedRate(RegisterSelf, RegisterSelf, RECONNECTION_PERIOD)
         timers.startTimerAtFixedRate(FailedConnection, FailedConnection, CONNECTION_TIMEOUT)
-        val cityActorCollection = CityActorCollection()
-        cityActorCollection.cities = cityActorCollection.cities + (cityId -> context.spawnAnonymous(Routers.group(ServiceKey[CityActor.Message](cityId))))
-        Active(viewId, viewController, cityActorCollection)
+        if REPLICATED_STATE then
+          timers.startTimerWithFixedDelay(ReadReplica, ReadReplica, SNAPSHOT_PERIOD)
+          ReplicaReader(cityId, viewController)
+        else
+          SnapshotTopics(context.system).topicOf(cityId) ! Topic.Subscribe(context.self)
+          timers.startTimerAtFixedRate(RequestFirstSnapshot, RequestFirstSnapshot, RECONNECTION_PERIOD)
+          val cityActorCollection = CityActorCollection()
+          cityActorCollection.cities = cityActorCollection.cities + (cityId -> context.spawnAnonymous(Routers.group(ServiceKey[CityActor.Message](Id.show(cityId)))))
+          Active(viewId, viewController, cityActorCollection)
       }
     }
 
-  /** Behavior where the city takes a snapshot of itself periodically, notifying the view in the process. */
+  /**
+   * Behavior where the view displays the snapshots of the city, keeping them updated with the deltas
+   * received from the city. If a delta is missed, the view asks the city for a full snapshot.
+   */
   private[ViewActor] object Active:
-    def apply(viewId: String, viewController: MainFXController, cityActorCollection: CityActorCollection): Behavior[Message] =
+    def apply(viewId: EntityId, viewController: MainFXController, cityActorCollection: CityActorCollection): Behavior[Message] =
       Behaviors.setup { context =>
         Behaviors.withTimers { timers =>
+          var snapshot: Option[Snapshot] = Option.empty
           Behaviors.receiveMessage {
-            case RegisterSelf =>
-              cityActorCollection.cities.head._2 ! CityActor.RegisterView(viewId)
-              Behaviors.same
-            case Registered =>
-              timers.cancel(RegisterSelf)
-              timers.cancel(FailedConnection)
+            case RequestFirstSnapshot =>
+              cityActorCollection.cities.head._2 ! CityActor.RequestSnapshot(context.self)
               Behaviors.same
             case FailedConnection =>
               context.log.error("View actor failed to connect to the specified city")
               viewController.exit()
               Behaviors.stopped
-            case ReceiveSnapshot(snapshot) =>
-              viewController.display(snapshot)
+            case ReceiveSnapshot(fullSnapshot) =>
+              timers.cancel(RequestFirstSnapshot)
+              timers.cancel(FailedConnection)
+              if snapshot.forall(_.version <= fullSnapshot.version) then
+                snapshot = Option(fullSnapshot)
+                viewController.display(fullSnapshot)
+              Behaviors.same
+            case ReceiveSnapshotDelta(delta) =>
+              snapshot match
+                case Some(s) if s.version == delta.fromVersion =>
+                  snapshot = Option(s.updated(delta))
+                  viewController.display(snapshot.get)
+                case Some(s) if s.version > delta.fromVersion => // the delta is already included in the snapshot
+                case _ => cityActorCollection.cities.head._2 ! CityActor.RequestSnapshot(context.self)
               Behaviors.same
             case DisableAlarm(zoneId) =>
-              cityActorCollection.zones.get(zoneId) match
-                case Some(zone) =>
-                  zone ! Solved
-                  Behaviors.same
-                case None =>
-                  val zone: ZoneRef = context.spawnAnonymous(Routers.group(ServiceKey[ZoneActor.Message](zoneId)))
-                  cityActorCollection.zones = cityActorCollection.zones + (zoneId -> zone)
-                  zone ! Solved
-                  Active(viewId, viewController, cityActorCollection)
+              Entities.zone(context.system, zoneId) ! Solved
+              Behaviors.same
             case _ => Behaviors.unhandled
           }
         }
+      }
+
+  /**
+   * Behavior where the view periodically reads the state of the city from the replica of his node, with
+   * the [[REPLICA_READ_CONSISTENCY configured]] consistency, displaying it whenever it changed.
+   */
+  private[ViewActor] object ReplicaReader:
+    def apply(cityId: EntityId, viewController: MainFXController): Behavior[Message] =
+      Behaviors.setup { context =>
+        DistributedData.withReplicatorMessageAdapter[Message, LWWMap[EntityId, Id]] { replicator =>
+          Behaviors.withTimers { timers =>
+            var replica: LWWMap[EntityId, Id] = LWWMap.empty
+            var version: Long = 0
+            Behaviors.receiveMessage {
+              case ReadReplica =>
+                replicator.askGet(replyTo => Replicator.Get(replicaKey(cityId), REPLICA_READ_CONSISTENCY, replyTo), ReplicaRead.apply)
+                Behaviors.same
+              case ReplicaRead(response @ Replicator.GetSuccess(key)) =>
+                if response.get(key) != replica then
+                  replica = response.get(key)
+                  Snapshot.of(replica.entries.values, version).foreach(snapshot => {
+                    timers.cancel(FailedConnection)
+                    version = version + 1
+                    viewController.display(snapshot)
+                  })
+                Behaviors.same
+              case ReplicaRead(_) => Behaviors.same
+              case FailedConnection =>
+                context.log.error("View actor failed to read the state of the specified city")
+                viewController.exit()
+                Behaviors.stopped
+              case DisableAlarm(zoneId) =>
+                Entities.zone(context.system, zoneId) ! Solved
+                Behaviors.same
+              case _ => Behaviors.unhandled
+            }
+          }
+        }
       }
\ No newline at end of file
@@ -6,15 +6,24 @@ import actor.PluviometerActor.*
 import actor.ZoneActor.*
 import actor.ZoneActor.Zone.State.*
 import actor.ZoneActor.Zone.{SplitDirection, State}
-import akka.actor.typed.receptionist.Receptionist.*
-import akka.actor.typed.receptionist.ServiceKey
-import akka.actor.typed.scaladsl.{Behaviors, Routers}
-import akka.actor.typed.Behavior
-import cluster.message.CborSerializable
+import akka.actor.typed.scaladsl.Behaviors
+import akka.actor.typed.{ActorRef, Behavior}
+import akka.cluster.sharding.typed.scaladsl.EntityTypeKey
+import cluster.message.{BinarySerializable, CborSerializable}
+import configuration.C.Cluster.ENTITY_STASH_CAPACITY
+import configuration.C.Pluviometer.PUSH_READINGS
 import configuration.C.Log.pretty
-import configuration.C.Zone.{ALERT_PERIOD, DEFAULT_SPLIT_POINT_PADDING, MEASUREMENT_PERIOD}
-import util.{Id, Point2D, StateIn}
-import scala.util.Random
+import configuration.C.Zone.{ALARM_REARM_SCORE, ALARM_RULE, ALERT_PERIOD, DEFAULT_SPLIT_POINT_PADDING, MEASUREMENT_PERIOD}
+import persistence.SnapshotCodec.*
+import persistence.{EventLog, SnapshotCodec, StateChanged}
+import timeseries.{Aggregate, RainfallHistory, Resolution}
+import util.Ticks.*
+import util.Id.EntityId
+import util.{Id, Point2D, SignalAggregator, StateIn}
+
+import scala.collection.immutable.LongMap
+import scala.concurrent.Future
+import scala.util.{Random, Try}
 
 /**
  * Model the actor for a zone.
@@ -24,110 +33,271 @@ object ZoneActor:
    * Model the messages of a zone actor.
    */
   trait Message extends CborSerializable
+  /**
+   * Tells this zone actor to initialize his state with the specified data, monitoring the specified
+   * pluviometers and being assisted by the specified fire-stations. A zone that was being taken care
+   * of starts alarmed, since the fire-station that was taking care of it is not known.
+   * A zone recovered from the journal of his node is not initialized by his city.
+   */
+  case class Initialize(state: ZoneData, pluviometerIds: List[EntityId], fireStationIds: List[EntityId]) extends Message with BinarySerializable
   /** Tells this actor to take a snapshot of its state and forward it to the specified city. */
-  case class TakeSnapshot(city: CityRef) extends Message
-  /** Tells this zone actor that the specified pluviometer has emitted the specified signal. */
-  case class Signal(pluviometerId: String, on: Boolean) extends Message
+  case class TakeSnapshot(city: CityRef) extends Message with BinarySerializable
+  /** Tells this zone actor that the specified pluviometer has emitted the specified reading. */
+  case class Signal(pluviometerId: EntityId, reading: Reading) extends Message with BinarySerializable
+  /**
+   * Tells this zone actor that the specified pluviometer has pushed the specified frame of readings,
+   * sorted from the oldest to the most recent.
+   */
+  case class SignalFrame(pluviometer: PluviometerRef, pluviometerId: EntityId, seqNr: Long, readings: List[Reading]) extends Message with BinarySerializable
+  /**
+   * Asks this zone actor for the history of the rainfall inside his area within the specified range,
+   * at the specified resolution.
+   */
+  case class QueryRainfall(from: Long, to: Long, resolution: Resolution, replyTo: ActorRef[RainfallReport]) extends Message with BinarySerializable
   /** Asks this zone actor if the specified fire-station can take care of his alarm. */
   case class DepartureRequest(sender: FireStationRef) extends Message
   /** Tells this zone actor that his alarm has been taken care of. */
   case object Solved extends Message
   /** Tells this zone actor request the signals of his pluviometers. */
   private[ZoneActor] case object RequestSignals extends Message
-  /** Tells this zone actor to alert all of his fire-stations that he is under alarm. */
+  /**
+   * Tells this zone actor to alert the fire-stations that he is under alarm. The alerts are dispatched by his city,
+   * through his district if any, to the closest available fire-stations or, if his city is not known yet, sent to
+   * all of his fire-stations.
+   */
   private[ZoneActor] case object AlertFireStations extends Message
+  /**
+   * Tells this zone actor that he is moving to another node, or stopping, so that he deletes his records from
+   * the journal of his node. If he is started on the same node again, he is initialized by his city.
+   */
+  case object HandOff extends Message
+  /** Tells this zone actor that the last change of his state has been flushed to the journal of his node, or that it could not be. */
+  private[ZoneActor] case class Recorded(result: Try[Unit]) extends Message with EventLog.Recorded
+
+  /** The type of the sharded entities of zone actors. */
+  val TypeKey: EntityTypeKey[Message] = EntityTypeKey[Message]("Zone")
+
+  /**
+   * @param zoneId the identifier of this zone actor
+   */
+  def apply(zoneId: EntityId): Behavior[Message] = Uninitialized(zoneId)
 
   /**
-   * @param zone           the initial state of this zone
-   * @param pluviometerIds the identifiers of the pluviometers in this zone
-   * @param fireStationIds the identifiers of the fire-stations in this zone
+   * Behavior where this zone actor recovers his state from the journal of his node or, if it is not
+   * there, waits to be initialized by his city, postponing the other requests.
+   * The city is asked for the initialization whenever it requests a snapshot.
    */
-  def apply(zone: Zone, pluviometerIds: List[String], fireStationIds: List[String]): Behavior[Message] =
-    Behaviors.setup { context =>
-      context.system.receptionist ! Register(ServiceKey[Message](zone.id), context.self)
-      val cityActorCollection: CityActorCollection = CityActorCollection()
-      cityActorCollection.pluviometers = Map.from(pluviometerIds.map(id => id -> context.spawnAnonymous(Routers.group(ServiceKey[PluviometerActor.Message](id)))))
-      cityActorCollection.fireStations = Map.from(fireStationIds.map(id => id -> context.spawnAnonymous(Routers.group(ServiceKey[FireStationActor.Message](id)))))
-      Behaviors.withTimers { timers =>
-        timers.startTimerWithFixedDelay(RequestSignals, RequestSignals, MEASUREMENT_PERIOD)
-        CalmBehavior(zone, Map.from(pluviometerIds.map((_, false))), cityActorCollection)
+  private[ZoneActor] object Uninitialized:
+    def apply(zoneId: EntityId): Behavior[Message] =
+      Behaviors.setup { context =>
+        val log: Option[EventLog[ZoneRecord]] = EventLog.of(context.system, Id.show(zoneId))
+        val recoveryStart: Long = System.nanoTime()
+        log.flatMap(_.recover()) match
+          case Some(record) =>
+            context.log.info(f"Zone $zoneId recovered in ${(System.nanoTime() - recoveryStart) / 1e6}%.3f ms")
+            restore(record, log)
+          case None =>
+            Behaviors.withStash(ENTITY_STASH_CAPACITY) { stash =>
+              Behaviors.receiveMessage {
+                case Initialize(state, pluviometerIds, fireStationIds) =>
+                  val record: ZoneRecord = ZoneRecord(state, pluviometerIds, fireStationIds, monitoredBy = None)
+                  stash.unstashAll(afterRecorded(log.map(_.snapshot(record)))(restore(record, log)))
+                case TakeSnapshot(city) =>
+                  city ! RequestInitialization(zoneId)
+                  Behaviors.same
+                case HandOff => Behaviors.stopped
+                case message =>
+                  if !stash.isFull then stash.stash(message)
+                  Behaviors.same
+              }
+            }
+      }
+
+    /** @return the behavior of a zone actor with the specified state. */
+    private def restore(record: ZoneRecord, log: Option[EventLog[ZoneRecord]]): Behavior[Message] =
+      Behaviors.setup { context =>
+        val zone: Zone = record.state.asZone
+        val signals: SignalAggregator = SignalAggregator(ALARM_RULE, record.pluviometerIds, ALARM_REARM_SCORE)
+        val history: RainfallHistory = RainfallHistory()
+        val cityActorCollection: CityActorCollection = CityActorCollection()
+        cityActorCollection.pluviometers = LongMap.from(record.pluviometerIds.map(id => id -> Entities.pluviometer(context.system, id)))
+        cityActorCollection.fireStations = LongMap.from(record.fireStationIds.map(id => id -> Entities.fireStation(context.system, id)))
+        Behaviors.withTimers { timers =>
+          if !PUSH_READINGS then timers.startPhasedTimer(RequestSignals, RequestSignals, MEASUREMENT_PERIOD, zone.id)
+          (zone.state, record.monitoredBy) match
+            case (Calm, _) => CalmBehavior(zone, signals, history, cityActorCollection, log)
+            case (Monitored, Some(fireStationId)) => MonitoredBehavior(zone, signals, history, cityActorCollection, fireStationId, log)
+            case _ =>
+              timers.startPhasedTimer(AlertFireStations, AlertFireStations, ALERT_PERIOD, zone.id)
+              AlarmedBehavior(zone, signals, history, cityActorCollection, log)
+        }
       }
-    }
 
-  /** Behavior where this zone actor collects the signals from his pluviometers and evaluates their majority. */
+  /** Behavior where this zone actor collects the readings from his pluviometers and evaluates his alarm rule. */
   private[ZoneActor] object CalmBehavior:
-    def apply(zone: Zone, signals: Map[String, Boolean], cityActorCollection: CityActorCollection): Behavior[Message] =
+    def apply(zone: Zone, signals: SignalAggregator, history: RainfallHistory, cityActorCollection: CityActorCollection, log: Option[EventLog[ZoneRecord]]): Behavior[Message] =
       Behaviors.setup { context =>
-        zone.become(Calm)
+        def onReadings(sensor: EntityId, readings: List[Reading]): Behavior[Message] =
+          if aggregate(signals, history, sensor, readings) then
+            Behaviors.withTimers { timers =>
+              timers.startPhasedTimer(AlertFireStations, AlertFireStations, ALERT_PERIOD, zone.id)
+              become(zone, Alarmed, cityActorCollection, log)(AlarmedBehavior(zone, signals, history, cityActorCollection, log))
+            }
+          else Behaviors.same
         Behaviors.receiveMessage {
-          case Signal(sensor, signal) =>
-            val updatedMap = signals + (sensor -> signal)
-            updatedMap.values.partition(s => s) match
-              case (on, off) if on.size >= off.size =>
-                Behaviors.withTimers { timers =>
-                  timers.startTimerWithFixedDelay(AlertFireStations, AlertFireStations, ALERT_PERIOD)
-                  AlarmedBehavior(zone, updatedMap, cityActorCollection)
-                }
-              case _ => CalmBehavior(zone, updatedMap, cityActorCollection)
+          case Signal(sensor, reading) => onReadings(sensor, List(reading))
+          case frame: SignalFrame => onReadings(frame.pluviometerId, acknowledge(frame))
           case RequestSignals =>
             cityActorCollection.pluviometers.values.foreach(_ ! RequestSignal(context.self))
             Behaviors.same
           case TakeSnapshot(city) =>
+            cityActorCollection.coordinator = Some(city)
             city ! NotifyZoneState(zone.data)
             Behaviors.same
+          case QueryRainfall(from, to, resolution, replyTo) =>
+            replyTo ! RainfallReport(zone.id, resolution, history.query(from, to, resolution))
+            Behaviors.same
+          case HandOff => handOff(log)
           case _ => Behaviors.unhandled
         }
       }
 
   /**
-   * Behavior where this zone actor periodically notifies all of his fire-stations that he is under alarm,
+   * Behavior where this zone actor periodically notifies the fire-stations that he is under alarm,
    * until a fire-station takes control of his situation.
    */
   private[ZoneActor] object AlarmedBehavior:
-    def apply(zone: Zone, signals: Map[String, Boolean], cityActorCollection: CityActorCollection): Behavior[Message] =
+    def apply(zone: Zone, signals: SignalAggregator, history: RainfallHistory, cityActorCollection: CityActorCollection, log: Option[EventLog[ZoneRecord]]): Behavior[Message] =
       Behaviors.setup { context =>
-        zone.become(Alarmed)
         Behaviors.receiveMessage {
-          case Signal(sensor, signal) => AlarmedBehavior(zone, signals + (sensor -> signal), cityActorCollection)
+          case Signal(sensor, reading) =>
+            aggregate(signals, history, sensor, List(reading))
+            Behaviors.same
+          case frame: SignalFrame =>
+            aggregate(signals, history, frame.pluviometerId, acknowledge(frame))
+            Behaviors.same
           case RequestSignals =>
             cityActorCollection.pluviometers.values.foreach(_ ! RequestSignal(context.self))
             Behaviors.same
           case TakeSnapshot(city) =>
+            cityActorCollection.coordinator = Some(city)
             city ! NotifyZoneState(zone.data)
             Behaviors.same
+          case QueryRainfall(from, to, resolution, replyTo) =>
+            replyTo ! RainfallReport(zone.id, resolution, history.query(from, to, resolution))
+            Behaviors.same
           case AlertFireStations =>
-            cityActorCollection.fireStations.values.foreach(_ ! Alert(context.self))
+            cityActorCollection.coordinator match
+              case Some(city) => city ! RequestDispatch(zone.id, context.self)
+              case None => cityActorCollection.fireStations.values.foreach(_ ! Alert(context.self))
             Behaviors.same
           case DepartureRequest(fireStation) =>
-            fireStation ! Depart(context.self)
             Behaviors.withTimers{ timers =>
               timers.cancel(AlertFireStations)
-              MonitoredBehavior(zone, signals, cityActorCollection, monitoredBy = fireStation)
+              val monitoredBy: EntityId = Entities.idOf(fireStation)
+              become(zone, Monitored, cityActorCollection, log, Some(monitoredBy)) {
+                fireStation ! Depart(context.self)
+                MonitoredBehavior(zone, signals, history, cityActorCollection, monitoredBy, log)
+              }
             }
+          case HandOff => handOff(log)
           case _ => Behaviors.unhandled
         }
       }
 
-  /** Behavior where this zone actor is waiting for a specific fire-station to solve his situation. */
+  /**
+   * Behavior where this zone actor is waiting for a specific fire-station to solve his situation.
+   * The fire-station is referenced by his identifier, so that it can be recovered from the journal.
+   */
   private[ZoneActor] object MonitoredBehavior:
-    def apply(zone: Zone, signals: Map[String, Boolean], cityActorCollection: CityActorCollection, monitoredBy: FireStationRef): Behavior[Message] =
+    def apply(zone: Zone, signals: SignalAggregator, history: RainfallHistory, cityActorCollection: CityActorCollection, monitoredBy: EntityId, log: Option[EventLog[ZoneRecord]]): Behavior[Message] =
       Behaviors.setup { context =>
-        zone.become(Monitored)
         Behaviors.receiveMessage {
-          case Signal(sensor, signal) => MonitoredBehavior(zone, signals + (sensor -> signal), cityActorCollection, monitoredBy)
+          case Signal(sensor, reading) =>
+            aggregate(signals, history, sensor, List(reading))
+            Behaviors.same
+          case frame: SignalFrame =>
+            aggregate(signals, history, frame.pluviometerId, acknowledge(frame))
+            Behaviors.same
           case RequestSignals =>
             cityActorCollection.pluviometers.values.foreach(_ ! RequestSignal(context.self))
             Behaviors.same
           case TakeSnapshot(city) =>
+            cityActorCollection.coordinator = Some(city)
             city ! NotifyZoneState(zone.data)
             Behaviors.same
+          case QueryRainfall(from, to, resolution, replyTo) =>
+            replyTo ! RainfallReport(zone.id, resolution, history.query(from, to, resolution))
+            Behaviors.same
           case Solved =>
-            monitoredBy ! Return
-            CalmBehavior(zone, signals, cityActorCollection)
+            become(zone, Calm, cityActorCollection, log) {
+              Entities.fireStation(context.system, monitoredBy) ! Return
+              CalmBehavior(zone, signals, history, cityActorCollection, log)
+            }
+          case HandOff => handOff(log)
           case _ => Behaviors.unhandled
         }
       }
 
+  /**
+   * Changes the state of the specified zone to the specified state, recording the change in the specified log.
+   * @param zone                the specified zone
+   * @param state               the specified state
+   * @param cityActorCollection the collection of the actors known by the specified zone
+   * @param log                 the specified log
+   * @param monitoredBy         the identifier of the fire-station taking care of the specified zone, if any
+   * @param next                the behavior of the specified zone in the specified state
+   * @return the specified behavior, once the change has been recorded
+   */
+  private def become(
+    zone: Zone,
+    state: State,
+    cityActorCollection: CityActorCollection,
+    log: Option[EventLog[ZoneRecord]],
+    monitoredBy: Option[EntityId] = None
+  )(next: => Behavior[Message]): Behavior[Message] =
+    if zone.is(state) then next else
+      zone.become(state)
+      afterRecorded(log.map(_.persist(
+        StateChanged(state.ordinal, monitoredBy),
+        ZoneRecord(zone.data, cityActorCollection.pluviometers.keys.toList, cityActorCollection.fireStations.keys.toList, monitoredBy)
+      )))(next)
+
+  /**
+   * @param log the log of this zone actor
+   * @return the behavior of this zone actor deleting his records from the journal of his node, then stopping
+   */
+  private def handOff(log: Option[EventLog[ZoneRecord]]): Behavior[Message] =
+    afterRecorded(log.map(_.delete()))(Behaviors.stopped)
+
+  /** As [[EventLog.afterRecorded]], for the specified record of a zone, if any. */
+  private def afterRecorded(record: Option[Future[Unit]])(next: => Behavior[Message]): Behavior[Message] =
+    EventLog.afterRecorded(record.getOrElse(Future.unit), Recorded.apply)(next)
+
+  /**
+   * Acknowledges the specified frame to the pluviometer that pushed it, granting him a new credit.
+   * @param frame the specified frame
+   * @return the readings in the specified frame
+   */
+  private def acknowledge(frame: SignalFrame): List[Reading] =
+    frame.pluviometer ! FrameAck(frame.seqNr)
+    frame.readings
+
+  /**
+   * Aggregates the specified readings of the specified pluviometer into the specified signals, recording
+   * them in the specified history.
+   * @param signals  the specified signals
+   * @param history  the specified history
+   * @param sensor   the identifier of the specified pluviometer
+   * @param readings the specified readings, from the oldest to the most recent
+   * @return true if the specified readings triggered an alarm, false otherwise
+   */
+  private def aggregate(signals: SignalAggregator, history: RainfallHistory, sensor: EntityId, readings: List[Reading]): Boolean =
+    readings.foldLeft(false)((triggered, reading) => {
+      history.record(sensor, reading.timestamp, reading.measurement)
+      signals.update(sensor, reading.on, reading.measurement, reading.timestamp) || triggered
+    })
+
   /**
    * Model the state of a zone actor.
    * @param position the position of the zone
@@ -135,7 +305,7 @@ object ZoneActor:
    * @param height   the height of the zone
    * @param id       the identifier of the zone
    */
-  case class Zone(position: Point2D, width: Double, height: Double, id: String = Id.newId) extends StateIn[State](Calm) with Id:
+  case class Zone(position: Point2D, width: Double, height: Double, id: EntityId = Id.newId) extends StateIn[State](Calm) with Id:
     /**
      * Divides this zone area in the specified number of sub-zones, randomly created.
      * @param numberOfSubZones the specified number of sub-zones
@@ -208,11 +378,56 @@ object ZoneActor:
   /**
    * Model the data representing a zone.
    */
-  case class ZoneData(position: Point2D, width: Double, height: Double, id: String = Id.newId, state: Int) extends CborSerializable with Id:
+  case class ZoneData(position: Point2D, width: Double, height: Double, id: EntityId = Id.newId, state: Int) extends CborSerializable with Id:
     /** @return the zone represented by this data. */
     def asZone: Zone =
       val zone = Zone(position, width, height, id)
       zone.become(State.fromOrdinal(state))
       zone
+    /** @return the center of the zone represented by this data. */
+    def center: Point2D = Point2D(position.x + width / 2, position.y - height / 2)
     override def toString: String =
-      s"ZoneData(id:$id, position:$position, width:${width.pretty}, height:${height.pretty}, state:${State.fromOrdinal(state)})"
\ No newline at end of file
+      s"ZoneData(id:$id, position:$position, width:${width.pretty}, height:${height.pretty}, state:${State.fromOrdinal(state)})"
+
+  /**
+   * Model the history of the rainfall inside a zone, as requested by a [[QueryRainfall]].
+   * @param zoneId     the identifier of the zone
+   * @param resolution the resolution of the history
+   * @param history    the aggregates of the readings of the pluviometers inside the zone, in order of time
+   */
+  case class RainfallReport(zoneId: EntityId, resolution: Resolution, history: List[Aggregate]) extends BinarySerializable
+
+  /**
+   * Model the state of a zone actor recorded in the journal of his node.
+   * @param state          the data representing the zone
+   * @param pluviometerIds the identifiers of the pluviometers inside the zone
+   * @param fireStationIds the identifiers of the fire-stations inside the zone
+   * @param monitoredBy    the identifier of the fire-station taking care of the zone, if it is monitored
+   */
+  case class ZoneRecord(state: ZoneData, pluviometerIds: List[EntityId], fireStationIds: List[EntityId], monitoredBy: Option[EntityId])
+  /**
+   * Companion object of [[ZoneRecord]].
+   */
+  object ZoneRecord:
+    given SnapshotCodec[ZoneRecord] with
+      override def encode(record: ZoneRecord): Array[Byte] = SnapshotCodec.write { output =>
+        output.writeDouble(record.state.position.x)
+        output.writeDouble(record.state.position.y)
+        output.writeDouble(record.state.width)
+        output.writeDouble(record.state.height)
+        output.writeLong(record.state.id)
+        output.writeInt(record.state.state)
+        output.writeList(record.pluviometerIds)
+        output.writeList(record.fireStationIds)
+        output.writeOption(record.monitoredBy)
+      }
+      override def decode(bytes: Array[Byte]): ZoneRecord = SnapshotCodec.read(bytes) { input =>
+        ZoneRecord(
+          ZoneData(Point2D(input.readDouble(), input.readDouble()), input.readDouble(), input.readDouble(), input.readLong(), input.readInt()),
+          input.readList(),
+          input.readList(),
+          input.readOption()
+        )
+      }
+      override def applied(record: ZoneRecord, event: StateChanged): ZoneRecord =
+        record.copy(state = record.state.copy(state = event.state), monitoredBy = event.counterpart)
\ No newline at end of file
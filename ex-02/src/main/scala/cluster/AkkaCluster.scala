@@ -6,6 +6,7 @@ import akka.actor.{Address, AddressFromURIString}
 import akka.cluster.ClusterEvent.*
 import akka.cluster.typed.{Cluster, Subscribe}
 import com.typesafe.config.{Config, ConfigFactory}
+import configuration.C.Cluster.{ACTORS_PER_NODE, ENTITY_HOST_ROLE}
 import scala.jdk.CollectionConverters.*
 
 /**
@@ -14,6 +15,8 @@ import scala.jdk.CollectionConverters.*
  */
 class AkkaCluster(private val config: Config):
     private val seedNodes: List[Address] = config.getStringList("akka.cluster.seed-nodes").asScala.toList.map(AddressFromURIString.parse)
+    /** The nodes of this cluster created by this process to host actors and entities. */
+    private var hosts: List[Host] = List()
 
     /**
      * Starts the seed nodes of this cluster, creating the cluster.
@@ -31,9 +34,10 @@ class AkkaCluster(private val config: Config):
      * @param behavior the specified actor
      * @param hostName the name of the specified host
      * @param port     the port of the specified host
+     * @param roles    the roles of the new node of this cluster
      * @tparam A the type of messages that can be handled by the specified actor
      */
-    def join[A](behavior: Behavior[A], hostName: String = "127.0.0.1", port: Int = 0): Unit =
+    def join[A](behavior: Behavior[A], hostName: String = "127.0.0.1", port: Int = 0, roles: Seq[String] = Seq()): ActorSystem[A] =
         ActorSystem[A](
             behavior,
             this.seedNodes.head.system,
@@ -42,11 +46,39 @@ class AkkaCluster(private val config: Config):
                    | akka.remote.artery.canonical: {
                    |    hostname: "$hostName",
                    |    port: $port
-                   | }
+                   | },
+                   | akka.cluster.roles: [${roles.map(role => s"\"$role\"").mkString(",")}]
                    |""".stripMargin.replace("\n", " ")
             ).withFallback(this.config)
         )
 
+    /**
+     * Deploys the specified actor, such as a city or a probe, in this cluster. Instead of joining the cluster as
+     * a new node, the specified actor is spawned inside a node hosting many actors, which is created only when the
+     * nodes created by this process are already hosting [[ACTORS_PER_NODE]] actors. The hosting nodes have the role
+     * [[ENTITY_HOST_ROLE]], so they also host their share of the sharded entities, which are not counted here.
+     * Note that the cluster should be started before performing this operation.
+     * @param behavior the specified actor
+     * @param name     the name of the specified actor, unique within its node. If empty, a name is generated
+     * @tparam A the type of messages that can be handled by the specified actor
+     */
+    def host[A](behavior: Behavior[A], name: String = ""): Unit = this.synchronized {
+        val host: Host = this.hosts.find(_.actors < ACTORS_PER_NODE).getOrElse {
+            val newHost: Host = Host(this.join(SpawnProtocol(), roles = Seq(ENTITY_HOST_ROLE)))
+            this.hosts = newHost :: this.hosts
+            newHost
+        }
+        host.actors += 1
+        host.system ! SpawnProtocol.Spawn(behavior, name, Props.empty, host.system.ignoreRef)
+    }
+
+    /**
+     * Model a node of this cluster hosting many actors.
+     * @param system the actor system of this node
+     * @param actors the number of actors deployed in this node by [[host]]
+     */
+    private case class Host(system: ActorSystem[SpawnProtocol.Command], var actors: Int = 0)
+
     /**
      * Model an actor that logs cluster events.
      */
@@ -0,0 +1,8 @@
+package cluster.message
+
+/**
+ * Marker trait to tell Akka to serialize messages into a compact binary format using the [[CitySerializer]]
+ * for sending over the network, instead of using Jackson. See cluster.conf where it is bound to the serializer.
+ * Only the messages exchanged most frequently between the entities of a city should extend this trait.
+ */
+trait BinarySerializable extends CborSerializable
@@ -0,0 +1,29 @@
+package cluster.message
+
+import com.fasterxml.jackson.annotation.JsonCreator
+import com.fasterxml.jackson.databind.cfg.MapperConfig
+import com.fasterxml.jackson.databind.introspect.{Annotated, AnnotatedConstructor, NopAnnotationIntrospector}
+import com.fasterxml.jackson.databind.module.SimpleModule
+
+/**
+ * Model a Jackson module that makes the constructors of the messages serialized with Jackson property-based
+ * creators. Without it, the constructor of a case class with a single parameter is considered a delegating
+ * creator, because the Scala module of Jackson does not recognize the case classes compiled by Scala 3,
+ * so that the messages with a single field cannot be deserialized. See cluster.conf where it is registered.
+ */
+class CaseClassModule extends SimpleModule:
+    override def setupModule(context: com.fasterxml.jackson.databind.Module.SetupContext): Unit =
+        super.setupModule(context)
+        context.appendAnnotationIntrospector(CaseClassModule.CreatorIntrospector)
+
+/**
+ * Companion object of [[CaseClassModule]].
+ */
+object CaseClassModule:
+    private object CreatorIntrospector extends NopAnnotationIntrospector:
+        override def findCreatorAnnotation(config: MapperConfig[?], annotated: Annotated): JsonCreator.Mode = annotated match
+            case constructor: AnnotatedConstructor
+                if classOf[CborSerializable].isAssignableFrom(constructor.getDeclaringClass) &&
+                   classOf[Product].isAssignableFrom(constructor.getDeclaringClass) &&
+                   constructor.getParameterCount == 1 => JsonCreator.Mode.PROPERTIES
+            case _ => null
\ No newline at end of file
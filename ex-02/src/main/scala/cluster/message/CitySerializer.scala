@@ -0,0 +1,237 @@
+package cluster.message
+
+import actor.CityActor.*
+import actor.FireStationActor.FireStationData
+import actor.PluviometerActor.{FrameAck, PluviometerData, Reading}
+import actor.ViewActor.{DisableAlarm, ReceiveSnapshot, ReceiveSnapshotDelta}
+import actor.ZoneActor.{QueryRainfall, RainfallReport, Signal, SignalFrame, ZoneData}
+import actor.{FireStationActor, PluviometerActor, ZoneActor}
+import akka.actor.ExtendedActorSystem
+import akka.actor.typed.scaladsl.adapter.*
+import akka.actor.typed.{ActorRef, ActorRefResolver}
+import akka.serialization.{ByteBufferSerializer, SerializerWithStringManifest}
+import timeseries.{Aggregate, Resolution}
+import util.Id.EntityId
+import util.Point2D
+
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.{BufferOverflowException, ByteBuffer, ByteOrder}
+import scala.collection.immutable.LongMap
+
+/**
+ * Model a serializer for the messages exchanged most frequently between the entities of a city,
+ * which writes them in a compact binary format with fixed-width fields, including the identifiers
+ * of the entities. When used by Artery, the messages are written directly into its pooled buffers.
+ * @param system the actor system using this serializer
+ */
+class CitySerializer(system: ExtendedActorSystem) extends SerializerWithStringManifest with ByteBufferSerializer:
+    import CitySerializer.*
+
+    private lazy val resolver: ActorRefResolver = ActorRefResolver(system.toTyped)
+
+    override def identifier: Int = 3603
+
+    override def manifest(o: AnyRef): String = o match
+        case _: NotifyPluviometerState => NotifyPluviometerStateManifest
+        case _: NotifyFireStationState => NotifyFireStationStateManifest
+        case _: NotifyZoneState => NotifyZoneStateManifest
+        case _: RequestSnapshot => RequestSnapshotManifest
+        case _: RequestInitialization => RequestInitializationManifest
+        case _: RequestDispatch => RequestDispatchManifest
+        case _: ReceiveSnapshot => ReceiveSnapshotManifest
+        case _: ReceiveSnapshotDelta => ReceiveSnapshotDeltaManifest
+        case _: DisableAlarm => DisableAlarmManifest
+        case _: ZoneActor.Initialize => ZoneInitializeManifest
+        case _: ZoneActor.TakeSnapshot => ZoneTakeSnapshotManifest
+        case _: Signal => SignalManifest
+        case _: SignalFrame => SignalFrameManifest
+        case _: QueryRainfall => QueryRainfallManifest
+        case _: RainfallReport => RainfallReportManifest
+        case _: PluviometerActor.TakeSnapshot => PluviometerTakeSnapshotManifest
+        case _: FrameAck => FrameAckManifest
+        case _: FireStationActor.TakeSnapshot => FireStationTakeSnapshotManifest
+        case _ => throw IllegalArgumentException(s"Can't serialize object of type ${o.getClass} in [${getClass.getName}]")
+
+    override def toBinary(o: AnyRef): Array[Byte] =
+        var buffer: ByteBuffer = pooledBuffer.get()
+        var written: Boolean = false
+        while !written do
+            try
+                buffer.clear()
+                this.toBinary(o, buffer)
+                written = true
+            catch case _: BufferOverflowException =>
+                buffer = ByteBuffer.allocate(buffer.capacity * 2).order(ByteOrder.LITTLE_ENDIAN)
+                pooledBuffer.set(buffer)
+        buffer.flip()
+        val bytes: Array[Byte] = new Array(buffer.remaining)
+        buffer.get(bytes)
+        bytes
+
+    override def toBinary(o: AnyRef, buffer: ByteBuffer): Unit = o match
+        case NotifyPluviometerState(state) => putPluviometerData(buffer, state)
+        case NotifyFireStationState(state) => putFireStationData(buffer, state)
+        case NotifyZoneState(state) => putZoneData(buffer, state)
+        case RequestSnapshot(view) => putRef(buffer, view)
+        case RequestInitialization(entityId) => putId(buffer, entityId)
+        case RequestDispatch(zoneId, zone) => putId(buffer, zoneId); putRef(buffer, zone)
+        case ReceiveSnapshot(snapshot) => putSnapshot(buffer, snapshot)
+        case ReceiveSnapshotDelta(delta) => putSnapshotDelta(buffer, delta)
+        case DisableAlarm(zoneId) => putId(buffer, zoneId)
+        case ZoneActor.Initialize(state, pluviometerIds, fireStationIds) =>
+            putZoneData(buffer, state); putIds(buffer, pluviometerIds); putIds(buffer, fireStationIds)
+        case ZoneActor.TakeSnapshot(city) => putRef(buffer, city)
+        case Signal(pluviometerId, reading) => putId(buffer, pluviometerId); putReading(buffer, reading)
+        case SignalFrame(pluviometer, pluviometerId, seqNr, readings) =>
+            putRef(buffer, pluviometer); putId(buffer, pluviometerId); buffer.putLong(seqNr)
+            buffer.putInt(readings.size); readings.foreach(putReading(buffer, _))
+        case QueryRainfall(from, to, resolution, replyTo) =>
+            buffer.putLong(from).putLong(to).put(resolution.ordinal.toByte); putRef(buffer, replyTo)
+        case RainfallReport(zoneId, resolution, history) =>
+            putId(buffer, zoneId); buffer.put(resolution.ordinal.toByte)
+            buffer.putInt(history.size); history.foreach(putAggregate(buffer, _))
+        case PluviometerActor.TakeSnapshot(city) => putRef(buffer, city)
+        case FrameAck(seqNr) => buffer.putLong(seqNr)
+        case FireStationActor.TakeSnapshot(city) => putRef(buffer, city)
+        case _ => throw IllegalArgumentException(s"Can't serialize object of type ${o.getClass} in [${getClass.getName}]")
+
+    override def fromBinary(bytes: Array[Byte], manifest: String): AnyRef =
+        this.fromBinary(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), manifest)
+
+    override def fromBinary(buffer: ByteBuffer, manifest: String): AnyRef = manifest match
+        case NotifyPluviometerStateManifest => NotifyPluviometerState(getPluviometerData(buffer))
+        case NotifyFireStationStateManifest => NotifyFireStationState(getFireStationData(buffer))
+        case NotifyZoneStateManifest => NotifyZoneState(getZoneData(buffer))
+        case RequestSnapshotManifest => RequestSnapshot(getRef(buffer))
+        case RequestInitializationManifest => RequestInitialization(getId(buffer))
+        case RequestDispatchManifest => RequestDispatch(getId(buffer), getRef(buffer))
+        case ReceiveSnapshotManifest => ReceiveSnapshot(getSnapshot(buffer))
+        case ReceiveSnapshotDeltaManifest => ReceiveSnapshotDelta(getSnapshotDelta(buffer))
+        case DisableAlarmManifest => DisableAlarm(getId(buffer))
+        case ZoneInitializeManifest => ZoneActor.Initialize(getZoneData(buffer), getIds(buffer), getIds(buffer))
+        case ZoneTakeSnapshotManifest => ZoneActor.TakeSnapshot(getRef(buffer))
+        case SignalManifest => Signal(getId(buffer), getReading(buffer))
+        case SignalFrameManifest =>
+            val pluviometer: ActorRef[PluviometerActor.Message] = getRef(buffer)
+            val pluviometerId: EntityId = getId(buffer)
+            val seqNr: Long = buffer.getLong
+            SignalFrame(pluviometer, pluviometerId, seqNr, List.fill(buffer.getInt)(getReading(buffer)))
+        case QueryRainfallManifest => QueryRainfall(buffer.getLong, buffer.getLong, Resolution.fromOrdinal(buffer.get), getRef(buffer))
+        case RainfallReportManifest =>
+            val zoneId: EntityId = getId(buffer)
+            val resolution: Resolution = Resolution.fromOrdinal(buffer.get)
+            RainfallReport(zoneId, resolution, List.fill(buffer.getInt)(getAggregate(buffer)))
+        case PluviometerTakeSnapshotManifest => PluviometerActor.TakeSnapshot(getRef(buffer))
+        case FrameAckManifest => FrameAck(buffer.getLong)
+        case FireStationTakeSnapshotManifest => FireStationActor.TakeSnapshot(getRef(buffer))
+        case _ => throw IllegalArgumentException(s"Unknown manifest [$manifest] in [${getClass.getName}]")
+
+    private def putRef(buffer: ByteBuffer, ref: ActorRef[?]): Unit = putString(buffer, this.resolver.toSerializationFormat(ref))
+    private def getRef[A](buffer: ByteBuffer): ActorRef[A] = this.resolver.resolveActorRef(getString(buffer))
+
+/**
+ * Companion object of [[CitySerializer]].
+ */
+object CitySerializer:
+    private val NotifyPluviometerStateManifest = "NP"
+    private val NotifyFireStationStateManifest = "NF"
+    private val NotifyZoneStateManifest = "NZ"
+    private val RequestSnapshotManifest = "RS"
+    private val RequestInitializationManifest = "RI"
+    private val RequestDispatchManifest = "RD"
+    private val ReceiveSnapshotManifest = "S"
+    private val ReceiveSnapshotDeltaManifest = "SD"
+    private val DisableAlarmManifest = "DA"
+    private val ZoneInitializeManifest = "ZI"
+    private val ZoneTakeSnapshotManifest = "ZT"
+    private val SignalManifest = "ZS"
+    private val SignalFrameManifest = "ZF"
+    private val QueryRainfallManifest = "ZQ"
+    private val RainfallReportManifest = "ZR"
+    private val PluviometerTakeSnapshotManifest = "PT"
+    private val FrameAckManifest = "PA"
+    private val FireStationTakeSnapshotManifest = "FT"
+
+    /** The initial size of the buffers used by each thread to serialize messages, which grow when needed. */
+    private val InitialBufferSize: Int = 64 * 1024
+    /**
+     * The buffers are little-endian as the ones of Artery, which are also used to deserialize the messages
+     * wrapped in other messages, such as the envelopes of the sharded entities.
+     */
+    private val pooledBuffer: ThreadLocal[ByteBuffer] =
+        ThreadLocal.withInitial(() => ByteBuffer.allocate(InitialBufferSize).order(ByteOrder.LITTLE_ENDIAN))
+
+    private def putId(buffer: ByteBuffer, id: EntityId): Unit = buffer.putLong(id)
+    private def getId(buffer: ByteBuffer): EntityId = buffer.getLong
+    private def putIds(buffer: ByteBuffer, ids: List[EntityId]): Unit =
+        buffer.putInt(ids.size)
+        ids.foreach(putId(buffer, _))
+    private def getIds(buffer: ByteBuffer): List[EntityId] = List.fill(buffer.getInt)(getId(buffer))
+
+    private def putString(buffer: ByteBuffer, string: String): Unit =
+        val bytes: Array[Byte] = string.getBytes(UTF_8)
+        buffer.putInt(bytes.length).put(bytes)
+    private def getString(buffer: ByteBuffer): String =
+        val bytes: Array[Byte] = new Array(buffer.getInt)
+        buffer.get(bytes)
+        String(bytes, UTF_8)
+
+    private def putPoint(buffer: ByteBuffer, point: Point2D): Unit = buffer.putDouble(point.x).putDouble(point.y)
+    private def getPoint(buffer: ByteBuffer): Point2D = Point2D(buffer.getDouble, buffer.getDouble)
+
+    private def putReading(buffer: ByteBuffer, reading: Reading): Unit =
+        buffer.putDouble(reading.measurement).put(if reading.on then 1.toByte else 0.toByte).putLong(reading.timestamp)
+    private def getReading(buffer: ByteBuffer): Reading = Reading(buffer.getDouble, buffer.get != 0, buffer.getLong)
+
+    private def putAggregate(buffer: ByteBuffer, aggregate: Aggregate): Unit =
+        buffer.putLong(aggregate.start).putLong(aggregate.count).putDouble(aggregate.sum).putDouble(aggregate.min).putDouble(aggregate.max)
+    private def getAggregate(buffer: ByteBuffer): Aggregate =
+        Aggregate(buffer.getLong, buffer.getLong, buffer.getDouble, buffer.getDouble, buffer.getDouble)
+
+    private def putPluviometerData(buffer: ByteBuffer, data: PluviometerData): Unit =
+        putPoint(buffer, data.position)
+        buffer.putDouble(data.lastMeasurement).putDouble(data.threshold).put(if data.signal then 1.toByte else 0.toByte)
+        putId(buffer, data.id)
+    private def getPluviometerData(buffer: ByteBuffer): PluviometerData =
+        PluviometerData(getPoint(buffer), buffer.getDouble, buffer.getDouble, buffer.get != 0, getId(buffer))
+
+    private def putFireStationData(buffer: ByteBuffer, data: FireStationData): Unit =
+        putPoint(buffer, data.position); putId(buffer, data.id); buffer.putInt(data.state)
+    private def getFireStationData(buffer: ByteBuffer): FireStationData =
+        FireStationData(getPoint(buffer), getId(buffer), buffer.getInt)
+
+    private def putZoneData(buffer: ByteBuffer, data: ZoneData): Unit =
+        putPoint(buffer, data.position); buffer.putDouble(data.width).putDouble(data.height); putId(buffer, data.id); buffer.putInt(data.state)
+    private def getZoneData(buffer: ByteBuffer): ZoneData =
+        ZoneData(getPoint(buffer), buffer.getDouble, buffer.getDouble, getId(buffer), buffer.getInt)
+
+    private def putCityData(buffer: ByteBuffer, data: CityData): Unit =
+        putPoint(buffer, data.position); buffer.putDouble(data.width).putDouble(data.height); putId(buffer, data.id)
+    private def getCityData(buffer: ByteBuffer): CityData =
+        CityData(getPoint(buffer), buffer.getDouble, buffer.getDouble, getId(buffer))
+
+    private def putMap[A](buffer: ByteBuffer, map: LongMap[A], putValue: (ByteBuffer, A) => Unit): Unit =
+        buffer.putInt(map.size)
+        map.foreachEntry((id, value) => { putId(buffer, id); putValue(buffer, value) })
+    private def getMap[A](buffer: ByteBuffer, getValue: ByteBuffer => A): LongMap[A] =
+        val builder = LongMap.newBuilder[A]
+        (0 until buffer.getInt).foreach(_ => builder += getId(buffer) -> getValue(buffer))
+        builder.result()
+
+    private def putSnapshot(buffer: ByteBuffer, snapshot: Snapshot): Unit =
+        putCityData(buffer, snapshot.cityData)
+        putMap(buffer, snapshot.pluviometerDatas, putPluviometerData)
+        putMap(buffer, snapshot.fireStationDatas, putFireStationData)
+        putMap(buffer, snapshot.zoneDatas, putZoneData)
+        buffer.putLong(snapshot.version)
+    private def getSnapshot(buffer: ByteBuffer): Snapshot =
+        Snapshot(getCityData(buffer), getMap(buffer, getPluviometerData), getMap(buffer, getFireStationData), getMap(buffer, getZoneData), buffer.getLong)
+
+    private def putSnapshotDelta(buffer: ByteBuffer, delta: SnapshotDelta): Unit =
+        buffer.putLong(delta.fromVersion)
+        putMap(buffer, delta.pluviometerDatas, putPluviometerData)
+        putMap(buffer, delta.fireStationDatas, putFireStationData)
+        putMap(buffer, delta.zoneDatas, putZoneData)
+        buffer.putLong(delta.timestamp)
+    private def getSnapshotDelta(buffer: ByteBuffer): SnapshotDelta =
+        SnapshotDelta(buffer.getLong, getMap(buffer, getPluviometerData), getMap(buffer, getFireStationData), getMap(buffer, getZoneData), buffer.getLong)
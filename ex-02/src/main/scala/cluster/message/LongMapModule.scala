@@ -0,0 +1,53 @@
+package cluster.message
+
+import com.fasterxml.jackson.core.{JsonParser, JsonToken}
+import com.fasterxml.jackson.databind.deser.Deserializers
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer
+import com.fasterxml.jackson.databind.module.SimpleModule
+import com.fasterxml.jackson.databind.{BeanDescription, DeserializationConfig, DeserializationContext, JavaType, JsonDeserializer, KeyDeserializer}
+import com.fasterxml.jackson.databind.`type`.MapLikeType
+
+import scala.collection.immutable.LongMap
+
+/**
+ * Model a Jackson module that deserializes the maps keyed by the identifiers of the entities, such as the
+ * maps of the snapshots of a city. The Scala module of Jackson writes them as objects, but it cannot read
+ * them back, since it takes the type of their values for the type of their keys. See cluster.conf where
+ * it is registered.
+ */
+class LongMapModule extends SimpleModule:
+    override def setupModule(context: com.fasterxml.jackson.databind.Module.SetupContext): Unit =
+        super.setupModule(context)
+        context.addDeserializers(LongMapModule.LongMapDeserializers)
+
+/**
+ * Companion object of [[LongMapModule]].
+ */
+object LongMapModule:
+    private object LongMapDeserializers extends Deserializers.Base:
+        override def findMapLikeDeserializer(
+            mapType: MapLikeType,
+            config: DeserializationConfig,
+            description: BeanDescription,
+            keyDeserializer: KeyDeserializer,
+            valueTypeDeserializer: TypeDeserializer,
+            valueDeserializer: JsonDeserializer[?]
+        ): JsonDeserializer[?] =
+            if classOf[LongMap[?]].isAssignableFrom(mapType.getRawClass) then LongMapDeserializer(mapType.containedType(0)) else null
+
+    /**
+     * Model a deserializer of the maps keyed by the identifiers of the entities.
+     * @param valueType the type of the values of the maps
+     */
+    private class LongMapDeserializer(valueType: JavaType) extends StdDeserializer[LongMap[AnyRef]](classOf[LongMap[?]]):
+        override def deserialize(parser: JsonParser, context: DeserializationContext): LongMap[AnyRef] =
+            val values: JsonDeserializer[AnyRef] = context.findRootValueDeserializer(this.valueType)
+            val builder = LongMap.newBuilder[AnyRef]
+            var token: JsonToken = if parser.currentToken == JsonToken.START_OBJECT then parser.nextToken() else parser.currentToken
+            while token == JsonToken.FIELD_NAME do
+                val id: Long = java.lang.Long.parseLong(parser.getCurrentName)
+                parser.nextToken()
+                builder += id -> values.deserialize(parser, context)
+                token = parser.nextToken()
+            builder.result()
@@ -1,6 +1,8 @@
 package configuration
 
+import akka.cluster.ddata.typed.scaladsl.Replicator.{ReadConsistency, ReadLocal, WriteConsistency, WriteLocal}
 import javafx.scene.paint.Color
+import util.AlarmRule
 
 import java.util.Locale
 import java.util.concurrent.Executors
@@ -11,6 +13,20 @@ import scala.concurrent.duration.*
  * Model the configuration for this application.
  */
 object C:
+    /**
+     * Model the configuration for the cluster of this application.
+     */
+    object Cluster:
+        /**
+         * The max number of actors, i.e. cities and probes, hosted by the same node of the cluster. It does not
+         * bound the sharded entities of the cities, which are balanced among all the nodes with [[ENTITY_HOST_ROLE]].
+         */
+        val ACTORS_PER_NODE: Int = 1000
+        /** The role of the nodes of the cluster hosting the sharded entities of the cities. */
+        val ENTITY_HOST_ROLE: String = "entity-host"
+        /** The max number of messages postponed by an entity while waiting to be initialized. */
+        val ENTITY_STASH_CAPACITY: Int = 100
+
     /**
      * Model the configuration for the city in this application.
      */
@@ -25,6 +41,26 @@ object C:
         val NUMBER_OF_ZONES: Int = 6
         /** How much time passes between two snapshots taken by the city actor. */
         val SNAPSHOT_PERIOD: FiniteDuration = 1.second
+        /**
+         * The number of segments the entities of the city are split into when taking a snapshot. The segments are
+         * requested their state one after the other, evenly spread across the snapshot period.
+         */
+        val SNAPSHOT_SEGMENTS: Int = 10
+        /**
+         * The number of districts that the zones of the city are grouped into. Each district requests the state of
+         * its entities and sends their changes to the city actor, so that the city actor only exchanges messages with
+         * its districts. If lower than 2, the city actor requests the state of its entities by itself.
+         */
+        val NUMBER_OF_DISTRICTS: Int = 0
+        /**
+         * True if the state of the entities of the city is replicated on every node of the cluster, so that the
+         * views read it from the replica of their node instead of receiving it from the city actor.
+         */
+        val REPLICATED_STATE: Boolean = false
+        /** The consistency of the writes of the city actor to the replicated state of the city. */
+        val REPLICA_WRITE_CONSISTENCY: WriteConsistency = WriteLocal
+        /** The consistency of the reads of the views from the replicated state of the city. */
+        val REPLICA_READ_CONSISTENCY: ReadConsistency = ReadLocal
 
     /**
      * Model the configuration for the zones in this application.
@@ -36,17 +72,46 @@ object C:
         val MEASUREMENT_PERIOD: FiniteDuration = 1.second
         /** How much time passes between two alerts to the fire-stations of a zone when that zone is under alarm. */
         val ALERT_PERIOD: FiniteDuration = 2.second
+        /** The rule used by the zones to decide if they are under alarm, given the readings of their pluviometers. */
+        val ALARM_RULE: AlarmRule = AlarmRule.Majority
+        /** The score of the alarm rule that a zone must fall to, after an alarm, before it can be alarmed again. */
+        val ALARM_REARM_SCORE: Double = 0.5
         /** The percentage padding of the zone where a random point is chosen, relative to the zone where a random point is requested. */
         val RANDOM_POSITION_PADDING: Double = 0.2D
         /** The default percentage padding of the zone where the split point is chosen, relative to the zone to be split. */
         val DEFAULT_SPLIT_POINT_PADDING: Double = 0.2D
 
+    /**
+     * Model the configuration for the history of the rainfall kept by the zones in this application.
+     */
+    object History:
+        /** The max number of points in each compressed block of a time series. */
+        val BLOCK_SIZE: Int = 256
+        /** How long the readings of each pluviometer are kept. */
+        val RAW_RETENTION: FiniteDuration = 6.hours
+        /** How long the readings aggregated by minute are kept. */
+        val MINUTE_RETENTION: FiniteDuration = 7.days
+        /** How long the readings aggregated by hour are kept. */
+        val HOUR_RETENTION: FiniteDuration = 365.days
+        /** How much time passes between two evictions of the expired readings. */
+        val EVICTION_PERIOD: FiniteDuration = 1.minute
+
     /**
      * Model the configuration for the pluviometers in this application.
      */
     object Pluviometer:
         /** The probability of a pluviometer measuring a value greater than its threshold. */
         val PLUVIOMETER_SIGNAL_PROBABILITY: Double = 0.1
+        /** True if the pluviometers push their readings to their zones, false if the zones request them periodically. */
+        val PUSH_READINGS: Boolean = true
+        /** The max amount of time between two readings pushed by the same pluviometer, when its signal does not change. */
+        val PUSH_PERIOD: FiniteDuration = 5.second
+        /** The number of frames that a pluviometer can push to its zone without waiting for their acknowledgement. */
+        val PUSH_CREDIT: Int = 4
+        /** How much a pluviometer without credit waits for an acknowledgement, before assuming that its frames have been lost. */
+        val ACK_TIMEOUT: FiniteDuration = 10.second
+        /** The max number of readings in the same frame. When a pluviometer has no credit, its oldest readings are dropped first. */
+        val MAX_FRAME_SIZE: Int = 32
 
     /**
      * Model the configuration for the fire-stations in this application.
@@ -54,6 +119,32 @@ object C:
     object FireStation:
         /** How much it takes for a fire station to take care of an alarm. */
         val INTERVENTION_DURATION: FiniteDuration = 10.second
+        /**
+         * How many fire-stations are alerted at each alert of a zone under alarm. The closest available
+         * fire-stations are alerted first, then the next closest ones at each following alert.
+         */
+        val DISPATCH_FANOUT: Int = 1
+
+    /**
+     * Model the configuration for the persistence of the entities in this application.
+     */
+    object Persistence:
+        /**
+         * True if the zones and the fire-stations record their state in the journal of their node, false otherwise,
+         * in which case they are initialized by their city whenever they are started.
+         */
+        val EVENT_SOURCED: Boolean = false
+        /**
+         * The directory containing the journals of the nodes started by this application, relative to the working
+         * directory of each process, where each node locks a subdirectory of its own.
+         */
+        val JOURNAL_DIRECTORY: String = "target/journal"
+        /** The size of each segment of a journal, in bytes. */
+        val SEGMENT_SIZE: Int = 16 * 1024 * 1024
+        /** How much time passes between two flushes of a journal to the disk. */
+        val GROUP_COMMIT_PERIOD: FiniteDuration = 10.millis
+        /** The number of events recorded by an entity between two snapshots of its state. */
+        val SNAPSHOT_PERIOD: Int = 100
 
     /**
      * Model the configuration for the view of this application.
@@ -87,6 +178,21 @@ object C:
         val RECONNECTION_PERIOD: FiniteDuration = 2.second
         /** How large are the circles used to display the positions of the entities in the city. */
         val ENTITY_RADIUS_PX: Double = 5D
+        /** How large are the cells of the grid used to find the entities at a point or in a region of the view. */
+        val GRID_CELL_PX: Double = 32D
+        /** How many regions of the view can be redrawn for a snapshot before the whole view is redrawn instead. */
+        val MAX_DIRTY_REGIONS: Int = 256
+
+    /**
+     * Model the configuration for the queries across the cities of this application.
+     */
+    object Query:
+        /** How much the query service waits for the snapshots of the cities it is not synchronized with, before answering a query. */
+        val QUERY_TIMEOUT: FiniteDuration = 3.second
+        /** The max number of results cached by the query service, one for each query and city. */
+        val QUERY_CACHE_CAPACITY: Int = 1024
+        /** How much time passes between two refreshes of the dashboard. */
+        val DASHBOARD_REFRESH_PERIOD: FiniteDuration = 1.second
 
     /**
      * Model the configuration for the logs of this application.
@@ -101,4 +207,6 @@ object C:
      */
     object Concurrency:
         /** The execution context where Futures are executed in this application. */
-        given ExecutionContext = ExecutionContext.fromExecutor(Executors.newSingleThreadExecutor())
\ No newline at end of file
+        given ExecutionContext = ExecutionContext.fromExecutor(Executors.newSingleThreadExecutor())
+        /** The max fraction of their period that is randomly added to or removed from the periods of the jittered timers. */
+        val TICK_JITTER: Double = 0.1
\ No newline at end of file
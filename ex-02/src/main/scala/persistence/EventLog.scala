@@ -0,0 +1,177 @@
+package persistence
+
+import akka.actor.typed.scaladsl.Behaviors
+import akka.actor.typed.{ActorSystem, Behavior}
+import configuration.C.Cluster.ENTITY_STASH_CAPACITY
+import configuration.C.Persistence.{EVENT_SOURCED, SNAPSHOT_PERIOD}
+import util.Id.EntityId
+
+import persistence.SnapshotCodec.*
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, DataInputStream, DataOutputStream}
+import scala.collection.mutable
+import scala.concurrent.Future
+import scala.util.{Failure, Success, Try}
+
+/**
+ * Model the event of an entity changing its state.
+ * @param state       the ordinal of the new state of the entity
+ * @param counterpart the identifier of the entity which the entity is bound to in its new state, if any
+ *                    (e.g. the fire-station monitoring a zone, or the zone a fire-station is taking care of)
+ */
+case class StateChanged(state: Int, counterpart: Option[EntityId]):
+  /** @return this event encoded into bytes. */
+  def encode: Array[Byte] = SnapshotCodec.write { output =>
+    output.writeInt(this.state)
+    output.writeOption(this.counterpart)
+  }
+
+/**
+ * Companion object of [[StateChanged]].
+ */
+object StateChanged:
+  /** @return the event encoded into the specified bytes. */
+  def decode(bytes: Array[Byte]): StateChanged = SnapshotCodec.read(bytes)(input => StateChanged(input.readInt(), input.readOption()))
+
+/**
+ * Model a codec for the snapshots of the state of an entity.
+ * @tparam S the type of the state of the entity
+ */
+trait SnapshotCodec[S]:
+  /** @return the specified state encoded into bytes. */
+  def encode(state: S): Array[Byte]
+  /** @return the state encoded into the specified bytes. */
+  def decode(bytes: Array[Byte]): S
+  /** @return the specified state after the specified event. */
+  def applied(state: S, event: StateChanged): S
+
+/**
+ * Companion object of [[SnapshotCodec]].
+ */
+object SnapshotCodec:
+  /** @return the bytes written by the specified function. */
+  def write(f: DataOutputStream => Unit): Array[Byte] =
+    val bytes: ByteArrayOutputStream = ByteArrayOutputStream()
+    val output: DataOutputStream = DataOutputStream(bytes)
+    f(output)
+    output.flush()
+    bytes.toByteArray
+  /** @return the result of the specified function, reading the specified bytes. */
+  def read[A](bytes: Array[Byte])(f: DataInputStream => A): A = f(DataInputStream(ByteArrayInputStream(bytes)))
+
+  extension (output: DataOutputStream)
+    def writeOption(value: Option[EntityId]): Unit =
+      output.writeBoolean(value.isDefined)
+      value.foreach(output.writeLong)
+    def writeList(values: List[EntityId]): Unit =
+      output.writeInt(values.size)
+      values.foreach(output.writeLong)
+  extension (input: DataInputStream)
+    def readOption(): Option[EntityId] = if input.readBoolean() then Some(input.readLong()) else None
+    def readList(): List[EntityId] = List.fill(input.readInt())(input.readLong())
+
+/**
+ * Model the log of the events changing the state of an entity, recorded in the journal of its node.
+ * After the specified number of events, a snapshot of the state of the entity is recorded, so that
+ * only the events following the last snapshot need to be replayed when the entity is recovered.
+ *
+ * @param journal        the journal of the node of the entity
+ * @param entityId       the identifier of the entity
+ * @param snapshotPeriod the specified number of events
+ * @tparam S the type of the state of the entity
+ */
+class EventLog[S](journal: Journal, entityId: String, snapshotPeriod: Int)(using codec: SnapshotCodec[S]):
+  private var eventsSinceSnapshot: Int = 0
+
+  /**
+   * Records the specified state of the entity, replacing its previous events.
+   * @param state the specified state
+   * @return a future completed when the specified state has been flushed to the disk
+   */
+  def snapshot(state: S): Future[Unit] =
+    this.eventsSinceSnapshot = 0
+    this.journal.appendSnapshot(this.entityId, this.codec.encode(state))
+
+  /**
+   * Records the specified event of the entity.
+   * @param event the specified event
+   * @param state the state of the entity after the specified event, recorded if a snapshot is due
+   * @return a future completed when the specified event has been flushed to the disk
+   */
+  def persist(event: StateChanged, state: => S): Future[Unit] =
+    this.eventsSinceSnapshot += 1
+    if this.eventsSinceSnapshot >= this.snapshotPeriod then this.snapshot(state)
+    else this.journal.appendEvent(this.entityId, event.encode)
+
+  /**
+   * Deletes the records of the entity, which is moving away from its node, so that a stale state of the
+   * entity is not recovered if it comes back to its node later.
+   * @return a future completed when the deletion has been flushed to the disk
+   */
+  def delete(): Future[Unit] =
+    this.eventsSinceSnapshot = 0
+    this.journal.delete(this.entityId)
+
+  /** @return an optional of the state of the entity, replayed from its last snapshot, empty if it has none. */
+  def recover(): Option[S] =
+    this.journal.read(this.entityId).flatMap(log => log.snapshot.map { snapshot =>
+      this.eventsSinceSnapshot = log.events.size
+      log.events.map(StateChanged.decode).foldLeft(this.codec.decode(snapshot))(this.codec.applied)
+    })
+
+/**
+ * Companion object of [[EventLog]].
+ */
+object EventLog:
+  /**
+   * Model the message telling an entity that one of its records has been flushed to the disk, or that it
+   * could not be.
+   */
+  trait Recorded:
+    /** @return the outcome of the flush of the record. */
+    def result: Try[Unit]
+
+  /**
+   * Postpones the messages of an entity until the specified record of the entity is durable, so that the
+   * entity does not reply with a state that could be lost in a crash. If the record cannot be flushed to
+   * the disk, the entity fails. The messages beyond the capacity of the stash are not dropped, but kept aside
+   * and sent back to the entity after the stashed ones, so that no request, acknowledgement or hand-off is
+   * lost while the journal is slow.
+   * @param record   a future completed when the specified record has been flushed to the disk
+   * @param recorded a function wrapping the outcome of the flush into a message of the entity
+   * @param next     the behavior of the entity once the specified record is durable
+   * @tparam M the type of the messages of the entity
+   * @return a behavior stashing the messages of the entity until the specified record is durable, then behaving
+   *         as the specified behavior
+   */
+  def afterRecorded[M](record: Future[Unit], recorded: Try[Unit] => M & Recorded)(next: => Behavior[M]): Behavior[M] =
+    record.value match
+      case Some(Success(_)) => next
+      case Some(Failure(error)) => throw error
+      case None =>
+        Behaviors.setup { context =>
+          context.pipeToSelf(record)(recorded)
+          val overflow: mutable.Queue[M] = mutable.Queue()
+          Behaviors.withStash(ENTITY_STASH_CAPACITY) { stash =>
+            Behaviors.receiveMessage {
+              case message: Recorded => message.result match
+                case Success(_) =>
+                  if overflow.nonEmpty then
+                    context.log.warn(s"${overflow.size} messages exceeded the stash while waiting for the journal")
+                    overflow.foreach(context.self ! _)
+                  stash.unstashAll(next)
+                case Failure(error) => throw error
+              case message =>
+                if stash.isFull then overflow.enqueue(message) else stash.stash(message)
+                Behaviors.same
+            }
+          }
+        }
+
+  /**
+   * @param system   the actor system of the node of the specified entity
+   * @param entityId the identifier of the specified entity
+   * @return an optional of the log of the events of the specified entity, empty if the entities are not event-sourced
+   */
+  def of[S: SnapshotCodec](system: ActorSystem[?], entityId: String): Option[EventLog[S]] =
+    if EVENT_SOURCED then Some(EventLog(JournalExtension(system).journal, entityId, SNAPSHOT_PERIOD)) else None
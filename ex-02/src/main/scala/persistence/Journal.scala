@@ -0,0 +1,362 @@
+package persistence
+
+import persistence.Journal.*
+
+import java.nio.channels.{FileChannel, FileLock, OverlappingFileLockException}
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.StandardOpenOption.{CREATE, READ, WRITE}
+import java.nio.file.{Files, Path}
+import java.nio.{ByteBuffer, MappedByteBuffer}
+import java.util.concurrent.{Executors, ScheduledExecutorService, TimeUnit}
+import java.util.zip.CRC32
+import scala.collection.mutable
+import scala.concurrent.duration.{DurationLong, FiniteDuration}
+import scala.concurrent.{Future, Promise}
+import scala.jdk.CollectionConverters.*
+import scala.util.Using
+import scala.util.control.NonFatal
+
+/**
+ * Model an append-only journal on the local disk, where the entities of a node record their snapshots and events.
+ *
+ * The journal is split into segments of the specified size, which are memory-mapped files. The records are
+ * queued in memory when appended, then written to the last segment and flushed to the disk periodically by a
+ * dedicated thread, so that the cost of flushing is shared by all the records appended in the same period
+ * (group commit) and the entities appending them never wait for the disk. When the last segment is full, a new
+ * segment is started. When at least half of the records in the segments are outdated, the journal is
+ * compacted instead: the last snapshot of each entity hosted by the node and the events following it are rewritten
+ * into as many new segments as they need, and the older segments are deleted, so that the journal never grows
+ * far beyond the state of the entities of its node.
+ *
+ * An entity is hosted by the node if it has read or appended its records since the journal was opened, and
+ * until it deletes them when it moves to another node. The records of the other entities, such as the ones
+ * of the cities of a previous run of the node, are dropped when the journal is compacted.
+ *
+ * The last snapshot and events of each entity are also kept in memory, so that an entity can be recovered
+ * without reading the disk, which is only read when the journal is opened. Each segment starts with the
+ * version of the format of its records, so that the segments written in an older format are deleted when
+ * the journal is opened instead of being decoded wrongly.
+ *
+ * @param directory         the directory containing the segments of this journal
+ * @param segmentSize       the size of each segment of this journal, in bytes
+ * @param groupCommitPeriod how much time passes between two flushes of this journal
+ */
+class Journal(val directory: Path, segmentSize: Int, groupCommitPeriod: FiniteDuration):
+  /** A map from the entities to their records in this journal. */
+  private val logs: mutable.HashMap[String, EntityLog] = mutable.HashMap()
+  /** The entities hosted by the node of this journal. */
+  private val hosted: mutable.HashSet[String] = mutable.HashSet()
+  /** The records appended to this journal, not written to its last segment yet. */
+  private var queued: Vector[Record] = Vector()
+  /** The appends waiting for the next flush of this journal. */
+  private var pending: List[Promise[Unit]] = List()
+  /** The lock held while writing the segments of this journal, which are only written by one flush at a time. */
+  private val writer: Object = Object()
+  /** The segments of this journal, from the oldest to the most recent. */
+  private var segments: List[Path] = List()
+  private var segment: MappedByteBuffer = _
+  private val flusher: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor(runnable => {
+    val thread: Thread = Thread(runnable, s"journal-flusher-${directory.getFileName}")
+    thread.setDaemon(true)
+    thread
+  })
+
+  /**
+   * The number of segments written in an older format found when this journal was opened, which have been
+   * deleted, leaving the entities of the node to be initialized by their cities.
+   */
+  val outdatedSegments: Int =
+    Files.createDirectories(this.directory)
+    val outdated: List[Path] = segmentsIn(this.directory).filterNot(hasCurrentFormat)
+    outdated.foreach(Files.delete)
+    outdated.size
+
+  /** How much time it took to read the records of this journal from the disk when it was opened. */
+  val recoveryTime: FiniteDuration =
+    val start: Long = System.nanoTime()
+    this.segments = segmentsIn(this.directory)
+    this.segments.dropRight(1).foreach(path => this.replay(this.map(path, writable = false)))
+    this.segments.lastOption match
+      case Some(path) =>
+        this.segment = this.map(path, writable = true)
+        this.replay(this.segment)
+      case None => this.startSegment(0)
+    (System.nanoTime() - start).nanos
+  this.flusher.scheduleWithFixedDelay(() => this.flush(), groupCommitPeriod.toMillis, groupCommitPeriod.toMillis, TimeUnit.MILLISECONDS)
+
+  /**
+   * Appends the specified snapshot of the specified entity to this journal, replacing its previous records.
+   * @param entityId the identifier of the specified entity
+   * @param payload  the specified snapshot
+   * @return a future completed when the specified snapshot has been flushed to the disk
+   */
+  def appendSnapshot(entityId: String, payload: Array[Byte]): Future[Unit] = this.append(entityId, SnapshotRecord, payload)
+
+  /**
+   * Appends the specified event of the specified entity to this journal, after its previous records.
+   * @param entityId the identifier of the specified entity
+   * @param payload  the specified event
+   * @return a future completed when the specified event has been flushed to the disk
+   */
+  def appendEvent(entityId: String, payload: Array[Byte]): Future[Unit] = this.append(entityId, EventRecord, payload)
+
+  /**
+   * Deletes the records of the specified entity from this journal, since it is not hosted by its node anymore.
+   * @param entityId the identifier of the specified entity
+   * @return a future completed when the deletion has been flushed to the disk
+   */
+  def delete(entityId: String): Future[Unit] = this.append(entityId, DeleteRecord, Array())
+
+  /**
+   * @param entityId the identifier of the specified entity, which is hosted by the node of this journal
+   * @return an optional of the records of the specified entity in this journal, empty if there are none
+   */
+  def read(entityId: String): Option[EntityLog] = synchronized {
+    this.hosted += entityId
+    this.logs.get(entityId)
+  }
+
+  /**
+   * Writes the records appended to this journal to its last segment and flushes them to the disk, completing
+   * the appends waiting for it. If the records do not fit in the last segment, new segments are started, unless
+   * at least half of the records in the segments are outdated, in which case the journal is compacted, so that
+   * the records of the entities are rewritten at most once for each time their size is appended.
+   */
+  def flush(): Unit = this.writer.synchronized {
+    val (records, flushed, carried) = synchronized {
+      val records = this.queued
+      val flushed = this.pending
+      this.queued = Vector()
+      this.pending = List()
+      val appended: Long = records.map(record => recordSize(record.entityId, record.payload).toLong).sum
+      val carried: Option[List[(String, EntityLog)]] =
+        if appended <= this.segment.remaining then None
+        else
+          val live: Long = this.logs.iterator.filter((entityId, _) => this.hosted.contains(entityId)).map(logSize).sum
+          if 2 * live > (this.segments.size - 1).toLong * segmentSize + this.segment.position() + appended then None
+          else
+            this.logs.filterInPlace((entityId, _) => this.hosted.contains(entityId))
+            Some(this.logs.toList)
+      (records, flushed, carried)
+    }
+    if flushed.nonEmpty then
+      try
+        carried match
+          case Some(logs) => this.compact(logs)
+          case None => records.foreach(record => this.write(record.entityId, record.kind, record.payload))
+        this.segment.force()
+        flushed.foreach(_.success(()))
+      catch case NonFatal(error) => flushed.foreach(_.failure(error))
+  }
+
+  /** Flushes and closes this journal. */
+  def close(): Unit =
+    this.flusher.shutdown()
+    this.flush()
+
+  /** Queues the specified record to be written by the next flush, keeping track of it in memory. */
+  private def append(entityId: String, kind: Byte, payload: Array[Byte]): Future[Unit] = synchronized {
+    if recordSize(entityId, payload) > segmentSize - SegmentHeaderSize then
+      throw IllegalArgumentException(s"The record of the entity $entityId does not fit in a segment of $segmentSize bytes")
+    val promise: Promise[Unit] = Promise()
+    this.index(entityId, kind, payload)
+    if kind == DeleteRecord then this.hosted -= entityId else this.hosted += entityId
+    this.queued = this.queued :+ Record(entityId, kind, payload)
+    this.pending = promise :: this.pending
+    promise.future
+  }
+
+  /** Writes the specified record into the last segment of this journal, starting a new segment if it does not fit. */
+  private def write(entityId: String, kind: Byte, payload: Array[Byte]): Unit =
+    if recordSize(entityId, payload) > this.segment.remaining then
+      this.segment.force()
+      this.startSegment(segmentNumber(this.segments.last) + 1)
+    val id: Array[Byte] = entityId.getBytes(UTF_8)
+    val body: ByteBuffer = ByteBuffer.allocate(java.lang.Short.BYTES + id.length + java.lang.Byte.BYTES + payload.length)
+    body.putShort(id.length.toShort).put(id).put(kind).put(payload).flip()
+    this.segment.putInt(body.remaining).putInt(checksum(body)).put(body)
+
+  private def index(entityId: String, kind: Byte, payload: Array[Byte]): Unit = kind match
+    case SnapshotRecord => this.logs.update(entityId, EntityLog(Some(payload), Vector()))
+    case DeleteRecord => this.logs.remove(entityId)
+    case _ => this.logs.update(entityId, this.logs.getOrElse(entityId, EntityLog(None, Vector())).appended(payload))
+
+  /**
+   * Rewrites the specified records of the entities into new segments, as many as they need, then deletes the
+   * older segments. The records of an entity without a snapshot are dropped, since the entity cannot be
+   * recovered from them.
+   */
+  private def compact(logs: List[(String, EntityLog)]): Unit =
+    val previousSegments: List[Path] = this.segments
+    this.startSegment(segmentNumber(previousSegments.last) + 1)
+    logs.foreach((entityId, log) => log.snapshot.foreach { snapshot =>
+      this.write(entityId, SnapshotRecord, snapshot)
+      log.events.foreach(this.write(entityId, EventRecord, _))
+    })
+    this.segment.force()
+    this.segments = this.segments.drop(previousSegments.size)
+    previousSegments.foreach(Files.deleteIfExists)
+
+  private def startSegment(number: Long): Unit =
+    val path: Path = this.directory.resolve(f"$SegmentPrefix$number%020d$SegmentSuffix")
+    this.segment = this.map(path, writable = true)
+    this.segment.putInt(0, SegmentMagic).put(Integer.BYTES, FormatVersion)
+    this.segments = this.segments :+ path
+
+  /**
+   * @return the specified segment mapped into memory, which is extended to the size of a segment if writable,
+   *         positioned after its header
+   */
+  private def map(path: Path, writable: Boolean): MappedByteBuffer =
+    val segment: MappedByteBuffer =
+      Using.resource(if writable then FileChannel.open(path, CREATE, READ, WRITE) else FileChannel.open(path, READ)) { channel =>
+        if writable then channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize)
+        else channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size)
+      }
+    segment.position(SegmentHeaderSize)
+    segment
+
+  /**
+   * Reads the records of the specified segment, stopping at the end of the records or at the first corrupted
+   * record, left by a crash while it was written. The specified segment is left positioned after the last
+   * valid record, and the corrupted part is cleared.
+   */
+  private def replay(segment: MappedByteBuffer): Unit =
+    var end: Int = segment.position
+    var valid: Boolean = true
+    while valid && segment.remaining >= HeaderSize do
+      val length: Int = segment.getInt
+      val crc: Int = segment.getInt
+      if length <= 0 || length > segment.remaining then valid = false
+      else
+        val body: ByteBuffer = segment.slice.limit(length)
+        if checksum(body) != crc then valid = false
+        else
+          val id: Array[Byte] = new Array(body.getShort)
+          body.get(id)
+          val kind: Byte = body.get
+          val payload: Array[Byte] = new Array(body.remaining)
+          body.get(payload)
+          this.index(String(id, UTF_8), kind, payload)
+          segment.position(segment.position + length)
+          end = segment.position
+    segment.position(end)
+    if !segment.isReadOnly then clear(segment)
+
+/**
+ * Companion object of [[Journal]].
+ */
+object Journal:
+  /**
+   * Model the records of an entity in a journal.
+   * @param snapshot the last snapshot of the entity, if any
+   * @param events   the events of the entity following its last snapshot
+   */
+  case class EntityLog(snapshot: Option[Array[Byte]], events: Vector[Array[Byte]]):
+    /** @return a copy of these records with the specified event appended. */
+    def appended(event: Array[Byte]): EntityLog = this.copy(events = this.events :+ event)
+
+  /**
+   * Model a record appended to a journal.
+   * @param entityId the identifier of the entity of the record
+   * @param kind     the kind of the record: a snapshot, an event or a deletion
+   * @param payload  the payload of the record
+   */
+  private case class Record(entityId: String, kind: Byte, payload: Array[Byte])
+
+  private val SnapshotRecord: Byte = 0
+  private val EventRecord: Byte = 1
+  private val DeleteRecord: Byte = 2
+  /** The size of the length and the checksum preceding the body of each record. */
+  private val HeaderSize: Int = 2 * Integer.BYTES
+  /** The number identifying the segments of a journal, at the start of their header. */
+  private val SegmentMagic: Int = 0x4A524E4C
+  /**
+   * The version of the format of the segments, following the magic number in their header. It must be
+   * increased whenever the encoding of the records, of the snapshots or of the events changes, so that
+   * the segments written in an older format are not decoded with the new one.
+   */
+  private val FormatVersion: Byte = 1
+  /** The size of the magic number and the version preceding the records of each segment. */
+  private val SegmentHeaderSize: Int = Integer.BYTES + java.lang.Byte.BYTES
+  private val SegmentPrefix: String = "segment-"
+  private val SegmentSuffix: String = ".log"
+  private val LockFile: String = "journal.lock"
+  private val ClearBlockSize: Int = 64 * 1024
+
+  /** The locks held by the journals opened in this process, preventing two journals from sharing a directory. */
+  private val locks: mutable.HashMap[Path, FileLock] = mutable.HashMap()
+
+  /**
+   * Opens the first journal inside the specified directory which is not in use by another journal, creating
+   * it if needed. This way, the nodes started by the same process keep using the same journals when the
+   * process is restarted.
+   * @param root              the specified directory
+   * @param segmentSize       the size of each segment of the journal, in bytes
+   * @param groupCommitPeriod how much time passes between two flushes of the journal
+   * @return the journal opened
+   */
+  def open(root: Path, segmentSize: Int, groupCommitPeriod: FiniteDuration): Journal = synchronized {
+    val directory: Path = LazyList.from(0).map(i => root.resolve(s"node-$i")).find(tryLock).get
+    Journal(directory, segmentSize, groupCommitPeriod)
+  }
+
+  /**
+   * Releases the directory of the specified journal, after closing it.
+   * @param journal the specified journal
+   */
+  def release(journal: Journal): Unit = synchronized {
+    journal.close()
+    this.locks.remove(journal.directory).foreach(lock => { lock.release(); lock.channel.close() })
+  }
+
+  private def tryLock(directory: Path): Boolean =
+    Files.createDirectories(directory)
+    val channel: FileChannel = FileChannel.open(directory.resolve(LockFile), CREATE, WRITE)
+    val lock: Option[FileLock] =
+      try Option(channel.tryLock())
+      catch case _: OverlappingFileLockException => None
+    lock match
+      case Some(lock) => this.locks.update(directory, lock); true
+      case None => channel.close(); false
+
+  /** @return the segments inside the specified directory, from the oldest to the most recent. */
+  private def segmentsIn(directory: Path): List[Path] =
+    Using.resource(Files.list(directory))(_.iterator.asScala.filter(isSegment).toList.sortBy(_.getFileName.toString))
+  /** @return true if the specified segment starts with the header of the current format of the segments. */
+  private def hasCurrentFormat(path: Path): Boolean =
+    Using.resource(FileChannel.open(path, READ)) { channel =>
+      val header: ByteBuffer = ByteBuffer.allocate(SegmentHeaderSize)
+      while header.hasRemaining && channel.read(header) >= 0 do ()
+      header.flip()
+      header.remaining == SegmentHeaderSize && header.getInt == SegmentMagic && header.get == FormatVersion
+    }
+  private def isSegment(path: Path): Boolean =
+    val name: String = path.getFileName.toString
+    name.startsWith(SegmentPrefix) && name.endsWith(SegmentSuffix)
+  private def segmentNumber(path: Path): Long =
+    val name: String = path.getFileName.toString
+    name.substring(SegmentPrefix.length, name.length - SegmentSuffix.length).toLong
+  private def recordSize(entityId: String, payload: Array[Byte]): Int =
+    HeaderSize + java.lang.Short.BYTES + entityId.getBytes(UTF_8).length + java.lang.Byte.BYTES + payload.length
+  /** @return the size of the specified records of the specified entity once compacted. */
+  private def logSize(entityId: String, log: EntityLog): Long =
+    log.snapshot.map(snapshot => recordSize(entityId, snapshot).toLong + log.events.map(recordSize(entityId, _).toLong).sum).getOrElse(0)
+  private def checksum(body: ByteBuffer): Int =
+    val crc: CRC32 = CRC32()
+    crc.update(body.duplicate())
+    crc.getValue.toInt
+
+  /**
+   * Clears the specified segment after its position, if it contains the remains of the records written before
+   * a crash, so that they cannot be mistaken for valid records once the segment is written again.
+   */
+  private def clear(segment: MappedByteBuffer): Unit =
+    val rest: ByteBuffer = segment.slice
+    var dirty: Boolean = false
+    while !dirty && rest.remaining >= java.lang.Long.BYTES do dirty = rest.getLong != 0
+    while !dirty && rest.hasRemaining do dirty = rest.get != 0
+    if dirty then
+      val zeros: Array[Byte] = new Array(Math.min(ClearBlockSize, segment.remaining))
+      rest.clear()
+      while rest.hasRemaining do rest.put(zeros, 0, Math.min(zeros.length, rest.remaining))
@@ -0,0 +1,26 @@
+package persistence
+
+import akka.actor.typed.{ActorSystem, Extension, ExtensionId}
+import configuration.C.Persistence.{GROUP_COMMIT_PERIOD, JOURNAL_DIRECTORY, SEGMENT_SIZE}
+
+import java.nio.file.Path
+import scala.concurrent.ExecutionContext
+
+/**
+ * Model the extension providing the journal of a node of the cluster, which is opened when first
+ * requested and released when the node terminates.
+ * @param system the actor system of the node
+ */
+class JournalExtension(system: ActorSystem[?]) extends Extension:
+  /** The journal of the node. */
+  val journal: Journal = Journal.open(Path.of(JOURNAL_DIRECTORY), SEGMENT_SIZE, GROUP_COMMIT_PERIOD)
+  if journal.outdatedSegments > 0 then
+    system.log.warn(s"Journal ${journal.directory} deleted ${journal.outdatedSegments} segments written in an older format")
+  system.log.info(s"Journal ${journal.directory} recovered in ${journal.recoveryTime.toMillis} ms")
+  system.whenTerminated.onComplete(_ => Journal.release(journal))(ExecutionContext.parasitic)
+
+/**
+ * Companion object of [[JournalExtension]].
+ */
+object JournalExtension extends ExtensionId[JournalExtension]:
+  override def createExtension(system: ActorSystem[?]): JournalExtension = new JournalExtension(system)
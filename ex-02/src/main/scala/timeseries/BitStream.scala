@@ -0,0 +1,70 @@
+package timeseries
+
+/**
+ * Model a growing sequence of bits, written from the most significant bit of each word.
+ * @param initialWords the number of 64-bit words initially allocated
+ */
+private[timeseries] class BitWriter(initialWords: Int = 4):
+  private var words: Array[Long] = new Array(initialWords)
+  private var _size: Long = 0
+
+  /** @return the number of bits written so far. */
+  def size: Long = this._size
+
+  /**
+   * Writes the specified number of least significant bits of the specified value.
+   * @param value the specified value
+   * @param bits  the specified number of bits, between 0 and 64
+   */
+  def write(value: Long, bits: Int): Unit =
+    if bits > 0 then
+      val required: Int = ((this._size + bits + 63) >>> 6).toInt
+      if required > this.words.length then this.words = java.util.Arrays.copyOf(this.words, Math.max(required, this.words.length * 2))
+      val index: Int = (this._size >>> 6).toInt
+      val offset: Int = (this._size & 63).toInt
+      val masked: Long = if bits == 64 then value else value & ((1L << bits) - 1)
+      val free: Int = 64 - offset
+      if bits <= free then this.words(index) |= masked << (free - bits)
+      else
+        this.words(index) |= masked >>> (bits - free)
+        this.words(index + 1) |= masked << (64 - bits + free)
+      this._size += bits
+
+  /** Writes the specified bit. */
+  def write(bit: Boolean): Unit = this.write(if bit then 1L else 0L, 1)
+
+  /** Releases the words allocated but not written. */
+  def trim(): Unit = this.words = java.util.Arrays.copyOf(this.words, ((this._size + 63) >>> 6).toInt)
+
+  /** @return a reader of the bits written so far. */
+  def reader: BitReader = BitReader(this.words, this._size)
+
+  /** @return the number of bytes used by this sequence. */
+  def footprint: Long = this.words.length.toLong * java.lang.Long.BYTES
+
+/**
+ * Model a reader of a sequence of bits.
+ * @param words the words containing the sequence
+ * @param size  the number of bits in the sequence
+ */
+private[timeseries] class BitReader(words: Array[Long], size: Long):
+  private var position: Long = 0
+
+  /** @return the next specified number of bits as the least significant bits of a value. */
+  def read(bits: Int): Long =
+    if bits == 0 then 0
+    else
+      val index: Int = (this.position >>> 6).toInt
+      val offset: Int = (this.position & 63).toInt
+      val free: Int = 64 - offset
+      this.position += bits
+      val value: Long =
+        if bits <= free then this.words(index) >>> (free - bits)
+        else (this.words(index) << (bits - free)) | (this.words(index + 1) >>> (64 - bits + free))
+      if bits == 64 then value else value & ((1L << bits) - 1)
+
+  /** @return the next bit. */
+  def readBit(): Boolean = this.read(1) == 1
+
+  /** @return true if there are bits left to read, false otherwise. */
+  def hasNext: Boolean = this.position < size
@@ -0,0 +1,152 @@
+package timeseries
+
+import timeseries.Block.*
+
+/**
+ * Model a block of a time series, where each point has a timestamp and the specified number of values.
+ *
+ * The block is stored by column and compressed: the timestamps are encoded by their delta-of-delta, which
+ * takes a single bit for points at regular intervals, while each column of values is encoded by the XOR
+ * with its previous value, which takes a single bit for repeated values and few bits for similar values.
+ *
+ * @param columns  the number of values of each point
+ * @param capacity the max number of points in this block
+ */
+class Block(val columns: Int, val capacity: Int):
+  private val timestamps: BitWriter = BitWriter()
+  private val values: Array[BitWriter] = Array.fill(columns)(BitWriter())
+  private var _size: Int = 0
+  private var _minTimestamp: Long = Long.MaxValue
+  private var _maxTimestamp: Long = Long.MinValue
+  private var lastTimestamp: Long = 0
+  private var lastDelta: Long = 0
+  private val lastValues: Array[Long] = new Array(columns)
+  private val lastLeadingZeros: Array[Int] = Array.fill(columns)(Int.MaxValue)
+  private val lastTrailingZeros: Array[Int] = new Array(columns)
+
+  /** @return the number of points in this block. */
+  def size: Int = this._size
+  /** @return true if this block contains its max number of points, false otherwise. */
+  def isFull: Boolean = this._size >= this.capacity
+  /** @return the least timestamp of the points in this block. */
+  def minTimestamp: Long = this._minTimestamp
+  /** @return the greatest timestamp of the points in this block. */
+  def maxTimestamp: Long = this._maxTimestamp
+  /** @return the number of bytes used by this block. */
+  def footprint: Long = this.timestamps.footprint + this.values.map(_.footprint).sum
+
+  /**
+   * Appends the specified point to this block.
+   * @param timestamp the timestamp of the specified point
+   * @param point     the values of the specified point
+   * @throws IllegalStateException if this block is full
+   */
+  @throws(classOf[IllegalStateException])
+  def append(timestamp: Long, point: Double*): Unit =
+    if this.isFull then throw IllegalStateException("The block is full")
+    this.appendTimestamp(timestamp)
+    point.indices.foreach(column => this.appendValue(column, java.lang.Double.doubleToRawLongBits(point(column))))
+    this._size += 1
+    if this.isFull then
+      this.timestamps.trim()
+      this.values.foreach(_.trim())
+
+  /**
+   * Applies the specified function to the points of this block within the specified range, in order of insertion.
+   * @param from the start of the specified range, inclusive
+   * @param to   the end of the specified range, exclusive
+   * @param f    the specified function, receiving the timestamp and the values of each point. The array
+   *             of values is reused between the points.
+   */
+  def foreach(from: Long, to: Long)(f: (Long, Array[Double]) => Unit): Unit =
+    val timestamps: BitReader = this.timestamps.reader
+    val values: Array[BitReader] = this.values.map(_.reader)
+    val point: Array[Double] = new Array(this.columns)
+    val lastBits: Array[Long] = new Array(this.columns)
+    val leadingZeros: Array[Int] = new Array(this.columns)
+    val meaningfulBits: Array[Int] = new Array(this.columns)
+    var timestamp: Long = 0
+    var delta: Long = 0
+    (0 until this._size).foreach { i =>
+      if i == 0 then timestamp = timestamps.read(64)
+      else
+        delta += readDeltaOfDelta(timestamps)
+        timestamp += delta
+      (0 until this.columns).foreach { column =>
+        val reader: BitReader = values(column)
+        if i == 0 then lastBits(column) = reader.read(64)
+        else if reader.readBit() then
+          if reader.readBit() then
+            leadingZeros(column) = reader.read(5).toInt
+            meaningfulBits(column) = reader.read(6).toInt + 1
+          val trailingZeros: Int = 64 - leadingZeros(column) - meaningfulBits(column)
+          lastBits(column) ^= reader.read(meaningfulBits(column)) << trailingZeros
+        point(column) = java.lang.Double.longBitsToDouble(lastBits(column))
+      }
+      if timestamp >= from && timestamp < to then f(timestamp, point)
+    }
+
+  private def appendTimestamp(timestamp: Long): Unit =
+    if this._size == 0 then this.timestamps.write(timestamp, 64)
+    else
+      val delta: Long = timestamp - this.lastTimestamp
+      writeDeltaOfDelta(this.timestamps, delta - this.lastDelta)
+      this.lastDelta = delta
+    this.lastTimestamp = timestamp
+    this._minTimestamp = Math.min(this._minTimestamp, timestamp)
+    this._maxTimestamp = Math.max(this._maxTimestamp, timestamp)
+
+  private def appendValue(column: Int, bits: Long): Unit =
+    val writer: BitWriter = this.values(column)
+    if this._size == 0 then writer.write(bits, 64)
+    else
+      val xor: Long = bits ^ this.lastValues(column)
+      if xor == 0 then writer.write(false)
+      else
+        writer.write(true)
+        val leadingZeros: Int = Math.min(java.lang.Long.numberOfLeadingZeros(xor), 31)
+        val trailingZeros: Int = java.lang.Long.numberOfTrailingZeros(xor)
+        if leadingZeros >= this.lastLeadingZeros(column) && trailingZeros >= this.lastTrailingZeros(column) then
+          writer.write(false)
+          writer.write(xor >>> this.lastTrailingZeros(column), 64 - this.lastLeadingZeros(column) - this.lastTrailingZeros(column))
+        else
+          val meaningfulBits: Int = 64 - leadingZeros - trailingZeros
+          writer.write(true)
+          writer.write(leadingZeros, 5)
+          writer.write(meaningfulBits - 1, 6)
+          writer.write(xor >>> trailingZeros, meaningfulBits)
+          this.lastLeadingZeros(column) = leadingZeros
+          this.lastTrailingZeros(column) = trailingZeros
+    this.lastValues(column) = bits
+
+/**
+ * Companion object of [[Block]].
+ */
+object Block:
+  /**
+   * The ranges of the delta-of-delta encoded by each prefix, with the number of bits following the prefix.
+   * The i-th range is prefixed by i+1 ones followed by a zero, while a delta-of-delta outside all ranges is
+   * prefixed by ones only and written in full.
+   */
+  private val DeltaOfDeltaRanges: Seq[(Long, Long, Int)] = Seq((-63, 64, 7), (-255, 256, 9), (-2047, 2048, 12), (Int.MinValue + 1L, Int.MaxValue + 1L, 32))
+
+  private def writeDeltaOfDelta(writer: BitWriter, deltaOfDelta: Long): Unit =
+    if deltaOfDelta == 0 then writer.write(false)
+    else
+      DeltaOfDeltaRanges.indexWhere((min, max, _) => deltaOfDelta >= min && deltaOfDelta <= max) match
+        case -1 =>
+          writer.write(0x1F, DeltaOfDeltaRanges.size + 1)
+          writer.write(deltaOfDelta, 64)
+        case range =>
+          val (min, _, bits) = DeltaOfDeltaRanges(range)
+          writer.write((1L << (range + 2)) - 2, range + 2)
+          writer.write(deltaOfDelta - min, bits)
+
+  private def readDeltaOfDelta(reader: BitReader): Long =
+    var range: Int = 0
+    while range <= DeltaOfDeltaRanges.size && reader.readBit() do range += 1
+    if range == 0 then 0
+    else if range > DeltaOfDeltaRanges.size then reader.read(64)
+    else
+      val (min, _, bits) = DeltaOfDeltaRanges(range - 1)
+      reader.read(bits) + min
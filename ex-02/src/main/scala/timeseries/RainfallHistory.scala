@@ -0,0 +1,89 @@
+package timeseries
+
+import configuration.C.History.*
+import util.Id.EntityId
+
+import scala.collection.mutable
+import scala.collection.mutable.ListBuffer
+import scala.concurrent.duration.{DurationInt, FiniteDuration}
+
+/**
+ * Model the resolution of a query over the history of the rainfall inside a zone.
+ */
+enum Resolution:
+  /** Resolution where each reading of each pluviometer is reported individually. */
+  case Raw
+  /** Resolution where the readings are aggregated by minute. */
+  case Minute
+  /** Resolution where the readings are aggregated by hour. */
+  case Hour
+
+  /** @return the interval of time covered by each aggregate at this resolution. */
+  def duration: FiniteDuration = this match
+    case Raw => 1.millis
+    case Minute => 1.minute
+    case Hour => 1.hour
+
+/**
+ * Model the history of the rainfall measured by the pluviometers inside a zone.
+ *
+ * The readings of each pluviometer are kept in a compressed series for [[RAW_RETENTION]], while the
+ * readings of all the pluviometers are also rolled up by minute and by hour, which are kept for
+ * [[MINUTE_RETENTION]] and [[HOUR_RETENTION]] respectively. This way, the history of a zone over a
+ * long range can be queried by decoding a small number of aggregates.
+ *
+ * @param blockSize the max number of points in each block of the series of this history
+ */
+class RainfallHistory(blockSize: Int = BLOCK_SIZE):
+  private val readings: mutable.LongMap[Series] = mutable.LongMap()
+  private val byMinute: Rollup = Rollup(Resolution.Minute.duration, blockSize)
+  private val byHour: Rollup = Rollup(Resolution.Hour.duration, blockSize)
+  /** The instant of the last eviction of the old readings from this history, if any. */
+  private var lastEviction: Option[Long] = None
+
+  /** @return the number of bytes used by this history. */
+  def footprint: Long = this.readings.values.map(_.footprint).sum + this.byMinute.footprint + this.byHour.footprint
+
+  /**
+   * Records the specified reading of the specified pluviometer.
+   * @param pluviometerId the identifier of the specified pluviometer
+   * @param timestamp     the instant of the specified reading
+   * @param measurement   the measurement of the specified reading
+   */
+  def record(pluviometerId: EntityId, timestamp: Long, measurement: Double): Unit =
+    this.readings.getOrElseUpdate(pluviometerId, Series(columns = 1, blockSize)).append(timestamp, measurement)
+    this.byMinute.add(timestamp, measurement)
+    this.byHour.add(timestamp, measurement)
+    if this.lastEviction.forall(timestamp - _ >= EVICTION_PERIOD.toMillis) then
+      this.readings.values.foreach(_.evictBefore(timestamp - RAW_RETENTION.toMillis))
+      this.byMinute.evictBefore(timestamp - MINUTE_RETENTION.toMillis)
+      this.byHour.evictBefore(timestamp - HOUR_RETENTION.toMillis)
+      this.lastEviction = Some(timestamp)
+
+  /**
+   * @param from       the start of the specified range, inclusive
+   * @param to         the end of the specified range, exclusive
+   * @param resolution the specified resolution
+   * @return the history of the rainfall within the specified range at the specified resolution, in order of time.
+   *         At the raw resolution, each aggregate is a single reading.
+   */
+  def query(from: Long, to: Long, resolution: Resolution): List[Aggregate] = resolution match
+    case Resolution.Raw =>
+      val aggregates: ListBuffer[Aggregate] = ListBuffer()
+      this.readings.values.foreach(_.foreach(from, to)((timestamp, point) =>
+        aggregates += Aggregate(timestamp, 1, point(0), point(0), point(0))
+      ))
+      aggregates.sortBy(_.start).toList
+    case Resolution.Minute => this.byMinute.aggregates(from, to)
+    case Resolution.Hour => this.byHour.aggregates(from, to)
+
+  /**
+   * @param pluviometerId the identifier of the specified pluviometer
+   * @param from          the start of the specified range, inclusive
+   * @param to            the end of the specified range, exclusive
+   * @return the readings of the specified pluviometer within the specified range, as pairs of instants and measurements
+   */
+  def readingsOf(pluviometerId: EntityId, from: Long, to: Long): List[(Long, Double)] =
+    val readings: ListBuffer[(Long, Double)] = ListBuffer()
+    this.readings.get(pluviometerId).foreach(_.foreach(from, to)((timestamp, point) => readings += ((timestamp, point(0)))))
+    readings.toList
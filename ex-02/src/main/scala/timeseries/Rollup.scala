@@ -0,0 +1,74 @@
+package timeseries
+
+import scala.collection.mutable.ListBuffer
+import scala.concurrent.duration.FiniteDuration
+
+/**
+ * Model an aggregate of the values of a time series within an interval of time.
+ * @param start the start of the interval
+ * @param count the number of values within the interval
+ * @param sum   the sum of the values within the interval
+ * @param min   the least value within the interval
+ * @param max   the greatest value within the interval
+ */
+case class Aggregate(start: Long, count: Long, sum: Double, min: Double, max: Double):
+  /** @return the mean of the values within the interval of this aggregate. */
+  def mean: Double = if this.count == 0 then 0 else this.sum / this.count
+
+/**
+ * Model a rollup of a time series, aggregating its values into consecutive intervals of the specified resolution.
+ * The aggregates of the closed intervals are stored in a compressed series, while the aggregate of the last
+ * interval is kept open until a value after that interval is added. A value arriving after its interval has
+ * been closed is aggregated into the open interval.
+ *
+ * @param resolution the specified resolution
+ * @param blockSize  the max number of aggregates in each block of the series of this rollup
+ */
+class Rollup(val resolution: FiniteDuration, blockSize: Int):
+  private val series: Series = Series(columns = 4, blockSize)
+  private val interval: Long = resolution.toMillis
+  private var openStart: Long = Long.MinValue
+  private var count: Long = 0
+  private var sum: Double = 0
+  private var min: Double = Double.PositiveInfinity
+  private var max: Double = Double.NegativeInfinity
+
+  /** @return the number of bytes used by this rollup. */
+  def footprint: Long = this.series.footprint
+
+  /**
+   * Adds the specified value to this rollup.
+   * @param timestamp the timestamp of the specified value
+   * @param value     the specified value
+   */
+  def add(timestamp: Long, value: Double): Unit =
+    val start: Long = Math.floorDiv(timestamp, this.interval) * this.interval
+    if start > this.openStart then
+      if this.count > 0 then this.series.append(this.openStart, this.count.toDouble, this.sum, this.min, this.max)
+      this.openStart = start
+      this.count = 0
+      this.sum = 0
+      this.min = Double.PositiveInfinity
+      this.max = Double.NegativeInfinity
+    this.count += 1
+    this.sum += value
+    this.min = Math.min(this.min, value)
+    this.max = Math.max(this.max, value)
+
+  /**
+   * @param from the start of the specified range, inclusive
+   * @param to   the end of the specified range, exclusive
+   * @return the aggregates of the intervals starting within the specified range, including the open interval
+   */
+  def aggregates(from: Long, to: Long): List[Aggregate] =
+    val aggregates: ListBuffer[Aggregate] = ListBuffer()
+    this.series.foreach(from, to)((start, point) => aggregates += Aggregate(start, point(0).toLong, point(1), point(2), point(3)))
+    if this.count > 0 && this.openStart >= from && this.openStart < to then
+      aggregates += Aggregate(this.openStart, this.count, this.sum, this.min, this.max)
+    aggregates.toList
+
+  /**
+   * Removes the aggregates of this rollup older than the specified instant, if they fill a block.
+   * @param instant the specified instant
+   */
+  def evictBefore(instant: Long): Unit = this.series.evictBefore(instant)
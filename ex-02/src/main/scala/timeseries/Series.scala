@@ -0,0 +1,47 @@
+package timeseries
+
+import scala.collection.mutable
+
+/**
+ * Model a time series, whose points are appended into a sequence of compressed blocks.
+ * @param columns   the number of values of each point
+ * @param blockSize the max number of points in each block
+ */
+class Series(val columns: Int, blockSize: Int):
+  /** The blocks of this series, from the oldest to the most recent. Only the last block is open. */
+  private val blocks: mutable.ArrayDeque[Block] = mutable.ArrayDeque()
+
+  /** @return the number of points in this series. */
+  def size: Int = this.blocks.map(_.size).sum
+  /** @return the number of bytes used by this series. */
+  def footprint: Long = this.blocks.map(_.footprint).sum
+
+  /**
+   * Appends the specified point to this series.
+   * @param timestamp the timestamp of the specified point
+   * @param point     the values of the specified point
+   */
+  def append(timestamp: Long, point: Double*): Unit =
+    if this.blocks.isEmpty || this.blocks.last.isFull then this.blocks.append(Block(this.columns, this.blockSize))
+    this.blocks.last.append(timestamp, point*)
+
+  /**
+   * Applies the specified function to the points of this series within the specified range.
+   * Only the blocks overlapping the specified range are decoded.
+   * @param from the start of the specified range, inclusive
+   * @param to   the end of the specified range, exclusive
+   * @param f    the specified function, receiving the timestamp and the values of each point
+   */
+  def foreach(from: Long, to: Long)(f: (Long, Array[Double]) => Unit): Unit =
+    this.blocks.foreach(block => if overlaps(block, from, to) then block.foreach(from, to)(f))
+
+  /**
+   * Removes the blocks of this series containing only points older than the specified instant.
+   * @param instant the specified instant
+   */
+  def evictBefore(instant: Long): Unit =
+    while this.blocks.size > 1 && this.blocks.head.maxTimestamp < instant do
+      this.blocks.removeHead()
+
+  private def overlaps(block: Block, from: Long, to: Long): Boolean =
+    block.minTimestamp < to && block.maxTimestamp >= from
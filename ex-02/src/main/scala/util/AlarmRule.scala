@@ -0,0 +1,29 @@
+package util
+
+import scala.concurrent.duration.FiniteDuration
+
+/**
+ * Model a rule deciding if an area monitored by some sensors is under alarm, given the readings of its sensors.
+ * Each rule evaluates the readings to a score, so that the area is under alarm when the score reaches 1.
+ */
+enum AlarmRule:
+  /**
+   * Rule where the area is under alarm if at least half of its sensors are signaling, considering only
+   * their last readings. The score is the number of sensors signaling over half of the sensors.
+   */
+  case Majority
+  /**
+   * Rule where the area is under alarm if at least k of the last n readings of its sensors within the
+   * specified window are signaling. The score is the number of those readings signaling over k.
+   * @param k      the number of readings signaling required for an alarm
+   * @param n      the max number of readings considered
+   * @param window the max age of the readings considered
+   */
+  case KOfN(k: Int, n: Int, window: FiniteDuration)
+  /**
+   * Rule where the area is under alarm if the average of the measurements of its sensors within the specified
+   * window is at least the specified threshold. The score is the average measurement over the threshold.
+   * @param threshold the specified threshold
+   * @param window    the max age of the measurements considered
+   */
+  case MovingAverage(threshold: Double, window: FiniteDuration)
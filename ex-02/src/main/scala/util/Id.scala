@@ -1,5 +1,6 @@
 package util
 
+import java.util.concurrent.ConcurrentHashMap
 import scala.util.Random
 
 /**
@@ -7,11 +8,46 @@ import scala.util.Random
  */
 trait Id:
   /** @return the identifier of this entity. */
-  def id: String
+  def id: Id.EntityId
 
 /**
  * Companion object of [[Id]].
+ *
+ * The identifiers are 64-bit numbers, used as they are as the keys of the maps of the entities and in the
+ * messages. Their string forms are only used at the edges of the application, such as the names of the
+ * actors, the identifiers of the sharded entities and the identifiers entered by the users. The identifiers
+ * generated or parsed by a node are kept in a registry, which interns their string forms and prevents the
+ * node from generating the same identifier twice.
  */
 object Id:
-  /** @return a new randomly generated id. The uniqueness of the id is not guaranteed but highly probable. */
-  def newId: String = BigInt.long2bigInt(Random.nextLong()).toString(36)
\ No newline at end of file
+  /** The type of the identifiers of the entities. */
+  type EntityId = Long
+
+  /** A map from the identifiers known by this node to their interned string forms. */
+  private val registry: ConcurrentHashMap[EntityId, String] = ConcurrentHashMap()
+
+  /**
+   * @return a new randomly generated non-negative identifier. The identifier is unique among the identifiers
+   *         known by this node, while its uniqueness across nodes is not guaranteed but highly probable.
+   */
+  def newId: EntityId =
+    var id: EntityId = Random.nextLong() & Long.MaxValue
+    while this.registry.putIfAbsent(id, java.lang.Long.toString(id)) != null do id = Random.nextLong() & Long.MaxValue
+    id
+
+  /**
+   * @param id the specified identifier
+   * @return the interned string form of the specified identifier
+   */
+  def show(id: EntityId): String = this.registry.computeIfAbsent(id, java.lang.Long.toString(_))
+
+  /**
+   * @param string the string form of an identifier
+   * @throws NumberFormatException if the specified string is not the string form of an identifier
+   * @return the identifier represented by the specified string, whose string form is interned
+   */
+  @throws(classOf[NumberFormatException])
+  def parse(string: String): EntityId =
+    val id: EntityId = java.lang.Long.parseLong(string)
+    this.registry.putIfAbsent(id, string)
+    id
\ No newline at end of file
@@ -0,0 +1,57 @@
+package util
+
+import scala.collection.mutable
+
+/**
+ * Model a static two-dimensional tree over the specified entries, indexed by their positions, which supports
+ * the lookup of the entries nearest to a point in logarithmic time.
+ * @param entries the specified entries, as pairs of positions and values
+ * @tparam A the type of the values of the entries
+ */
+class KdTree[A](entries: Seq[(Point2D, A)]):
+  import KdTree.Node
+  private val root: Option[Node[A]] = KdTree.build(entries.toIndexedSeq, vertical = true)
+
+  /** @return the number of entries in this tree. */
+  val size: Int = entries.size
+
+  /**
+   * @param point  the specified point
+   * @param k      the max number of values to return
+   * @param filter the condition that the values to return must satisfy
+   * @return the values of the k entries nearest to the specified point satisfying the specified filter, from the nearest
+   */
+  def nearest(point: Point2D, k: Int, filter: A => Boolean = (_: A) => true): List[A] =
+    /** The best entries found so far, from the farthest. */
+    val best: mutable.PriorityQueue[(Double, A)] = mutable.PriorityQueue()(Ordering.by(_._1))
+    def search(node: Node[A]): Unit =
+      val distance: Double = node.position.distance(point)
+      if (best.size < k || distance < best.head._1) && filter(node.value) then
+        best.enqueue((distance, node.value))
+        if best.size > k then best.dequeue()
+      val offset: Double = if node.vertical then point.x - node.position.x else point.y - node.position.y
+      val (near, far) = if offset < 0 then (node.low, node.high) else (node.high, node.low)
+      near.foreach(search)
+      if best.size < k || Math.abs(offset) < best.head._1 then far.foreach(search)
+    if k > 0 then this.root.foreach(search)
+    best.dequeueAll.reverse.map(_._2).toList
+
+/**
+ * Companion object of [[KdTree]].
+ */
+object KdTree:
+  /**
+   * Model a node of a kd-tree, splitting the plane at its position.
+   * @param vertical true if the node splits the plane by a vertical line, false if by a horizontal line
+   * @param low      the subtree of the entries before the split
+   * @param high     the subtree of the entries after the split
+   */
+  private case class Node[A](position: Point2D, value: A, vertical: Boolean, low: Option[Node[A]], high: Option[Node[A]])
+
+  private def build[A](entries: IndexedSeq[(Point2D, A)], vertical: Boolean): Option[Node[A]] =
+    if entries.isEmpty then None
+    else
+      val sorted: IndexedSeq[(Point2D, A)] = entries.sortBy((position, _) => if vertical then position.x else position.y)
+      val median: Int = sorted.size / 2
+      val (position, value) = sorted(median)
+      Some(Node(position, value, vertical, build(sorted.take(median), !vertical), build(sorted.drop(median + 1), !vertical)))
\ No newline at end of file
@@ -0,0 +1,102 @@
+package util
+
+import util.PartitionIndex.*
+
+/**
+ * Model an index over a partition of an area into rectangles, such as the partition of a city into its zones,
+ * which supports the lookup of the rectangle containing a point in logarithmic time.
+ *
+ * The index is a tree of the straight cuts separating the rectangles, which always exist for the partitions
+ * obtained by recursively splitting an area in two. The rectangles that cannot be separated by a straight cut
+ * are searched linearly.
+ *
+ * @param entries the rectangles of the partition, as pairs of bounds and values
+ * @tparam A the type of the values of the rectangles
+ */
+class PartitionIndex[A](entries: Seq[(Bounds, A)]):
+  private val root: Node[A] = build(entries.toIndexedSeq)
+
+  /**
+   * @param point the specified point
+   * @return an optional of the value of the rectangle strictly containing the specified point, empty if there is none
+   */
+  def lookup(point: Point2D): Option[A] =
+    var node: Node[A] = this.root
+    while node.isInstanceOf[Cut[?]] do
+      val cut: Cut[A] = node.asInstanceOf[Cut[A]]
+      node = if (if cut.vertical then point.x else point.y) < cut.at then cut.low else cut.high
+    node.asInstanceOf[Leaf[A]].entries.collectFirst { case (bounds, value) if bounds.contains(point) => value }
+
+/**
+ * Companion object of [[PartitionIndex]].
+ */
+object PartitionIndex:
+  /** The tolerance used when comparing the edges of the rectangles. */
+  private val Epsilon: Double = 1e-9
+
+  /**
+   * Model the bounds of a rectangle.
+   * @param left   the horizontal coordinate of the left edge
+   * @param bottom the vertical coordinate of the bottom edge
+   * @param right  the horizontal coordinate of the right edge
+   * @param top    the vertical coordinate of the top edge
+   */
+  case class Bounds(left: Double, bottom: Double, right: Double, top: Double):
+    /** @return true if the specified point is strictly inside these bounds, false otherwise. */
+    def contains(point: Point2D): Boolean = point.x > left && point.x < right && point.y > bottom && point.y < top
+  /**
+   * Companion object of [[Bounds]].
+   */
+  object Bounds:
+    /**
+     * @param position the top-left corner of the rectangle
+     * @param width    the width of the rectangle
+     * @param height   the height of the rectangle
+     * @return the bounds of the specified rectangle
+     */
+    def of(position: Point2D, width: Double, height: Double): Bounds =
+      Bounds(position.x, position.y - height, position.x + width, position.y)
+
+  private sealed trait Node[A]
+  /** A cut of the area by a vertical or horizontal line at the specified coordinate. */
+  private case class Cut[A](vertical: Boolean, at: Double, low: Node[A], high: Node[A]) extends Node[A]
+  private case class Leaf[A](entries: Seq[(Bounds, A)]) extends Node[A]
+
+  /**
+   * Model a straight cut separating some rectangles.
+   * @param vertical true if the cut is a vertical line, false if it is a horizontal line
+   * @param at       the coordinate of the cut
+   * @param sorted   the rectangles, sorted by their lower edge along the axis of the cut
+   * @param low      the number of rectangles below the cut, which are the first ones in sorted order
+   */
+  private case class Separation[A](vertical: Boolean, at: Double, sorted: IndexedSeq[(Bounds, A)], low: Int)
+
+  private def build[A](entries: IndexedSeq[(Bounds, A)]): Node[A] =
+    val separations: Seq[Separation[A]] = if entries.size <= 1 then Seq() else Seq(true, false).flatMap(separate(entries, _))
+    if separations.isEmpty then Leaf(entries)
+    else
+      val separation: Separation[A] = separations.minBy(s => Math.abs(entries.size - 2 * s.low))
+      Cut(separation.vertical, separation.at,
+        build(separation.sorted.take(separation.low)), build(separation.sorted.drop(separation.low)))
+
+  /**
+   * Sweeps the specified rectangles along the specified axis, sorted by their lower edge: a cut at the lower
+   * edge of a rectangle separates the rectangles before it from the following ones if none of the rectangles
+   * before it extends beyond the cut. This way, all the cuts along an axis are found in `O(n log n)`.
+   * @param entries  the specified rectangles
+   * @param vertical true to look for vertical cuts, false to look for horizontal cuts
+   * @return an optional of the most balanced cut separating the specified rectangles along the specified axis,
+   *         empty if there is none
+   */
+  private def separate[A](entries: IndexedSeq[(Bounds, A)], vertical: Boolean): Option[Separation[A]] =
+    def lower(bounds: Bounds): Double = if vertical then bounds.left else bounds.bottom
+    def upper(bounds: Bounds): Double = if vertical then bounds.right else bounds.top
+    val sorted: IndexedSeq[(Bounds, A)] = entries.sortBy(e => lower(e._1))
+    var reach: Double = Double.NegativeInfinity
+    var best: Option[Int] = None
+    (1 until sorted.size).foreach(low => {
+      reach = Math.max(reach, upper(sorted(low - 1)._1))
+      if reach <= lower(sorted(low)._1) + Epsilon && best.forall(b => Math.abs(sorted.size - 2 * low) < Math.abs(sorted.size - 2 * b)) then
+        best = Some(low)
+    })
+    best.map(low => Separation(vertical, lower(sorted(low)._1), sorted, low))
\ No newline at end of file
@@ -0,0 +1,83 @@
+package util
+
+import util.AlarmRule.*
+import util.Id.EntityId
+
+import scala.collection.mutable
+
+/**
+ * Model an aggregator of the readings of the sensors monitoring an area, which evaluates if the area is
+ * under alarm according to the specified rule. Each reading is aggregated in amortized logarithmic time in the
+ * size of the window of the rule. The readings may arrive out of order, as the ones of different sensors or the
+ * ones of delayed frames: the window slides with the most recent reading aggregated so far, and each sensor
+ * only counts by its most recent reading.
+ *
+ * The alarm has an hysteresis: once triggered, it cannot be triggered again until the score of the rule
+ * falls to the specified re-arm score, so that noisy sensors near the threshold do not cause repeated alarms.
+ *
+ * @param rule       the specified rule
+ * @param sensors    the identifiers of the sensors monitoring the area, initially not signaling
+ * @param rearmScore the specified re-arm score
+ */
+class SignalAggregator(val rule: AlarmRule, sensors: Iterable[EntityId], val rearmScore: Double):
+  /** The last signal of each sensor, with the instant of its reading. */
+  private val signals: mutable.LongMap[(Boolean, Long)] = mutable.LongMap.from(sensors.map((_, (false, Long.MinValue))))
+  private var signalingSensors: Int = 0
+  /** The readings within the window of the rule, ordered by their instant and then by their arrival. */
+  private val window: mutable.TreeMap[(Long, Long), (Boolean, Double)] = mutable.TreeMap()
+  private var arrivals: Long = 0
+  private var latestTimestamp: Long = Long.MinValue
+  private var signalingReadings: Int = 0
+  private var measurementSum: Double = 0
+  private var armed: Boolean = true
+
+  /**
+   * Aggregates the specified reading of the specified sensor.
+   * @param sensor      the identifier of the specified sensor
+   * @param on          true if the specified sensor is signaling, false otherwise
+   * @param measurement the measurement of the specified reading
+   * @param timestamp   the instant of the specified reading, in milliseconds
+   * @return true if the specified reading triggers an alarm, false otherwise
+   */
+  def update(sensor: EntityId, on: Boolean, measurement: Double, timestamp: Long): Boolean =
+    val last: Option[(Boolean, Long)] = this.signals.get(sensor)
+    if last.forall(_._2 <= timestamp) then
+      if !last.map(_._1).contains(on) then
+        if on then this.signalingSensors += 1 else if last.isDefined then this.signalingSensors -= 1
+      this.signals.update(sensor, (on, timestamp))
+    this.rule match
+      case KOfN(_, n, window) => this.slide(on, measurement, timestamp, n, window.toMillis)
+      case MovingAverage(_, window) => this.slide(on, measurement, timestamp, Int.MaxValue, window.toMillis)
+      case Majority =>
+    if !this.armed && this.score <= this.rearmScore then this.armed = true
+    if this.armed && this.score >= 1 then
+      this.armed = false
+      true
+    else false
+
+  /** @return the score of the rule of this aggregator, given the readings aggregated so far. */
+  def score: Double = this.rule match
+    case Majority => if this.signals.isEmpty then 0 else 2D * this.signalingSensors / this.signals.size
+    case KOfN(k, _, _) => this.signalingReadings.toDouble / k
+    case MovingAverage(threshold, _) => if this.window.isEmpty then 0 else this.measurementSum / this.window.size / threshold
+
+  /** @return true if an alarm can be triggered by the next readings, false if the score must fall to the re-arm score first. */
+  def isArmed: Boolean = this.armed
+
+  /**
+   * Adds the specified reading to the window of this aggregator, then removes the oldest readings until
+   * the window contains at most the specified number of readings, none older than the specified duration
+   * before the most recent reading. A reading older than that is removed as soon as it is added.
+   */
+  private def slide(on: Boolean, measurement: Double, timestamp: Long, maxReadings: Int, duration: Long): Unit =
+    this.window.update((timestamp, this.arrivals), (on, measurement))
+    this.arrivals += 1
+    this.latestTimestamp = Math.max(this.latestTimestamp, timestamp)
+    if on then this.signalingReadings += 1
+    this.measurementSum += measurement
+    val minTimestamp: Long = this.latestTimestamp - duration
+    while this.window.nonEmpty && (this.window.size > maxReadings || this.window.head._1._1 < minTimestamp) do
+      val (key, (oldOn, oldMeasurement)) = this.window.head
+      this.window.remove(key)
+      if oldOn then this.signalingReadings -= 1
+      this.measurementSum -= oldMeasurement
@@ -0,0 +1,57 @@
+package util
+
+import akka.actor.typed.scaladsl.TimerScheduler
+import configuration.C.Concurrency.TICK_JITTER
+import util.Id.EntityId
+
+import scala.concurrent.duration.*
+import scala.util.Random
+import scala.util.hashing.byteswap64
+
+/**
+ * Model the scheduling of the periodic work of the entities, which is spread across its period, so that
+ * the entities started together do not tick together.
+ */
+object Ticks:
+  /**
+   * @param entityId the identifier of the specified entity
+   * @param period   the specified period
+   * @return the offset of the ticks of the specified entity within the specified period, which is the same
+   *         for the same entity and uniformly distributed over the period for different entities
+   */
+  def phaseOf(entityId: EntityId, period: FiniteDuration): FiniteDuration =
+    Math.floorMod(byteswap64(entityId), Math.max(period.toMillis, 1)).millis
+  /**
+   * @param entityId the identifier of the specified entity
+   * @param segments the specified number of segments
+   * @return the segment of the specified entity, among the specified number of segments
+   */
+  def segmentOf(entityId: EntityId, segments: Int): Int = Math.floorMod(byteswap64(entityId), segments.toLong).toInt
+  /**
+   * @param period the specified period
+   * @param jitter the max fraction of the specified period to add or remove
+   * @return the specified period, randomly lengthened or shortened by at most the specified fraction of it
+   */
+  def jittered(period: FiniteDuration, jitter: Double = TICK_JITTER): FiniteDuration =
+    (period.toNanos * (1 + jitter * (2 * Random.nextDouble() - 1))).toLong.nanos
+
+  extension [T](timers: TimerScheduler[T])
+    /**
+     * Starts a timer sending the specified message with the specified period, starting at the phase of the
+     * specified entity within the period.
+     * @param key      the key of the timer
+     * @param message  the specified message
+     * @param period   the specified period
+     * @param entityId the identifier of the specified entity
+     */
+    def startPhasedTimer(key: Any, message: T, period: FiniteDuration, entityId: EntityId): Unit =
+      timers.startTimerWithFixedDelay(key, message, phaseOf(entityId, period), period)
+    /**
+     * Starts a timer sending the specified message once, after the specified period with some jitter.
+     * Restarting the timer at each tick keeps the ticks of different entities from aligning over time.
+     * @param key     the key of the timer
+     * @param message the specified message
+     * @param period  the specified period
+     */
+    def startJitteredTimer(key: Any, message: T, period: FiniteDuration): Unit =
+      timers.startSingleTimer(key, message, jittered(period))
\ No newline at end of file
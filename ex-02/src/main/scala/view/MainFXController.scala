@@ -2,18 +2,18 @@ package view
 
 import actor.CityActor.Snapshot
 import actor.ZoneActor.Zone.State
+import javafx.animation.AnimationTimer
 import javafx.application.Platform
 import javafx.event.ActionEvent
 import javafx.fxml.{FXML, Initializable}
-import javafx.scene.canvas.{Canvas, GraphicsContext}
-import javafx.scene.control.{Button, Label, TextArea, TextField}
+import javafx.scene.canvas.Canvas
+import javafx.scene.control.{Button, Label, TextArea, TextField, Tooltip}
 import javafx.scene.input.MouseEvent
-import javafx.scene.paint.Color
 import scalafx.Includes.*
 import actor.CityActor.ViewRef
 import scala.concurrent.Future
 import actor.ViewActor.DisableAlarm
-import util.Point2D
+import util.{Id, Point2D}
 import view.MainFXController.*
 import _root_.cluster.AkkaCluster
 import actor.ViewActor
@@ -23,6 +23,7 @@ import configuration.C.Concurrency.given_ExecutionContext
 
 import java.net.URL
 import java.util.ResourceBundle
+import java.util.concurrent.atomic.{AtomicLong, AtomicReference}
 
 /**
  * Main controller of ths graphical user interface of this application.
@@ -37,6 +38,11 @@ class MainFXController extends Initializable:
   var systemSnapshot: Option[SnapshotView] = Option.empty
   var clickedEntity: Option[Drawable[_]] = Option.empty
   var viewActor: Option[ViewRef] = Option.empty
+  private lazy val renderer: SnapshotRenderer = SnapshotRenderer(this.canvas)
+  private val shapes: ShapeCache = ShapeCache()
+  /** The last snapshot received and not displayed yet, null if there is none. */
+  private val pendingSnapshot: AtomicReference[Snapshot] = AtomicReference()
+  private val droppedSnapshots: AtomicLong = AtomicLong()
 
   /** Close the application. */
   def exit(): Unit = Platform.exit()
@@ -46,22 +52,25 @@ class MainFXController extends Initializable:
    */
   def setViewActor(viewRef: ViewRef): Unit = this.viewActor = Option(viewRef)
   /**
-   * Displays the specified snapshot of a system.
+   * Displays the specified snapshot of a system at the next frame of the view. If a more recent snapshot
+   * is received before the next frame, the specified snapshot is dropped and never displayed.
    * @param snapshot the specified snapshot
    */
-  def display(snapshot: Snapshot): Unit = Platform.runLater(() => display(SnapshotView(snapshot, this.canvas)))
+  def display(snapshot: Snapshot): Unit =
+    if this.pendingSnapshot.getAndSet(snapshot) != null then this.droppedSnapshots.incrementAndGet()
+  /** @return the number of snapshots dropped because they were replaced by a more recent one before being displayed. */
+  def droppedFrames: Long = this.droppedSnapshots.get
   private def display(snapshot: SnapshotView): Unit =
     // the first time the system is displayed...
     if systemSnapshot.isEmpty then
       this.cityIdentifierInput.text = "Connection successful"
-      this.simulationLabel.text = "Simulation"
       this.clickedEntity = Option(snapshot.cityView)
+    this.simulationLabel.text = if this.droppedFrames == 0 then "Simulation" else s"Simulation (dropped frames: ${this.droppedFrames})"
     // refresh the clicked entity with the entity of the new snapshot with the same id
     this.clickedEntity = snapshot.searchById(this.clickedEntity.get)
     this.displayClickedEntity()
-    // draw each entity
-    val painter = canvas.getGraphicsContext2D
-    painter.refresh(snapshot.toList.foreach(d => painter.colored(d.borderColor, d.color)(painter.draw(d))))
+    // draw the entities that changed
+    this.renderer.render(snapshot)
     this.systemSnapshot = Option(snapshot)
   /** Displays the current clicked entity. */
   private def displayClickedEntity(): Unit =
@@ -78,20 +87,36 @@ class MainFXController extends Initializable:
   override def initialize(url: URL, rb: ResourceBundle): Unit =
     this.disableAlarmButton.disable = true
     this.simulationLabel.text = "Connect to a city to display its state..."
+    // display the last snapshot received at each frame, if any
+    new AnimationTimer {
+      override def handle(now: Long): Unit =
+        Option(pendingSnapshot.getAndSet(null)).foreach(snapshot => display(SnapshotView(snapshot, canvas, shapes)))
+    }.start()
     canvas.addEventHandler(MouseEvent.MOUSE_CLICKED, (event: MouseEvent) =>
       val clickedPosition: (Double, Double) = (event.getX, event.getY)
       systemSnapshot match
         case Some(snapshot) =>
-          snapshot.toList.foreach(d => if d.shape.contains(clickedPosition) then this.clickedEntity = Option(d))
+          snapshot.pick(clickedPosition).foreach(d => this.clickedEntity = Option(d))
           this.displayClickedEntity()
         case _ => println(s"View: $clickedPosition")
     )
+    // show a tooltip describing the entity under the mouse, except for the city
+    val tooltip: Tooltip = Tooltip()
+    canvas.addEventHandler(MouseEvent.MOUSE_MOVED, (event: MouseEvent) =>
+      systemSnapshot.flatMap(_.pick((event.getX, event.getY))) match
+        case Some(entity) if !entity.isInstanceOf[CityView] =>
+          tooltip.setText(entity.toString)
+          tooltip.show(canvas, event.getScreenX + TOOLTIP_OFFSET_PX, event.getScreenY + TOOLTIP_OFFSET_PX)
+        case _ => tooltip.hide()
+    )
+    canvas.addEventHandler(MouseEvent.MOUSE_EXITED, (_: MouseEvent) => tooltip.hide())
 
   @FXML private def connectButtonHandler(event: ActionEvent): Unit = this.cityIdentifierInput.text.get() match
     case "" => throw new IllegalArgumentException("You cannot connect to a city without specifying its identifier.")
     case cityId =>
+      val id: Id.EntityId = Id.parse(cityId.trim)
       this.simulationLabel.text = "Connecting..."
-      Future { cluster.join(ViewActor(this, cityId)) }
+      Future { cluster.join(ViewActor(this, id)) }
       this.cityIdentifierInput.disable = true
       this.connectButton.disable = true
   @FXML private def disableAlarmButtonHandler(event: ActionEvent): Unit =
@@ -102,43 +127,5 @@ class MainFXController extends Initializable:
  */
 object MainFXController:
   private val cluster: AkkaCluster = AkkaCluster(ConfigFactory.load("cluster"))
-  extension (g: GraphicsContext)
-    /**
-     * Draws the shape of the specified drawable in this graphic context.
-     * @param s the specified drawable
-     * @tparam S the type of the shape of the specified drawable
-     */
-    def draw[S <: Shape](d: Drawable[S]): Unit = g.draw(d.shape)
-    /**
-     * Draws the specified shape in this graphic context.
-     * @param s the specified shape
-     * @tparam S the type of the specified shape
-     */
-    def draw[S <: Shape](s: S): Unit = s match
-      case r: Rectangle =>
-        g.fillRect(r.position.x, r.position.y, r.width, r.height)
-        g.strokeRect(r.position.x, r.position.y, r.width, r.height)
-      case c: Circle =>
-        g.fillOval(c.position.x - c.radius, c.position.y - c.radius, c.diameter, c.diameter)
-        g.strokeOval(c.position.x - c.radius, c.position.y - c.radius, c.diameter, c.diameter)
-      case _ => throw Error(s"The canvas does not know how to draw the requested shape: $s")
-    /**
-     * Executes the specified paint procedure temporarily setting the specified colors in this graphic context.
-     * @param borderColor     the specified stroke color
-     * @param backgroundColor the specified fill color
-     * @param paint           the paint procedure to be executed
-     */
-    def colored(borderColor: Color = Color.BLACK, backgroundColor: Color = Color.BLACK)(paint: => Unit): Unit =
-      val (previousBorderColor, previousBackgroundColor) = (g.getStroke, g.getFill)
-      g.setStroke(borderColor)
-      g.setFill(backgroundColor)
-      paint
-      g.setStroke(previousBorderColor)
-      g.setFill(previousBackgroundColor)
-    /**
-     * Clears the canvas and executes the specified paint procedure.
-     * @param paint the specified paint procedure
-     */
-    def refresh(paint: => Unit): Unit =
-      g.clearRect(0, 0, g.getCanvas.getWidth, g.getCanvas.getHeight)
-      paint
\ No newline at end of file
+  /** How far from the mouse the tooltips are shown. */
+  private val TOOLTIP_OFFSET_PX: Double = 12D
\ No newline at end of file
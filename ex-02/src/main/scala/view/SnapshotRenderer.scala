@@ -0,0 +1,122 @@
+package view
+
+import configuration.C.View.MAX_DIRTY_REGIONS
+import javafx.scene.SnapshotParameters
+import javafx.scene.canvas.{Canvas, GraphicsContext}
+import javafx.scene.image.Image
+import javafx.scene.paint.Color
+import util.Point2D
+import view.SnapshotRenderer.*
+import view.View.*
+
+/**
+ * Model a renderer of the snapshots of a city on the specified canvas, which retains the last snapshot
+ * it has drawn and only redraws the regions of the entities that changed since then.
+ *
+ * The borders of the city and of its zones never change, so they are drawn once into a static layer,
+ * which is copied into each redrawn region. The entities inside a redrawn region are found through the
+ * grid of the snapshot, and each kind of entity is drawn grouped by color, so that the colors of the
+ * canvas are set once for each group instead of once for each entity.
+ *
+ * @param canvas the specified canvas
+ */
+class SnapshotRenderer(canvas: Canvas):
+  private val painter: GraphicsContext = canvas.getGraphicsContext2D
+  private var drawn: Option[SnapshotView] = None
+  private var staticLayer: Option[Image] = None
+
+  /**
+   * Draws the specified snapshot, redrawing only the regions of the entities that changed since the last
+   * snapshot drawn. If the layout of the city changed, the whole snapshot is drawn again.
+   * Must be called by the JavaFX application thread.
+   * @param snapshot the specified snapshot
+   */
+  def render(snapshot: SnapshotView): Unit =
+    val dirtyRegions: Option[Seq[Rectangle]] = this.drawn.filter(sameLayout(_, snapshot)).map(previous =>
+      snapshot.toList.filter(entity => previous.searchById(entity.id).forall(changed(_, entity))).map(_.shape.bounds.expanded(BORDER_PX))
+    )
+    dirtyRegions match
+      case Some(regions) if regions.size <= MAX_DIRTY_REGIONS => this.redraw(snapshot, regions)
+      case Some(_) => this.redraw(snapshot, Seq(Rectangle(Point2D(0, 0), canvas.getWidth, canvas.getHeight)))
+      case None =>
+        this.layout(snapshot)
+        this.redraw(snapshot, Seq(Rectangle(Point2D(0, 0), canvas.getWidth, canvas.getHeight)))
+    this.drawn = Some(snapshot)
+
+  /** Draws the static layer of the specified snapshot. */
+  private def layout(snapshot: SnapshotView): Unit =
+    val layer: Canvas = Canvas(canvas.getWidth, canvas.getHeight)
+    val layerPainter: GraphicsContext = layer.getGraphicsContext2D
+    (Seq(snapshot.cityView) ++ snapshot.zoneViews.values).groupBy(_.borderColor).foreach((color, entities) => {
+      layerPainter.setStroke(color)
+      entities.foreach(entity => layerPainter.strokeShape(entity.shape))
+    })
+    val parameters: SnapshotParameters = SnapshotParameters()
+    parameters.setFill(Color.TRANSPARENT)
+    this.staticLayer = Some(layer.snapshot(parameters, null))
+
+  /** Clears the specified regions of the canvas and draws the entities of the specified snapshot inside them. */
+  private def redraw(snapshot: SnapshotView, regions: Seq[Rectangle]): Unit =
+    if regions.nonEmpty then
+      val entities: Seq[Drawable[?]] = regions.flatMap(r => snapshot.searchWithin(r.expanded(BORDER_PX))).distinctBy(_.id)
+      val zones: Seq[Drawable[?]] = entities.collect { case zone: ZoneView => zone }
+      painter.save()
+      painter.beginPath()
+      regions.foreach(r => painter.rect(r.position.x, r.position.y, r.width, r.height))
+      painter.clip()
+      regions.foreach(r => painter.clearRect(r.position.x, r.position.y, r.width, r.height))
+      zones.groupBy(_.color).foreach((color, zones) => {
+        painter.setFill(color)
+        zones.foreach(zone => painter.fillShape(zone.shape))
+      })
+      this.staticLayer.foreach(painter.drawImage(_, 0, 0))
+      Seq(
+        entities.collect { case pluviometer: PluviometerView => pluviometer },
+        entities.collect { case fireStation: FireStationView => fireStation }
+      ).foreach(layer => {
+        layer.groupBy(_.color).foreach((color, entities) => {
+          painter.setFill(color)
+          entities.foreach(entity => painter.fillShape(entity.shape))
+        })
+        layer.groupBy(_.borderColor).foreach((color, entities) => {
+          painter.setStroke(color)
+          entities.foreach(entity => painter.strokeShape(entity.shape))
+        })
+      })
+      painter.restore()
+
+/**
+ * Companion object of [[SnapshotRenderer]].
+ */
+object SnapshotRenderer:
+  /** How much the borders of the entities extend outside of their shapes. */
+  private val BORDER_PX: Double = 1D
+
+  /** @return true if the specified snapshots show the same entities in the same positions, false otherwise. */
+  private def sameLayout(previous: SnapshotView, current: SnapshotView): Boolean =
+    previous.cityView == current.cityView &&
+    previous.zoneViews.size == current.zoneViews.size &&
+    previous.pluviometerViews.size == current.pluviometerViews.size &&
+    previous.fireStationViews.size == current.fireStationViews.size
+
+  /** @return true if the specified entities are drawn differently, false otherwise. */
+  private def changed(previous: Drawable[?], current: Drawable[?]): Boolean =
+    previous.color != current.color || previous.borderColor != current.borderColor || previous.shape != current.shape
+
+  extension (g: GraphicsContext)
+    /**
+     * Fills the specified shape in this graphic context.
+     * @param s the specified shape
+     */
+    private def fillShape(s: Shape): Unit = s match
+      case r: Rectangle => g.fillRect(r.position.x, r.position.y, r.width, r.height)
+      case c: Circle => g.fillOval(c.position.x - c.radius, c.position.y - c.radius, c.diameter, c.diameter)
+      case _ => throw Error(s"The canvas does not know how to draw the requested shape: $s")
+    /**
+     * Strokes the border of the specified shape in this graphic context.
+     * @param s the specified shape
+     */
+    private def strokeShape(s: Shape): Unit = s match
+      case r: Rectangle => g.strokeRect(r.position.x, r.position.y, r.width, r.height)
+      case c: Circle => g.strokeOval(c.position.x - c.radius, c.position.y - c.radius, c.diameter, c.diameter)
+      case _ => throw Error(s"The canvas does not know how to draw the requested shape: $s")
\ No newline at end of file
@@ -0,0 +1,49 @@
+package view
+
+import configuration.C.View.GRID_CELL_PX
+import util.Point2D
+import view.View.*
+
+import scala.collection.mutable
+
+/**
+ * Model a uniform grid over a view space, which indexes the specified drawables by the cells overlapped
+ * by their bounds, so that the drawables at a point or inside a rectangle can be found without scanning
+ * all of them. The drawables are kept in the order they are drawn, so that the later drawables are the
+ * ones on top.
+ * @param drawables the specified drawables, in the order they are drawn
+ * @param cellSize  the size of the cells of this grid
+ */
+class SpatialGrid(drawables: Seq[Drawable[?]], cellSize: Double = GRID_CELL_PX):
+  private val entries: IndexedSeq[Drawable[?]] = drawables.toIndexedSeq
+  /** A map from the cells of this grid to the positions in draw order of the drawables overlapping them, ascending. */
+  private val cells: Map[(Int, Int), Array[Int]] =
+    val cells: mutable.HashMap[(Int, Int), mutable.ArrayBuilder[Int]] = mutable.HashMap()
+    this.entries.indices.foreach(i => this.cellsOf(this.entries(i).shape.bounds).foreach(cell =>
+      cells.getOrElseUpdate(cell, mutable.ArrayBuilder.make[Int]).addOne(i)
+    ))
+    cells.view.mapValues(_.result()).toMap
+
+  /**
+   * @param p the specified point
+   * @return the drawables whose shapes contain the specified point, from the one on top
+   */
+  def at(p: Point2D): Seq[Drawable[?]] =
+    this.cells.get(this.cellOf(p)).toSeq.flatMap(_.reverseIterator.map(this.entries).filter(_.shape.contains(p)))
+  /**
+   * @param p the specified point
+   * @return an optional of the drawable on top among the ones whose shapes contain the specified point
+   */
+  def pick(p: Point2D): Option[Drawable[?]] = this.at(p).headOption
+  /**
+   * @param r the specified rectangle
+   * @return the drawables whose bounds intersect the specified rectangle, in the order they are drawn
+   */
+  def within(r: Rectangle): Seq[Drawable[?]] =
+    this.cellsOf(r).flatMap(this.cells.get).flatten.toSeq.distinct.sorted.map(this.entries).filter(_.shape.bounds.intersects(r))
+
+  private def cellOf(p: Point2D): (Int, Int) = (Math.floor(p.x / cellSize).toInt, Math.floor(p.y / cellSize).toInt)
+  private def cellsOf(r: Rectangle): Iterator[(Int, Int)] =
+    val (left, top) = this.cellOf(r.position)
+    val (right, bottom) = this.cellOf(r.position.translate(r.width, r.height))
+    for x <- Iterator.range(left, right + 1); y <- Iterator.range(top, bottom + 1) yield (x, y)
\ No newline at end of file
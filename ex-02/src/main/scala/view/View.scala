@@ -10,9 +10,13 @@ import configuration.C.Log.pretty
 import configuration.C.View.*
 import javafx.scene.canvas.Canvas
 import javafx.scene.paint.Color
+import util.Id.EntityId
 import util.{Id, Point2D}
 import view.View.*
 
+import scala.collection.immutable.LongMap
+import scala.collection.mutable
+
 /**
  * Model the view of this application.
  */
@@ -90,6 +94,8 @@ object View:
      * @return true if this shape contains the specified point.
      */
     def contains(p: Point2D): Boolean
+    /** @return the smallest rectangle containing this shape. */
+    def bounds: Rectangle
 
   /**
    * Model a view representing the data of a city.
@@ -144,25 +150,56 @@ object View:
     override def toString: String =
       s"Zone:\n  id: ${z.id}\n  position: ${z.position}\n  width: ${z.width.pretty}\n  height: ${z.height.pretty}\n  state: ${State.fromOrdinal(z.state)}"
 
+  /**
+   * Model a cache of the shapes of the entities of a city inside a view space, so that the shapes of the
+   * entities that did not move are not mapped again for each snapshot shown in the same view space.
+   */
+  class ShapeCache:
+    private var spaces: Option[(Size2D, Size2D)] = None
+    private val shapes: mutable.HashMap[(EntityId, Point2D), Shape] = mutable.HashMap()
+
+    /**
+     * @param view     the specified view space
+     * @param logic    the specified logic space
+     * @param id       the identifier of the specified entity
+     * @param position the position of the specified entity inside the logic space
+     * @param shape    the shape of the specified entity inside the view space, computed if not cached
+     * @tparam S the type of the shape
+     * @return the shape of the specified entity inside the view space
+     */
+    def shapeOf[S <: Shape](view: Size2D, logic: Size2D, id: EntityId, position: Point2D)(shape: => S): S =
+      if !this.spaces.contains((view, logic)) then
+        this.shapes.clear()
+        this.spaces = Some((view, logic))
+      this.shapes.getOrElseUpdate((id, position), shape).asInstanceOf[S]
+
   /**
    * Model the view representing the data of a snapshot of the system.
    * @param snapshot the snapshot of the system
    * @param canvas   the canvas where this snapshot will be shown
+   * @param shapes   the cache of the shapes of the entities shown on the canvas
    */
-  case class SnapshotView(private val snapshot: Snapshot, private val canvas: Canvas):
+  case class SnapshotView(private val snapshot: Snapshot, private val canvas: Canvas, private val shapes: ShapeCache = ShapeCache()):
+    private def shapeOf[S <: Shape](id: EntityId, position: Point2D)(shape: => S): S =
+      this.shapes.shapeOf(canvas, snapshot.cityData, id, position)(shape)
     val cityView: CityView = CityView(snapshot.cityData, mapToView(canvas)(snapshot.cityData)(
       Rectangle(snapshot.cityData.position, snapshot.cityData.width, snapshot.cityData.height)
     ))
-    val pluviometerViews: Map[String, PluviometerView] = snapshot.pluviometerDatas.transform((_,p) =>
-      PluviometerView(p, Circle(mapToView(canvas)(snapshot.cityData)(p.position), ENTITY_RADIUS_PX))
+    val pluviometerViews: LongMap[PluviometerView] = snapshot.pluviometerDatas.transform((id,p) =>
+      PluviometerView(p, shapeOf(id, p.position)(Circle(mapToView(canvas)(snapshot.cityData)(p.position), ENTITY_RADIUS_PX)))
     )
-    val fireStationViews: Map[String, FireStationView] = snapshot.fireStationDatas.transform((_,f) =>
-      FireStationView(f, Circle(mapToView(canvas)(snapshot.cityData)(f.position), ENTITY_RADIUS_PX))
+    val fireStationViews: LongMap[FireStationView] = snapshot.fireStationDatas.transform((id,f) =>
+      FireStationView(f, shapeOf(id, f.position)(Circle(mapToView(canvas)(snapshot.cityData)(f.position), ENTITY_RADIUS_PX)))
     )
-    val zoneViews: Map[String, ZoneView] = snapshot.zoneDatas.transform((_,z) =>
-      ZoneView(z, mapToView(canvas)(snapshot.cityData)(Rectangle(z.position, z.width, z.height)))
+    val zoneViews: LongMap[ZoneView] = snapshot.zoneDatas.transform((id,z) =>
+      ZoneView(z, shapeOf(id, z.position)(mapToView(canvas)(snapshot.cityData)(Rectangle(z.position, z.width, z.height))))
     )
 
+    /** A map from the identifiers to the entities of this snapshot. */
+    private lazy val entities: LongMap[Drawable[_]] = LongMap.from(this.toList.map(entity => (entity.id, entity)))
+    /** A grid over the canvas indexing the entities of this snapshot, in the order they are drawn. */
+    private lazy val grid: SpatialGrid = SpatialGrid(this.toList)
+
     /** @return a list of the entities of this snapshot. */
     def toList: List[Drawable[_]] =
       List[Drawable[_]](cityView) ::: zoneViews.values.toList ::: pluviometerViews.values.toList ::: fireStationViews.values.toList
@@ -175,7 +212,17 @@ object View:
      * @param id the specified id
      * @return an optional of the entity of this snapshot with the specified id
      */
-    def searchById(id: String): Option[Drawable[_]] = this.toList.find(_.id == id)
+    def searchById(id: EntityId): Option[Drawable[_]] = this.entities.get(id)
+    /**
+     * @param p the specified point of the canvas
+     * @return an optional of the entity of this snapshot drawn on top at the specified point
+     */
+    def pick(p: Point2D): Option[Drawable[_]] = this.grid.pick(p)
+    /**
+     * @param r the specified rectangle of the canvas
+     * @return the entities of this snapshot intersecting the specified rectangle, in the order they are drawn
+     */
+    def searchWithin(r: Rectangle): Seq[Drawable[_]] = this.grid.within(r)
 
   /**
    * Model a circle.
@@ -187,6 +234,7 @@ object View:
     def diameter: Double = this._diameter
     override def position: Point2D = this.center
     override def contains(p: Point2D): Boolean = this.center.distance(p) <= radius
+    override def bounds: Rectangle = Rectangle(this.center.translate(-radius, -radius), this.diameter, this.diameter)
   /**
    * Model a rectangle.
    * @param topLeft the top-left corner of this rectangle
@@ -197,4 +245,18 @@ object View:
     override def position: Point2D = this.topLeft
     override def contains(p: Point2D): Boolean =
       p.x >= this.topLeft.x && p.x <= this.topLeft.x + this.width &&
-      p.y >= this.topLeft.y && p.y <= this.topLeft.y + this.height
\ No newline at end of file
+      p.y >= this.topLeft.y && p.y <= this.topLeft.y + this.height
+    override def bounds: Rectangle = this
+    /**
+     * @param r the specified rectangle
+     * @return true if this rectangle and the specified rectangle share at least a point, false otherwise
+     */
+    def intersects(r: Rectangle): Boolean =
+      this.topLeft.x <= r.position.x + r.width && r.position.x <= this.topLeft.x + this.width &&
+      this.topLeft.y <= r.position.y + r.height && r.position.y <= this.topLeft.y + this.height
+    /**
+     * @param margin the specified margin
+     * @return the rectangle result of the expansion of this rectangle by the specified margin on each side
+     */
+    def expanded(margin: Double): Rectangle =
+      Rectangle(this.topLeft.translate(-margin, -margin), this.width + 2 * margin, this.height + 2 * margin)
\ No newline at end of file
@@ -0,0 +1,68 @@
+package actor
+
+import actor.CityActor.*
+import actor.ZoneActor.Zone.State
+import akka.actor.testkit.typed.scaladsl.ActorTestKit
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.funspec.AnyFunSpec
+
+import scala.collection.immutable.LongMap
+
+/**
+ * Model a test for the districts of a city.
+ */
+class DistrictTest extends AnyFunSpec with BeforeAndAfterAll {
+    private val testKit: ActorTestKit = ActorTestKit()
+
+    override def afterAll(): Unit = testKit.shutdownTestKit()
+
+    describe("The districts of a city") {
+        val city: City = City()
+        it("should contain all the zones of the city, each inside its district") {
+            val districts = CityActor.districtsOf(city, 32, 5)
+            assert(districts.size == 5)
+            assert(districts.map(_._2.size).sum == 32)
+            assert(districts.map(_._2.size).forall(size => size == 6 || size == 7))
+            districts.foreach((district, zones) => zones.foreach(zone => assert(district.contains(zone.data.center))))
+        }
+        it("should be at most one for each zone") {
+            assert(CityActor.districtsOf(city, 3, 5).map(_._2.size) == List(1, 1, 1))
+        }
+        it("should be a single district covering the whole city if not requested") {
+            val districts = CityActor.districtsOf(city, 6, 0)
+            assert(districts.size == 1)
+            assert(districts.head._2.size == 6)
+        }
+    }
+
+    describe("A district actor") {
+        val randomSnapshot: Snapshot = Snapshot.random
+        val zone = randomSnapshot.zoneDatas.values.head.copy(state = State.Calm.ordinal)
+        val snapshot: Snapshot = randomSnapshot.updated(SnapshotDelta(randomSnapshot.version, zoneDatas = LongMap(zone.id -> zone)))
+        val fireStation = snapshot.fireStationDatas.values.head
+        it("should send the coalesced changes of its entities to the city when a snapshot is due") {
+            val city = testKit.createTestProbe[CityActor.Message]()
+            val district = testKit.spawn(DistrictActor(city.ref, CityActorCollection(), snapshot))
+            val monitored = zone.copy(state = State.Monitored.ordinal)
+            district ! NotifyZoneState(zone.copy(state = State.Alarmed.ordinal))
+            district ! NotifyZoneState(monitored)
+            district ! NotifyFireStationState(fireStation)
+            district ! DistrictActor.RequestSegment(1)
+            city.expectNoMessage()
+            district ! DistrictActor.RequestSegment(0)
+            city.expectMessage(NotifyDistrictChanges(SnapshotDelta(snapshot.version, zoneDatas = LongMap(zone.id -> monitored))))
+            district ! NotifyZoneState(monitored)
+            district ! DistrictActor.RequestSegment(0)
+            city.expectMessage(NotifyDistrictChanges(SnapshotDelta(snapshot.version + 1)))
+        }
+        it("should forward the requests of its entities to the city") {
+            val city = testKit.createTestProbe[CityActor.Message]()
+            val district = testKit.spawn(DistrictActor(city.ref, CityActorCollection(), snapshot))
+            val zoneRef = testKit.createTestProbe[ZoneActor.Message]().ref
+            district ! RequestDispatch(zone.id, zoneRef)
+            city.expectMessage(RequestDispatch(zone.id, zoneRef))
+            district ! RequestInitialization(zone.id)
+            city.expectMessage(RequestInitialization(zone.id))
+        }
+    }
+}
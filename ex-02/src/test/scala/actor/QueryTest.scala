@@ -0,0 +1,195 @@
+package actor
+
+import actor.CityActor.{RequestSnapshot, Snapshot, SnapshotDelta}
+import actor.FireStationActor.FireStation
+import actor.QueryActor.*
+import actor.QueryActor.Query.{AlarmedZones, AvailableFireStations}
+import actor.ViewActor.{ReceiveSnapshot, ReceiveSnapshotDelta}
+import actor.ZoneActor.Zone
+import akka.actor.testkit.typed.scaladsl.{ActorTestKit, TestProbe}
+import akka.actor.typed.ActorRef
+import akka.actor.typed.pubsub.Topic
+import akka.actor.typed.receptionist.Receptionist
+import akka.actor.typed.scaladsl.Behaviors
+import configuration.C.Query.QUERY_TIMEOUT
+import org.scalatest.funspec.AnyFunSpec
+import util.{Id, Point2D}
+
+import java.util.concurrent.atomic.AtomicInteger
+import scala.collection.immutable.LongMap
+import scala.concurrent.duration.DurationInt
+
+/**
+ * Model a test for the queries about the entities of a city.
+ */
+class QueryTest extends AnyFunSpec {
+    describe("A query") {
+        it("should find the zones under alarm") {
+            val snapshot = snapshotWithAlarms(2)
+            assert(AlarmedZones.evaluate(snapshot).toSet == snapshot.zoneDatas.values.take(2).toSet)
+            assert(AlarmedZones.evaluate(snapshotWithAlarms(0)).isEmpty)
+        }
+        it("should find the available fire-stations within a distance from a point") {
+            val random = Snapshot.random
+            val fireStations = random.fireStationDatas.values.toList.zipWithIndex.map((fireStation, index) =>
+                fireStation.copy(state = (if index == 0 then FireStation.State.Available else FireStation.State.Busy).ordinal)
+            )
+            val snapshot = random.copy(fireStationDatas = LongMap.from(fireStations.map(fireStation => (fireStation.id, fireStation))))
+            val available = fireStations.head
+            val center: Point2D = snapshot.cityData.city.asZone.data.center
+            assert(AvailableFireStations(center, Double.PositiveInfinity).evaluate(snapshot) == List(available))
+            assert(AvailableFireStations(center, -1).evaluate(snapshot).isEmpty)
+            assert(AvailableFireStations(available.position, 0).evaluate(snapshot) == List(available))
+            assert(AvailableFireStations(fireStations(1).position, 0).evaluate(snapshot).forall(_ == available))
+        }
+    }
+
+    /** @return a random snapshot of a city where only the specified number of zones is under alarm. */
+    private def snapshotWithAlarms(alarmed: Int): Snapshot = {
+        val snapshot = Snapshot.random
+        val zones = snapshot.zoneDatas.values.toList.zipWithIndex.map((zone, index) =>
+            zone.copy(state = (if index < alarmed then Zone.State.Alarmed else Zone.State.Calm).ordinal)
+        )
+        snapshot.copy(zoneDatas = LongMap.from(zones.map(zone => (zone.id, zone))))
+    }
+    /** @return the zones under alarm in the specified snapshot, as found without the query service. */
+    private def alarmedIn(snapshot: Snapshot): Set[Id] =
+        snapshot.zoneDatas.values.filter(_.state == Zone.State.Alarmed.ordinal).toSet
+    /** @return a delta raising the alarm of the first calm zone of the specified snapshot. */
+    private def alarmDelta(snapshot: Snapshot): SnapshotDelta = {
+        val zone = snapshot.zoneDatas.values.find(_.state == Zone.State.Calm.ordinal).get
+        SnapshotDelta(snapshot.version, zoneDatas = LongMap(zone.id -> zone.copy(state = Zone.State.Alarmed.ordinal)))
+    }
+
+    /** Model a query counting how many times it has been evaluated. */
+    private class CountingQuery extends Query {
+        val evaluations: AtomicInteger = AtomicInteger()
+        override def evaluate(snapshot: Snapshot): List[Id] = { evaluations.incrementAndGet(); AlarmedZones.evaluate(snapshot) }
+    }
+
+    /** Model a fake city registered in the cluster, whose requests are received by a probe. */
+    private case class FakeCity(snapshot: Snapshot, requests: TestProbe[CityActor.Message]) {
+        def id: Long = snapshot.cityData.id
+        /** Answers the next request of a snapshot with the specified snapshot. */
+        def answer(snapshot: Snapshot = snapshot): Unit = requests.expectMessageType[RequestSnapshot].view ! ReceiveSnapshot(snapshot)
+    }
+
+    private def withQueryService(test: (ActorTestKit, ActorRef[QueryActor.Message]) => Unit): Unit = {
+        val testKit = ActorTestKit()
+        try test(testKit, testKit.spawn(QueryActor()))
+        finally testKit.shutdownTestKit()
+    }
+    private def spawnCity(testKit: ActorTestKit, snapshot: Snapshot): FakeCity = {
+        val requests = testKit.createTestProbe[CityActor.Message]()
+        testKit.spawn(Behaviors.setup[CityActor.Message] { context =>
+            context.system.receptionist ! Receptionist.Register(CityActor.Key, context.self)
+            Behaviors.monitor(requests.ref, Behaviors.ignore)
+        }, s"city-${Id.show(snapshot.cityData.id)}")
+        FakeCity(snapshot, requests)
+    }
+    /** Publishes the specified delta on the topic of the specified city, once the query service has subscribed to it. */
+    private def publish(testKit: ActorTestKit, city: FakeCity, delta: SnapshotDelta): Unit = {
+        val topic = SnapshotTopics(testKit.system).topicOf(city.id)
+        val stats = testKit.createTestProbe[Topic.TopicStats]()
+        stats.awaitAssert {
+            topic ! Topic.GetTopicStats(stats.ref)
+            assert(stats.receiveMessage().localSubscriberCount == 1)
+        }
+        topic ! Topic.Publish(ReceiveSnapshotDelta(delta))
+    }
+
+    describe("A query actor") {
+        it("should answer the queries from the snapshots of the cities") {
+            withQueryService { (testKit, queryService) =>
+                val city = spawnCity(testKit, snapshotWithAlarms(2))
+                city.answer()
+                val results = testKit.createTestProbe[QueryResult]()
+                queryService ! Ask(AlarmedZones, results.ref)
+                val result = results.receiveMessage()
+                assert(result.results.keySet == Set(city.id))
+                assert(result.results(city.id).toSet == alarmedIn(city.snapshot))
+                assert(result.missingCities.isEmpty)
+            }
+        }
+        it("should evaluate a query only once for each version of the snapshot of a city") {
+            withQueryService { (testKit, queryService) =>
+                val city = spawnCity(testKit, snapshotWithAlarms(1))
+                val query = CountingQuery()
+                val updates = testKit.createTestProbe[QueryUpdate]()
+                val results = testKit.createTestProbe[QueryResult]()
+                city.answer()
+                queryService ! Ask(query, results.ref)
+                results.receiveMessage()
+                queryService ! Ask(query, results.ref)
+                results.receiveMessage()
+                assert(query.evaluations.get == 1)
+                queryService ! Subscribe(AlarmedZones, updates.ref)
+                updates.receiveMessage()
+                publish(testKit, city, alarmDelta(city.snapshot))
+                assert(updates.receiveMessage().version == city.snapshot.version + 1)
+                queryService ! Ask(query, results.ref)
+                assert(results.receiveMessage().results(city.id).size == 2)
+                queryService ! Ask(query, results.ref)
+                results.receiveMessage()
+                assert(query.evaluations.get == 2)
+            }
+        }
+        it("should answer with the results it has if some cities do not send their snapshot in time") {
+            withQueryService { (testKit, queryService) =>
+                val city = spawnCity(testKit, snapshotWithAlarms(1))
+                val silentCity = spawnCity(testKit, snapshotWithAlarms(1))
+                city.answer()
+                silentCity.requests.expectMessageType[RequestSnapshot]
+                val results = testKit.createTestProbe[QueryResult]()
+                queryService ! Ask(AlarmedZones, results.ref)
+                results.expectNoMessage(QUERY_TIMEOUT - 1.second)
+                val result = results.receiveMessage(2.seconds)
+                assert(result.results.keySet == Set(city.id))
+                assert(result.missingCities == Set(silentCity.id))
+            }
+        }
+        it("should send the results of a subscribed query whenever they change, until unsubscribed") {
+            withQueryService { (testKit, queryService) =>
+                val city = spawnCity(testKit, snapshotWithAlarms(1))
+                city.answer()
+                val updates = testKit.createTestProbe[QueryUpdate]()
+                queryService ! Subscribe(AlarmedZones, updates.ref)
+                val first = updates.receiveMessage()
+                assert(first.cityId == city.id && first.results.toSet == alarmedIn(city.snapshot))
+                val delta = alarmDelta(city.snapshot)
+                publish(testKit, city, delta)
+                assert(updates.receiveMessage().results.toSet == alarmedIn(city.snapshot.updated(delta)))
+                val fireStation = city.snapshot.fireStationDatas.values.head
+                val unrelated = SnapshotDelta(delta.version, fireStationDatas = LongMap(fireStation.id -> fireStation.copy(state = 1 - fireStation.state)))
+                publish(testKit, city, unrelated)
+                updates.expectNoMessage()
+                queryService ! Unsubscribe(AlarmedZones, updates.ref)
+                publish(testKit, city, alarmDelta(city.snapshot.updated(delta).updated(unrelated)))
+                updates.expectNoMessage()
+            }
+        }
+        it("should catch up with the deltas of a city, requesting a full snapshot when it misses one") {
+            withQueryService { (testKit, queryService) =>
+                val city = spawnCity(testKit, snapshotWithAlarms(1))
+                city.answer()
+                val updates = testKit.createTestProbe[QueryUpdate]()
+                queryService ! Subscribe(AlarmedZones, updates.ref)
+                updates.receiveMessage()
+                val delta = alarmDelta(city.snapshot)
+                publish(testKit, city, delta)
+                assert(updates.receiveMessage().version == delta.version)
+                publish(testKit, city, delta)
+                updates.expectNoMessage()
+                city.requests.expectNoMessage()
+                val current = city.snapshot.updated(delta)
+                val missed = alarmDelta(current)
+                val next = alarmDelta(current.updated(missed))
+                publish(testKit, city, next)
+                city.answer(current.updated(missed).updated(next))
+                val update = updates.receiveMessage()
+                assert(update.version == next.version)
+                assert(update.results.toSet == alarmedIn(current.updated(missed).updated(next)))
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package actor
+
+import actor.CityActor.{Snapshot, SnapshotDelta}
+import actor.ZoneActor.Zone.State
+import org.scalatest.funspec.AnyFunSpec
+
+import scala.collection.immutable.LongMap
+
+/**
+ * Model a test for the snapshots of a city.
+ */
+class SnapshotTest extends AnyFunSpec {
+    describe("A snapshot") {
+        val snapshot: Snapshot = Snapshot.random
+        it("should find each of its entities by identifier") {
+            snapshot.toList.foreach(entity => assert(snapshot.searchById(entity.id).contains(entity)))
+            assert(snapshot.searchById(snapshot.cityData).contains(snapshot.cityData))
+            assert(snapshot.size == snapshot.toList.size)
+        }
+        it("should find nothing for an unknown identifier") {
+            assert(snapshot.searchById(-1).isEmpty)
+        }
+        it("should not be changed by the deltas applied to it") {
+            val zone = snapshot.zoneDatas.values.head
+            val changed = zone.copy(state = (zone.state + 1) % State.values.length)
+            val updated = snapshot.updated(SnapshotDelta(snapshot.version, zoneDatas = LongMap(zone.id -> changed)))
+            assert(updated.version == snapshot.version + 1)
+            assert(updated.searchById(zone.id).contains(changed))
+            assert(snapshot.searchById(zone.id).contains(zone))
+        }
+        it("should be rebuilt from its entities") {
+            assert(Snapshot.of(snapshot.toList, snapshot.version).contains(snapshot))
+            assert(Snapshot.of(snapshot.toList.tail, snapshot.version).isEmpty)
+        }
+    }
+
+    describe("A snapshot delta") {
+        val snapshot: Snapshot = Snapshot.random
+        val zone = snapshot.zoneDatas.values.head
+        val changed = zone.copy(state = (zone.state + 1) % State.values.length)
+        it("should only include the entities whose state changed") {
+            assert(SnapshotDelta(snapshot.version).including(zone, snapshot).isEmpty)
+            assert(SnapshotDelta(snapshot.version).including(changed, snapshot).zoneDatas == LongMap(zone.id -> changed))
+            assert(SnapshotDelta(snapshot.version).including(changed, snapshot).including(zone, snapshot).zoneDatas == LongMap(zone.id -> zone))
+        }
+        it("should be overridden by the following deltas") {
+            val merged = SnapshotDelta(snapshot.version, zoneDatas = LongMap(zone.id -> changed)) ++ SnapshotDelta(0, zoneDatas = LongMap(zone.id -> zone))
+            assert(merged.fromVersion == snapshot.version)
+            assert(merged.zoneDatas == LongMap(zone.id -> zone))
+        }
+    }
+}
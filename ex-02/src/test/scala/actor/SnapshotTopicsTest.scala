@@ -0,0 +1,39 @@
+package actor
+
+import akka.actor.testkit.typed.scaladsl.ActorTestKit
+import akka.actor.typed.pubsub.Topic
+import com.typesafe.config.ConfigFactory
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.funspec.AnyFunSpec
+import util.Id
+import view.MainFXController
+
+/**
+ * Model a test for the topics of the snapshots of the cities shared inside a node.
+ */
+class SnapshotTopicsTest extends AnyFunSpec with BeforeAndAfterAll {
+    private val testKit: ActorTestKit = ActorTestKit(ConfigFactory.parseString("akka.actor.provider = cluster").withFallback(ConfigFactory.load("cluster")))
+
+    override def afterAll(): Unit = testKit.shutdownTestKit()
+
+
+    describe("The snapshot topics of a node") {
+        it("should provide a single topic actor for each city") {
+            val (cityId, otherCityId) = (Id.newId, Id.newId)
+            val topics = SnapshotTopics(testKit.system)
+            assert(topics.topicOf(cityId) == topics.topicOf(cityId))
+            assert(topics.topicOf(cityId) != topics.topicOf(otherCityId))
+        }
+        it("should be shared by the views of the same city") {
+            val cityId = Id.newId
+            testKit.spawn(ViewActor(MainFXController(), cityId))
+            testKit.spawn(ViewActor(MainFXController(), cityId))
+            val topic = SnapshotTopics(testKit.system).topicOf(cityId)
+            val stats = testKit.createTestProbe[Topic.TopicStats]()
+            stats.awaitAssert {
+                topic ! Topic.GetTopicStats(stats.ref)
+                assert(stats.receiveMessage().localSubscriberCount == 2)
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package cluster.message
+
+import actor.FireStationActor.Alert
+import actor.PluviometerActor.Rain
+import actor.ZoneActor
+import actor.ZoneActor.DepartureRequest
+import akka.actor.testkit.typed.scaladsl.ActorTestKit
+import akka.serialization.{SerializationExtension, Serializers}
+import com.typesafe.config.ConfigFactory
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.funspec.AnyFunSpec
+
+import scala.concurrent.duration.DurationInt
+
+/**
+ * Model a test for the Jackson module of the case classes.
+ */
+class CaseClassModuleTest extends AnyFunSpec with BeforeAndAfterAll {
+    private val testKit: ActorTestKit = ActorTestKit(
+        ConfigFactory.parseString("akka.actor.provider = local").withFallback(ConfigFactory.load("cluster"))
+    )
+
+    override def afterAll(): Unit = testKit.shutdownTestKit()
+
+    describe("The Jackson serializer of the messages") {
+        it("should deserialize the messages with a single field into equal messages") {
+            val serialization = SerializationExtension(testKit.system)
+            val messages: List[AnyRef] = List(
+                Alert(testKit.createTestProbe[ZoneActor.Message]().ref),
+                DepartureRequest(testKit.system.deadLetters),
+                Rain(1, 3.seconds)
+            )
+            messages.foreach(message => {
+                val serializer = serialization.findSerializerFor(message)
+                val bytes = serialization.serialize(message).get
+                assert(serialization.deserialize(bytes, serializer.identifier, Serializers.manifestFor(serializer, message)).get == message)
+            })
+        }
+    }
+}
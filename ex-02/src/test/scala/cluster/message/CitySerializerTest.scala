@@ -0,0 +1,84 @@
+package cluster.message
+
+import actor.CityActor.*
+import actor.FireStationActor.FireStationData
+import actor.PluviometerActor.{FrameAck, PluviometerData, Reading}
+import actor.ViewActor.{DisableAlarm, ReceiveSnapshot, ReceiveSnapshotDelta}
+import actor.ZoneActor.{QueryRainfall, RainfallReport, Signal, SignalFrame}
+import actor.{PluviometerActor, ViewActor, ZoneActor}
+import akka.actor.ExtendedActorSystem
+import akka.actor.testkit.typed.scaladsl.ActorTestKit
+import akka.actor.typed.scaladsl.adapter.*
+import akka.cluster.sharding.typed.ShardingEnvelope
+import akka.serialization.{SerializationExtension, Serializers}
+import com.typesafe.config.ConfigFactory
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.funspec.AnyFunSpec
+import timeseries.{Aggregate, Resolution}
+import util.Id
+
+import java.nio.{ByteBuffer, ByteOrder}
+
+/**
+ * Model a test for the city serializer.
+ */
+class CitySerializerTest extends AnyFunSpec with BeforeAndAfterAll {
+    private val testKit: ActorTestKit = ActorTestKit(
+        ConfigFactory.parseString("akka.actor.provider = local").withFallback(ConfigFactory.load("cluster"))
+    )
+    private val serializer: CitySerializer = CitySerializer(testKit.system.toClassic.asInstanceOf[ExtendedActorSystem])
+    private val snapshot: Snapshot = Snapshot.random
+
+    override def afterAll(): Unit = testKit.shutdownTestKit()
+
+    private def roundTrip(message: AnyRef): AnyRef = serializer.fromBinary(serializer.toBinary(message), serializer.manifest(message))
+
+    describe("A city serializer") {
+        it("should be bound to the binary serializable messages") {
+            val serialization = SerializationExtension(testKit.system)
+            assert(serialization.findSerializerFor(RequestInitialization(Id.newId)).identifier == serializer.identifier)
+            assert(serialization.findSerializerFor(ReceiveSnapshot(snapshot)).identifier == serializer.identifier)
+        }
+        describe("when serializing a message") {
+            it("should deserialize it into an equal message") {
+                val messages: List[AnyRef] = List(
+                    NotifyPluviometerState(snapshot.pluviometerDatas.values.head),
+                    NotifyFireStationState(snapshot.fireStationDatas.values.head),
+                    NotifyZoneState(snapshot.zoneDatas.values.head),
+                    RequestSnapshot(testKit.createTestProbe[ViewActor.Message]().ref),
+                    RequestInitialization(Id.newId),
+                    RequestDispatch(Id.newId, testKit.createTestProbe[ZoneActor.Message]().ref),
+                    ReceiveSnapshot(snapshot),
+                    ReceiveSnapshotDelta(SnapshotDelta(7, zoneDatas = snapshot.zoneDatas, timestamp = System.currentTimeMillis())),
+                    DisableAlarm(Id.newId),
+                    Signal(Id.newId, Reading(0.5, true, System.currentTimeMillis())),
+                    FrameAck(42),
+                    ZoneActor.Initialize(snapshot.zoneDatas.values.head, snapshot.pluviometerDatas.keys.toList, List(Id.newId)),
+                    ZoneActor.TakeSnapshot(testKit.createTestProbe[Message]().ref),
+                    SignalFrame(testKit.createTestProbe[PluviometerActor.Message]().ref, Id.newId, 3, List(Reading(0.1, false, 1), Reading(0.9, true, 2))),
+                    QueryRainfall(0, 60000, Resolution.Minute, testKit.createTestProbe[RainfallReport]().ref),
+                    RainfallReport(Id.newId, Resolution.Hour, List(Aggregate(0, 2, 1.5, 0.5, 1), Aggregate(3600000, 1, 0.2, 0.2, 0.2)))
+                )
+                messages.foreach(message => assert(roundTrip(message) == message))
+            }
+            it("should write the identifiers as fixed-width numbers") {
+                assert(serializer.toBinary(RequestInitialization(Id.newId)).length == java.lang.Long.BYTES)
+                assert(serializer.toBinary(RequestInitialization(Long.MaxValue)).length == java.lang.Long.BYTES)
+            }
+            it("should write the same bytes into the buffers of the transport") {
+                val message = ReceiveSnapshot(snapshot)
+                val buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN)
+                serializer.toBinary(message, buffer)
+                buffer.flip()
+                assert(serializer.fromBinary(buffer, serializer.manifest(message)) == message)
+            }
+            it("should deserialize the messages wrapped in the envelopes of the sharded entities") {
+                val serialization = SerializationExtension(testKit.system)
+                val envelope = ShardingEnvelope(Id.show(Id.newId), ZoneActor.TakeSnapshot(testKit.createTestProbe[Message]().ref))
+                val envelopeSerializer = serialization.findSerializerFor(envelope)
+                val bytes = serialization.serialize(envelope).get
+                assert(serialization.deserialize(bytes, envelopeSerializer.identifier, Serializers.manifestFor(envelopeSerializer, envelope)).get == envelope)
+            }
+        }
+    }
+}
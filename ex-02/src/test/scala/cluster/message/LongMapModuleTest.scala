@@ -0,0 +1,32 @@
+package cluster.message
+
+import actor.CityActor.{Snapshot, SnapshotDelta}
+import akka.actor.testkit.typed.scaladsl.ActorTestKit
+import akka.serialization.{SerializationExtension, Serializers}
+import com.typesafe.config.ConfigFactory
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.funspec.AnyFunSpec
+
+/**
+ * Model a test for the Jackson module of the maps keyed by the identifiers of the entities.
+ */
+class LongMapModuleTest extends AnyFunSpec with BeforeAndAfterAll {
+    private val testKit: ActorTestKit = ActorTestKit(
+        ConfigFactory.parseString("akka.actor.provider = local").withFallback(ConfigFactory.load("cluster"))
+    )
+
+    override def afterAll(): Unit = testKit.shutdownTestKit()
+
+    describe("The Jackson serializer of the messages") {
+        it("should deserialize the maps keyed by the identifiers of the entities into equal maps") {
+            val serialization = SerializationExtension(testKit.system)
+            val snapshot = Snapshot.random
+            val messages: List[AnyRef] = List(snapshot, SnapshotDelta(snapshot.version, zoneDatas = snapshot.zoneDatas), SnapshotDelta(0))
+            messages.foreach(message => {
+                val serializer = serialization.findSerializerFor(message)
+                val bytes = serialization.serialize(message).get
+                assert(serialization.deserialize(bytes, serializer.identifier, Serializers.manifestFor(serializer, message)).get == message)
+            })
+        }
+    }
+}
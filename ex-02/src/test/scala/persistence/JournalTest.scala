@@ -0,0 +1,231 @@
+package persistence
+
+import akka.actor.testkit.typed.scaladsl.ActorTestKit
+import akka.actor.typed.ActorRef
+import akka.actor.typed.scaladsl.Behaviors
+import configuration.C.Cluster.ENTITY_STASH_CAPACITY
+import org.scalatest.funspec.AnyFunSpec
+import persistence.SnapshotCodec.*
+
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption.{READ, WRITE}
+import java.nio.file.{Files, Path}
+import scala.concurrent.duration.DurationInt
+import scala.concurrent.{Await, Promise}
+import scala.jdk.CollectionConverters.*
+import scala.util.{Try, Using}
+
+/**
+ * Model a test for the journal and the event logs of the entities.
+ */
+class JournalTest extends AnyFunSpec {
+    private val SegmentSize: Int = 4 * 1024
+
+    private given SnapshotCodec[StateChanged] with {
+        override def encode(state: StateChanged): Array[Byte] = state.encode
+        override def decode(bytes: Array[Byte]): StateChanged = StateChanged.decode(bytes)
+        override def applied(state: StateChanged, event: StateChanged): StateChanged = event
+    }
+
+    private def withJournal(test: (Path, () => Journal) => Unit): Unit = {
+        val directory: Path = Files.createTempDirectory("journal")
+        try test(directory, () => Journal(directory, SegmentSize, 1.millis))
+        finally Using.resource(Files.walk(directory))(_.iterator.asScala.toList.reverse.foreach(Files.delete))
+    }
+    private def segmentsIn(directory: Path): List[Path] =
+        Using.resource(Files.list(directory))(_.iterator.asScala.filter(_.getFileName.toString.startsWith("segment-")).toList)
+
+    describe("A journal") {
+        it("should complete the appends once they are flushed") {
+            withJournal { (_, open) =>
+                val journal = open()
+                Await.result(journal.appendSnapshot("a", Array(1)), 5.seconds)
+                journal.close()
+            }
+        }
+        it("should recover the records of the entities when it is opened again") {
+            withJournal { (_, open) =>
+                val journal = open()
+                journal.appendSnapshot("a", Array(1))
+                journal.appendEvent("a", Array(2))
+                journal.appendSnapshot("b", Array(3))
+                journal.close()
+                val recovered = open()
+                assert(recovered.read("a").map(log => (log.snapshot.map(_.toList), log.events.map(_.toList)))
+                    .contains((Some(List[Byte](1)), Vector(List[Byte](2)))))
+                assert(recovered.read("b").flatMap(_.snapshot).map(_.toList).contains(List[Byte](3)))
+                assert(recovered.read("c").isEmpty)
+                recovered.close()
+            }
+        }
+        it("should only keep the events following the last snapshot of an entity") {
+            withJournal { (_, open) =>
+                val journal = open()
+                journal.appendEvent("a", Array(1))
+                journal.appendSnapshot("a", Array(2))
+                journal.appendEvent("a", Array(3))
+                assert(journal.read("a").map(_.events.map(_.toList)).contains(Vector(List[Byte](3))))
+                journal.close()
+            }
+        }
+        it("should compact the older segments when they outgrow the records of the entities") {
+            withJournal { (directory, open) =>
+                val journal = open()
+                (0 until 1000).foreach(i => journal.appendSnapshot(s"entity-${i % 3}", Array.fill(16)(i.toByte)))
+                journal.close()
+                assert(segmentsIn(directory).size <= 2)
+                val recovered = open()
+                assert(recovered.read("entity-0").flatMap(_.snapshot).map(_.head).contains(999.toByte))
+                assert(recovered.read("entity-2").flatMap(_.snapshot).map(_.head).contains(998.toByte))
+                recovered.close()
+            }
+        }
+        it("should compact the records of the entities into more segments if they do not fit in one") {
+            withJournal { (directory, open) =>
+                val journal = open()
+                val entities = (0 until 200).map(i => s"entity-$i")
+                (0 until 5).foreach(round => entities.foreach(entity =>
+                    journal.appendSnapshot(entity, Array.fill(32)(round.toByte))
+                ))
+                Await.result(journal.appendEvent("entity-0", Array(9)), 5.seconds)
+                journal.close()
+                assert(segmentsIn(directory).size > 2)
+                val recovered = open()
+                entities.foreach(entity => assert(recovered.read(entity).flatMap(_.snapshot).map(_.head).contains(4.toByte)))
+                assert(recovered.read("entity-0").map(_.events.map(_.toList)).contains(Vector(List[Byte](9))))
+                recovered.close()
+            }
+        }
+        it("should forget the records of an entity once they are deleted") {
+            withJournal { (_, open) =>
+                val journal = open()
+                journal.appendSnapshot("a", Array(1))
+                journal.appendSnapshot("b", Array(2))
+                Await.result(journal.delete("a"), 5.seconds)
+                assert(journal.read("a").isEmpty)
+                journal.close()
+                val recovered = open()
+                assert(recovered.read("a").isEmpty)
+                assert(recovered.read("b").flatMap(_.snapshot).map(_.toList).contains(List[Byte](2)))
+                recovered.close()
+            }
+        }
+        it("should drop the records of the entities it does not host anymore when it is compacted") {
+            withJournal { (directory, open) =>
+                val journal = open()
+                journal.appendSnapshot("stale", Array(1))
+                journal.appendSnapshot("hosted", Array(2))
+                journal.close()
+                val reopened = open()
+                assert(reopened.read("hosted").isDefined)
+                (0 until 1000).foreach(i => reopened.appendSnapshot("busy", Array.fill(16)(i.toByte)))
+                reopened.close()
+                assert(segmentsIn(directory).size <= 2)
+                val recovered = open()
+                assert(recovered.read("stale").isEmpty)
+                assert(recovered.read("hosted").flatMap(_.snapshot).map(_.toList).contains(List[Byte](2)))
+                assert(recovered.read("busy").flatMap(_.snapshot).map(_.head).contains(999.toByte))
+                recovered.close()
+            }
+        }
+        it("should discard the records corrupted by a crash") {
+            withJournal { (directory, open) =>
+                val journal = open()
+                journal.appendSnapshot("a", Array(1))
+                journal.appendEvent("a", Array(2))
+                journal.close()
+                Using.resource(FileChannel.open(segmentsIn(directory).head, READ, WRITE)) { channel =>
+                    val segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, SegmentSize)
+                    // the header of the segment takes 5 bytes and each record takes 13 bytes, so the payload of the event
+                    // is the last byte of the second record
+                    segment.put(30, 42.toByte)
+                    segment.force()
+                }
+                val recovered = open()
+                assert(recovered.read("a").map(_.events.isEmpty).contains(true))
+                recovered.appendEvent("a", Array(3))
+                recovered.close()
+                assert(open().read("a").map(_.events.map(_.toList)).contains(Vector(List[Byte](3))))
+            }
+        }
+        it("should delete the segments written in an older format when it is opened") {
+            withJournal { (directory, open) =>
+                val journal = open()
+                journal.appendSnapshot("a", Array(1))
+                journal.close()
+                Using.resource(FileChannel.open(segmentsIn(directory).head, READ, WRITE)) { channel =>
+                    val segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, SegmentSize)
+                    segment.put(4, 0.toByte)
+                    segment.force()
+                }
+                Files.write(directory.resolve(s"segment-${"9" * 20}.log"), Array[Byte](0, 0, 0, 5, 1, 2, 3, 4, 0, 1, 97, 0, 1))
+                val recovered = open()
+                assert(recovered.outdatedSegments == 2)
+                assert(recovered.read("a").isEmpty)
+                recovered.appendSnapshot("b", Array(2))
+                recovered.close()
+                assert(open().read("b").flatMap(_.snapshot).map(_.toList).contains(List[Byte](2)))
+            }
+        }
+    }
+
+    describe("An event log") {
+        it("should complete its records once they are flushed") {
+            withJournal { (_, open) =>
+                val journal = open()
+                val log = EventLog[StateChanged](journal, "a", snapshotPeriod = 2)
+                Await.result(log.snapshot(StateChanged(0, None)), 5.seconds)
+                Await.result(log.persist(StateChanged(1, None), StateChanged(1, None)), 5.seconds)
+                Await.result(log.persist(StateChanged(2, None), StateChanged(2, None)), 5.seconds)
+                journal.close()
+            }
+        }
+        it("should postpone the messages of an entity until its record is durable") {
+            case class Recorded(result: Try[Unit]) extends EventLog.Recorded
+            val testKit = ActorTestKit()
+            try {
+                val probe = testKit.createTestProbe[String]()
+                val record = Promise[Unit]()
+                val entity = testKit.spawn(EventLog.afterRecorded[Any](record.future, Recorded.apply)(
+                    Behaviors.receiveMessage { message => probe.ref ! message.toString; Behaviors.same }
+                ))
+                entity ! "first"
+                entity ! "second"
+                probe.expectNoMessage(100.millis)
+                record.success(())
+                probe.expectMessage("first")
+                probe.expectMessage("second")
+            } finally testKit.shutdownTestKit()
+        }
+        it("should not drop the messages of an entity exceeding its stash while its record is not durable") {
+            case class Recorded(result: Try[Unit]) extends EventLog.Recorded
+            val testKit = ActorTestKit()
+            try {
+                val probe = testKit.createTestProbe[String]()
+                val record = Promise[Unit]()
+                val entity = testKit.spawn(EventLog.afterRecorded[Any](record.future, Recorded.apply)(
+                    Behaviors.receiveMessage { message => probe.ref ! message.toString; Behaviors.same }
+                ))
+                val messages = (0 until 2 * ENTITY_STASH_CAPACITY).map(_.toString)
+                messages.foreach(entity ! _)
+                record.success(())
+                assert(probe.receiveMessages(messages.size) == messages)
+            } finally testKit.shutdownTestKit()
+        }
+        it("should recover the state of an entity from its last snapshot and the following events") {
+            withJournal { (_, open) =>
+                val journal = open()
+                val log = EventLog[StateChanged](journal, "a", snapshotPeriod = 3)
+                log.snapshot(StateChanged(0, None))
+                (1 to 7).foreach(i => log.persist(StateChanged(i, Some(i.toLong)), StateChanged(i, Some(i.toLong))))
+                assert(journal.read("a").map(_.events.size).contains(1))
+                journal.close()
+                val recovered = open()
+                val start = System.nanoTime()
+                assert(EventLog[StateChanged](recovered, "a", snapshotPeriod = 3).recover().contains(StateChanged(7, Some(7L))))
+                info(s"Recovered in ${(System.nanoTime() - start) / 1000} us, after reading the journal in ${recovered.recoveryTime.toMicros} us")
+                recovered.close()
+            }
+        }
+    }
+}
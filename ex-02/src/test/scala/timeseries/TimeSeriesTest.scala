@@ -0,0 +1,110 @@
+package timeseries
+
+import configuration.C.History.{EVICTION_PERIOD, RAW_RETENTION}
+import org.scalatest.funspec.AnyFunSpec
+
+import scala.collection.mutable.ListBuffer
+import scala.concurrent.duration.DurationInt
+import scala.util.Random
+
+/**
+ * Model a test for the compressed time series and the history of the rainfall.
+ */
+class TimeSeriesTest extends AnyFunSpec {
+    private def pointsOf(block: Block, from: Long = Long.MinValue, to: Long = Long.MaxValue): List[(Long, List[Double])] = {
+        val points = ListBuffer[(Long, List[Double])]()
+        block.foreach(from, to)((timestamp, point) => points += ((timestamp, point.toList)))
+        points.toList
+    }
+
+    describe("A block") {
+        it("should decode the points it encoded") {
+            val random = Random(42)
+            val points = List.iterate((1_700_000_000_000L, List(0.5, 1.0)), 200)((timestamp, values) =>
+                (timestamp + 1000 + random.between(-5000, 5000), List(random.nextDouble(), if random.nextBoolean() then values(1) else -values(1)))
+            )
+            val block = Block(columns = 2, capacity = 200)
+            points.foreach((timestamp, values) => block.append(timestamp, values*))
+            assert(block.isFull)
+            assert(pointsOf(block) == points)
+        }
+        it("should encode extreme timestamps and values") {
+            val points = List(
+                (0L, List(Double.NaN)), (Long.MaxValue / 2, List(Double.MaxValue)), (-1L, List(Double.NegativeInfinity)),
+                (Long.MinValue / 2, List(-0.0)), (5L, List(Double.MinPositiveValue))
+            )
+            val block = Block(columns = 1, capacity = 10)
+            points.foreach((timestamp, values) => block.append(timestamp, values*))
+            assert(pointsOf(block).map((timestamp, values) => (timestamp, values.map(java.lang.Double.doubleToRawLongBits)))
+                == points.map((timestamp, values) => (timestamp, values.map(java.lang.Double.doubleToRawLongBits))))
+        }
+        it("should take a bit for each regular timestamp and repeated value") {
+            val block = Block(columns = 1, capacity = 1000)
+            (0 until 1000).foreach(i => block.append(i * 1000L, 0.7))
+            assert(block.footprint < 2 * 1000 / 8 + 64)
+        }
+        it("should only report the points within the requested range") {
+            val block = Block(columns = 1, capacity = 10)
+            (0 until 10).foreach(i => block.append(i * 10L, i))
+            assert(pointsOf(block, 20, 50).map(_._1) == List(20L, 30L, 40L))
+        }
+        it("should not accept more points than its capacity") {
+            val block = Block(columns = 1, capacity = 1)
+            block.append(0, 0)
+            assertThrows[IllegalStateException](block.append(1, 1))
+        }
+    }
+
+    describe("A series") {
+        it("should evict the blocks older than an instant") {
+            val series = Series(columns = 1, blockSize = 10)
+            (0 until 100).foreach(i => series.append(i * 1000L, i))
+            series.evictBefore(45_000)
+            assert(series.size == 60)
+            val timestamps = ListBuffer[Long]()
+            series.foreach(0, Long.MaxValue)((timestamp, _) => timestamps += timestamp)
+            assert(timestamps.head == 40_000)
+        }
+    }
+
+    describe("A rollup") {
+        it("should aggregate the values by interval") {
+            val rollup = Rollup(1.minute, blockSize = 16)
+            List((0L, 1.0), (30_000L, 3.0), (60_000L, 2.0), (150_000L, 4.0), (170_000L, 6.0)).foreach(rollup.add)
+            assert(rollup.aggregates(0, Long.MaxValue) == List(
+                Aggregate(0, 2, 4, 1, 3), Aggregate(60_000, 1, 2, 2, 2), Aggregate(120_000, 2, 10, 4, 6)
+            ))
+            assert(rollup.aggregates(60_000, 120_000).map(_.mean) == List(2.0))
+        }
+        it("should aggregate the values arriving late into the open interval") {
+            val rollup = Rollup(1.minute, blockSize = 16)
+            List((0L, 1.0), (60_000L, 2.0), (59_000L, 3.0)).foreach(rollup.add)
+            assert(rollup.aggregates(0, Long.MaxValue).map(_.count) == List(1L, 2L))
+        }
+    }
+
+    describe("A rainfall history") {
+        it("should answer queries at each resolution") {
+            val history = RainfallHistory(blockSize = 64)
+            (0 until 2 * 60 * 60).foreach(second => {
+                history.record(1, second * 1000L, 1)
+                history.record(2, second * 1000L + 500, 3)
+            })
+            assert(history.query(0, 10_000, Resolution.Raw).size == 20)
+            assert(history.query(0, 10_000, Resolution.Raw).take(2).map(_.mean) == List(1.0, 3.0))
+            val byMinute = history.query(0, 60 * 60 * 1000L, Resolution.Minute)
+            assert(byMinute.size == 60 && byMinute.forall(minute => minute.count == 120 && minute.mean == 2))
+            assert(history.query(0, Long.MaxValue, Resolution.Hour).map(_.count) == List(7200L, 7200L))
+            assert(history.readingsOf(1, 0, 3000) == List((0L, 1.0), (1000L, 1.0), (2000L, 1.0)))
+        }
+        it("should evict the readings older than their retention period") {
+            val history = RainfallHistory(blockSize = 16)
+            val end = 2 * RAW_RETENTION.toMillis
+            (0L until end by 10_000L).foreach(timestamp => history.record(1, timestamp, 1))
+            val readings = history.readingsOf(1, 0, Long.MaxValue)
+            assert(readings.head._1 >= end - RAW_RETENTION.toMillis - EVICTION_PERIOD.toMillis - 16 * 10_000L)
+            assert(readings.last._1 == end - 10_000L)
+            assert(history.query(0, Long.MaxValue, Resolution.Minute).head.start == 0)
+        }
+    }
+}
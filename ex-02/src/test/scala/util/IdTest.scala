@@ -0,0 +1,25 @@
+package util
+
+import org.scalatest.funspec.AnyFunSpec
+
+/**
+ * Model a test for the identifiers of the entities.
+ */
+class IdTest extends AnyFunSpec {
+    describe("The identifiers") {
+        it("should be generated unique and non-negative") {
+            val ids: Seq[Id.EntityId] = Seq.fill(100000)(Id.newId)
+            assert(ids.distinct.size == ids.size)
+            assert(ids.forall(_ >= 0))
+        }
+        it("should be parsed from their string forms") {
+            val id = Id.newId
+            assert(Id.parse(Id.show(id)) == id)
+            assertThrows[NumberFormatException](Id.parse("zone-01"))
+        }
+        it("should intern their string forms") {
+            val id = Id.parse(String("1234567890"))
+            assert(Id.show(id) eq Id.show(Id.parse("1234567890")))
+        }
+    }
+}
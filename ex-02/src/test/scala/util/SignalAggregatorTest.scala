@@ -0,0 +1,87 @@
+package util
+
+import org.scalatest.funspec.AnyFunSpec
+import util.AlarmRule.*
+
+import scala.concurrent.duration.DurationInt
+
+/**
+ * Model a test for the signal aggregator.
+ */
+class SignalAggregatorTest extends AnyFunSpec {
+    describe("A signal aggregator") {
+        describe("with the majority rule") {
+            it("should trigger an alarm when half of the sensors are signaling") {
+                val aggregator = SignalAggregator(Majority, Seq(1L, 2L, 3L, 4L), 0.5)
+                assert(!aggregator.update(1, on = true, 1, 0))
+                assert(!aggregator.update(1, on = true, 1, 1))
+                assert(aggregator.update(2, on = true, 1, 2))
+            }
+            it("should count each sensor only by its last reading") {
+                val aggregator = SignalAggregator(Majority, Seq(1L, 2L, 3L, 4L), 0.5)
+                aggregator.update(1, on = true, 1, 0)
+                aggregator.update(1, on = false, 0, 1)
+                assert(aggregator.score == 0)
+                assert(!aggregator.update(2, on = true, 1, 2))
+            }
+            it("should not trigger an alarm again until the score falls to the re-arm score") {
+                val aggregator = SignalAggregator(Majority, Seq(1L, 2L, 3L, 4L), 0.5)
+                aggregator.update(1, on = true, 1, 0)
+                assert(aggregator.update(2, on = true, 1, 1))
+                assert(!aggregator.isArmed)
+                assert(!aggregator.update(3, on = true, 1, 2))
+                assert(!aggregator.update(3, on = false, 0, 3))
+                assert(!aggregator.update(2, on = false, 0, 4))
+                assert(aggregator.isArmed)
+                assert(aggregator.update(2, on = true, 1, 5))
+            }
+            it("should ignore the readings of a sensor older than its last reading") {
+                val aggregator = SignalAggregator(Majority, Seq(1L, 2L, 3L, 4L), 0.5)
+                aggregator.update(1, on = true, 1, 5)
+                aggregator.update(1, on = false, 0, 3)
+                assert(aggregator.score == 0.5)
+                assert(aggregator.update(2, on = true, 1, 6))
+            }
+        }
+        describe("with the k-of-n rule") {
+            it("should only consider the last n readings") {
+                val aggregator = SignalAggregator(KOfN(2, 3, 1.minute), Seq(1L), 0)
+                assert(!aggregator.update(1, on = true, 1, 0))
+                assert(!aggregator.update(1, on = false, 0, 1))
+                assert(!aggregator.update(1, on = false, 0, 2))
+                assert(!aggregator.update(1, on = true, 1, 3))
+                assert(aggregator.update(1, on = true, 1, 4))
+            }
+            it("should only consider the readings within its window") {
+                val aggregator = SignalAggregator(KOfN(2, 10, 1.second), Seq(1L, 2L), 0)
+                assert(!aggregator.update(1, on = true, 1, 0))
+                assert(!aggregator.update(2, on = true, 1, 1500))
+                assert(aggregator.update(1, on = true, 1, 2000))
+            }
+            it("should discard the readings arrived late, if older than its window") {
+                val aggregator = SignalAggregator(KOfN(2, 10, 1.second), Seq(1L, 2L), 0)
+                assert(!aggregator.update(1, on = true, 1, 2000))
+                assert(!aggregator.update(2, on = true, 1, 500))
+                assert(aggregator.score == 0.5)
+                assert(aggregator.update(2, on = true, 1, 1200))
+            }
+            it("should evict the oldest readings first, whatever their arrival") {
+                val aggregator = SignalAggregator(KOfN(2, 2, 1.minute), Seq(1L, 2L), 0)
+                assert(!aggregator.update(1, on = true, 1, 300))
+                assert(!aggregator.update(2, on = false, 0, 100))
+                assert(aggregator.update(2, on = true, 1, 200))
+            }
+        }
+        describe("with the moving average rule") {
+            it("should trigger an alarm when the average measurement within its window reaches the threshold") {
+                val aggregator = SignalAggregator(MovingAverage(10, 1.second), Seq(1L, 2L), 0.5)
+                assert(!aggregator.update(1, on = false, 5, 0))
+                assert(!aggregator.update(2, on = false, 0, 1500))
+                assert(aggregator.score == 0)
+                assert(!aggregator.update(1, on = true, 10, 1600))
+                assert(aggregator.update(2, on = true, 20, 1700))
+                assert(aggregator.score == 1)
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package util
+
+import actor.ZoneActor.Zone
+import org.scalatest.funspec.AnyFunSpec
+import util.PartitionIndex.Bounds
+
+import scala.util.Random
+
+/**
+ * Model a test for the spatial indexes.
+ */
+class SpatialIndexTest extends AnyFunSpec {
+    private val random: Random = Random(42)
+    private def randomPoint: Point2D = Point2D(random.nextDouble() * 100, random.nextDouble() * 100)
+
+    describe("A kd-tree") {
+        val points: Seq[Point2D] = Seq.fill(500)(randomPoint)
+        val tree: KdTree[Point2D] = KdTree(points.map(p => (p, p)))
+        it("should find the k nearest entries, from the nearest") {
+            (0 until 100).foreach(_ => {
+                val point: Point2D = randomPoint
+                assert(tree.nearest(point, 5) == points.sortBy(_.distance(point)).take(5))
+            })
+        }
+        it("should only find the entries satisfying the filter") {
+            val point: Point2D = randomPoint
+            val filter: Point2D => Boolean = _.x > 50
+            assert(tree.nearest(point, 3, filter) == points.filter(filter).sortBy(_.distance(point)).take(3))
+        }
+        it("should find fewer entries than requested if there are not enough") {
+            assert(tree.nearest(randomPoint, 3, _ => false).isEmpty)
+            assert(KdTree(Seq((Point2D(0, 0), "a"))).nearest(randomPoint, 3) == List("a"))
+        }
+    }
+
+    describe("A partition index") {
+        val zones: List[Zone] = Zone(Point2D(0, 100), 100, 100).splitInto(64)
+        val index: PartitionIndex[Id.EntityId] = PartitionIndex(zones.map(z => (Bounds.of(z.position, z.width, z.height), z.id)))
+        it("should find the zone containing a point") {
+            (0 until 1000).foreach(_ => {
+                val point: Point2D = randomPoint
+                assert(index.lookup(point) == zones.find(_.contains(point)).map(_.id))
+            })
+        }
+        it("should find nothing outside of the partition") {
+            assert(index.lookup(Point2D(-1, 50)).isEmpty)
+            assert(index.lookup(Point2D(50, 101)).isEmpty)
+        }
+        it("should index a partition of thousands of zones") {
+            val zones: List[Zone] = Zone(Point2D(0, 100), 100, 100).splitInto(10000)
+            val index: PartitionIndex[Id.EntityId] = PartitionIndex(zones.map(z => (Bounds.of(z.position, z.width, z.height), z.id)))
+            (0 until 1000).foreach(_ => {
+                val point: Point2D = randomPoint
+                assert(index.lookup(point) == zones.find(_.contains(point)).map(_.id))
+            })
+        }
+        it("should fall back to a linear search for the rectangles that cannot be separated") {
+            val pinwheel: PartitionIndex[Int] = PartitionIndex(Seq(
+                (Bounds(0, 2, 2, 3), 1), (Bounds(2, 1, 3, 3), 2), (Bounds(1, 0, 3, 1), 3),
+                (Bounds(0, 0, 1, 2), 4), (Bounds(1, 1, 2, 2), 5)
+            ))
+            assert(pinwheel.lookup(Point2D(1.5, 1.5)).contains(5))
+            assert(pinwheel.lookup(Point2D(2.5, 0.5)).contains(3))
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package util
+
+import org.scalatest.funspec.AnyFunSpec
+
+import scala.concurrent.duration.DurationInt
+
+/**
+ * Model a test for the scheduling of the periodic work of the entities.
+ */
+class TicksTest extends AnyFunSpec {
+    private val ids: Seq[Id.EntityId] = Seq.fill(10000)(Id.newId)
+
+    describe("The ticks of the entities") {
+        it("should have the same phase for the same entity") {
+            ids.foreach(id => assert(Ticks.phaseOf(id, 1.second) == Ticks.phaseOf(id, 1.second)))
+        }
+        it("should have their phases spread across the period") {
+            val phases = ids.map(Ticks.phaseOf(_, 1.second))
+            assert(phases.forall(phase => phase >= 0.millis && phase < 1.second))
+            val quarters = phases.groupBy(_.toMillis / 250).view.mapValues(_.size).toMap
+            assert(quarters.size == 4)
+            assert(quarters.values.forall(count => count > ids.size / 4 * 0.9 && count < ids.size / 4 * 1.1))
+        }
+        it("should be split evenly into segments") {
+            val segments = ids.groupBy(Ticks.segmentOf(_, 10)).view.mapValues(_.size).toMap
+            assert(segments.keySet == (0 until 10).toSet)
+            assert(segments.values.forall(count => count > ids.size / 10 * 0.8 && count < ids.size / 10 * 1.2))
+        }
+        it("should have their periods jittered within the specified fraction") {
+            (0 until 1000).map(_ => Ticks.jittered(1.second, 0.1)).foreach(period =>
+                assert(period >= 900.millis && period <= 1100.millis)
+            )
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package view
+
+import org.scalatest.funspec.AnyFunSpec
+import util.Point2D
+import view.View.*
+
+/**
+ * Model a test for the spatial grid of the view.
+ */
+class SpatialGridTest extends AnyFunSpec {
+    private case class Entity(id: Long, shape: Shape) extends Drawable[Shape]
+
+    private val background = Entity(0, Rectangle(Point2D(0, 0), 100, 100))
+    private val left = Entity(1, Circle(Point2D(20, 20), 10))
+    private val right = Entity(2, Circle(Point2D(25, 20), 10))
+    private val far = Entity(3, Circle(Point2D(80, 80), 5))
+    private val grid = SpatialGrid(Seq(background, left, right, far), cellSize = 16)
+
+    describe("A spatial grid") {
+        it("should find the drawables at a point, from the one on top") {
+            assert(grid.at(Point2D(22, 20)) == Seq(right, left, background))
+            assert(grid.at(Point2D(50, 50)) == Seq(background))
+            assert(grid.at(Point2D(150, 50)).isEmpty)
+        }
+        it("should pick the drawable on top at a point") {
+            assert(grid.pick(Point2D(22, 20)).contains(right))
+            assert(grid.pick(Point2D(12, 20)).contains(left))
+            assert(grid.pick(Point2D(80, 80)).contains(far))
+        }
+        it("should find the drawables inside a rectangle, in the order they are drawn") {
+            assert(grid.within(Rectangle(Point2D(0, 0), 40, 40)) == Seq(background, left, right))
+            assert(grid.within(Rectangle(Point2D(60, 60), 10, 10)) == Seq(background))
+            assert(grid.within(Rectangle(Point2D(70, 70), 30, 30)) == Seq(background, far))
+        }
+    }
+}